@@ -27,6 +27,9 @@ public class Dotedge {
         if (edge.property(EdgeProperty.COUNTER.name()).isPresent())
             counter = edge.property(EdgeProperty.COUNTER.name()).value().toString();
 
+        if (edge.property(EdgeProperty.EVENT_COUNT.name()).isPresent())
+            counter = counter + " x" + edge.property(EdgeProperty.EVENT_COUNT.name()).value().toString();
+
 //        String time = begin_time.split(".")[0];
 //        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd:HH:mm:ss");
 //
@@ -0,0 +1,70 @@
+package elastic;
+
+import java.io.Closeable;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Destination of the bulk requests of an {@link ElasticGraphSink}
+ */
+public interface BulkBackend extends Closeable {
+    /**
+     * Sends the documents as one bulk request without waiting for the response
+     *
+     * @param documents documents to index, replacing documents with the same index and id, or
+     *                  merged into them by the script of the document
+     * @param done      called once from any thread with null if all documents were indexed or
+     *                  with the reason why some were not
+     */
+    void bulk(List<Document> documents, Consumer<Exception> done);
+
+    /**
+     * Document of a vertex or an edge
+     */
+    final class Document {
+        private final String index;
+        private final String id;
+        private final Map<String, Object> source;
+        private final String script;
+        private final Map<String, Object> params;
+
+        public Document(String index, String id, Map<String, Object> source) {
+            this(index, id, source, null, Collections.emptyMap());
+        }
+
+        /**
+         * @param source indexed as it is if there is no document with the id yet
+         * @param script painless script that updates an existing document, null to replace it
+         * @param params parameters of the script
+         */
+        public Document(String index, String id, Map<String, Object> source, String script, Map<String, Object> params) {
+            this.index = index;
+            this.id = id;
+            this.source = Collections.unmodifiableMap(source);
+            this.script = script;
+            this.params = Collections.unmodifiableMap(params);
+        }
+
+        public String getIndex() {
+            return index;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public Map<String, Object> getSource() {
+            return source;
+        }
+
+        public String getScript() {
+            return script;
+        }
+
+        public Map<String, Object> getParams() {
+            return params;
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package elastic;
+
+import org.apache.tinkerpop.gremlin.structure.Edge;
+import org.apache.tinkerpop.gremlin.structure.Element;
+import org.apache.tinkerpop.gremlin.structure.Graph;
+import org.apache.tinkerpop.gremlin.structure.Vertex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import provgraph.GraphListener;
+import provgraph.NodeProperty;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Indexes the vertices and edges of the provenance graph in Elasticsearch as they are added.
+ * <p>
+ * Documents are collected into bulk requests that are sent once they hold the bulk size or
+ * the flush interval has passed. At most the given number of requests are in flight; adding
+ * a document blocks while they are, so a slow cluster slows the parser down instead of
+ * filling the heap. A vertex or edge whose properties change is indexed again, changes of the
+ * same element within one bulk request only send its last state. A document is not sent while
+ * a request with an earlier state of it is in flight, so the states arrive in order.
+ * <p>
+ * The windows of a sharded graph add a vertex or an aggregated edge again when they use it,
+ * with the EVENT_COUNT, times and event ids of their own events. The documents are therefore
+ * merged into the indexed ones by {@link #MERGE_SCRIPT} instead of replacing them.
+ */
+public class ElasticGraphSink implements GraphListener, Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(ElasticGraphSink.class);
+
+    public static final String LABEL = "LABEL", OUT_ID = "OUT_ID", IN_ID = "IN_ID";
+    // number of the window the indexed state is from, and the EVENT_COUNT of the windows before it
+    public static final String WINDOW = "WINDOW", BASE_COUNT = "BASE_COUNT";
+
+    /**
+     * Merges the state of a vertex or an edge in one window into its document: EVENT_COUNT is
+     * summed over the windows, the earliest BEGIN_TIME and EVENTID and the latest END_TIME and
+     * LAST_EVENTID are kept, and HOP_COUNT is only replaced when it changed, since a window
+     * that adds a process again starts it at 0. Other properties take the latest value.
+     */
+    public static final String MERGE_SCRIPT = ""
+            + "int compare(def a, def b) {"
+            + "  try { return new BigDecimal(a.toString()).compareTo(new BigDecimal(b.toString())); }"
+            + "  catch (NumberFormatException e) { return a.toString().compareTo(b.toString()); }"
+            + "}"
+            + "def s = ctx._source;"
+            + "long base = s.BASE_COUNT == null ? 0L : s.BASE_COUNT;"
+            + "if (s.WINDOW != params.doc.WINDOW && s.EVENT_COUNT != null) { base = s.EVENT_COUNT; }"
+            + "for (entry in params.doc.entrySet()) {"
+            + "  String key = entry.getKey(); def value = entry.getValue(); def old = s[key];"
+            + "  if (key == 'EVENT_COUNT') { s.BASE_COUNT = base; s.EVENT_COUNT = base + value; }"
+            + "  else if (old != null && (key == 'BEGIN_TIME' || key == 'EVENTID')) {"
+            + "    if (compare(value, old) < 0) { s[key] = value; } }"
+            + "  else if (old != null && (key == 'END_TIME' || key == 'LAST_EVENTID')) {"
+            + "    if (compare(value, old) > 0) { s[key] = value; } }"
+            + "  else if (old == null || key != 'HOP_COUNT' || params.hopCountChanged) { s[key] = value; }"
+            + "}";
+    private static final String HOP_COUNT_CHANGED = "hopCountChanged";
+
+    private final BulkBackend backend;
+    private final String vertexIndex;
+    private final String edgeIndex;
+    private final int bulkSize;
+    private final int maxInFlight;
+    private final Semaphore inFlight;
+    private final ScheduledExecutorService flusher;
+
+    // pending documents by index and id
+    private final LinkedHashMap<String, BulkBackend.Document> pending = new LinkedHashMap<>();
+    // index and id of the documents in requests that are in flight
+    private final Set<String> sending = ConcurrentHashMap.newKeySet();
+    // number of each window graph, in the order they were first seen
+    private final Map<Graph, Integer> windows = new WeakHashMap<>();
+    private final AtomicLong indexed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private boolean closed = false;
+
+    /**
+     * @param backend     cluster or stand-in the requests are sent to
+     * @param indexPrefix documents go to the indices prefix-vertices and prefix-edges
+     * @param bulkSize    number of documents per bulk request
+     * @param flushMillis time after which a partial bulk request is sent
+     * @param maxInFlight number of bulk requests sent at the same time
+     */
+    public ElasticGraphSink(BulkBackend backend, String indexPrefix, int bulkSize, long flushMillis, int maxInFlight) {
+        this.backend = backend;
+        this.vertexIndex = indexPrefix.toLowerCase() + "-vertices";
+        this.edgeIndex = indexPrefix.toLowerCase() + "-edges";
+        this.bulkSize = Math.max(1, bulkSize);
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.inFlight = new Semaphore(this.maxInFlight);
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "elastic-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public String getVertexIndex() {
+        return vertexIndex;
+    }
+
+    public String getEdgeIndex() {
+        return edgeIndex;
+    }
+
+    /**
+     * @return number of documents the backend has indexed
+     */
+    public long getIndexedCount() {
+        return indexed.get();
+    }
+
+    /**
+     * @return number of documents of failed bulk requests
+     */
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    @Override
+    public void vertexAdded(Vertex vertex) {
+        add(vertexDocument(vertex, false));
+    }
+
+    @Override
+    public void edgeAdded(Edge edge) {
+        add(edgeDocument(edge));
+    }
+
+    @Override
+    public void vertexPropertyChanged(Vertex vertex, String key, Object value) {
+        add(vertexDocument(vertex, key.equals(NodeProperty.HOP_COUNT.name())));
+    }
+
+    @Override
+    public void edgePropertyChanged(Edge edge, String key, Object value) {
+        add(edgeDocument(edge));
+    }
+
+    /**
+     * Sends the pending documents, waiting while the maximum number of requests are in flight.
+     * Documents with an earlier state in flight are left for the next request.
+     */
+    public synchronized void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        inFlight.acquireUninterruptibly();
+        List<String> keys = sendable();
+        if (keys.isEmpty()) {
+            // every pending document waits for a request in flight, wait for all of them
+            inFlight.acquireUninterruptibly(maxInFlight - 1);
+            inFlight.release(maxInFlight - 1);
+            keys = sendable();
+        }
+        List<BulkBackend.Document> documents = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            documents.add(pending.remove(key));
+        }
+        List<String> sent = keys;
+        sending.addAll(sent);
+        try {
+            backend.bulk(documents, e -> {
+                if (e == null) {
+                    indexed.addAndGet(documents.size());
+                } else {
+                    failed.addAndGet(documents.size());
+                    logger.error("Bulk request of " + documents.size() + " documents failed", e);
+                }
+                sending.removeAll(sent);
+                inFlight.release();
+            });
+        } catch (RuntimeException e) {
+            failed.addAndGet(documents.size());
+            sending.removeAll(sent);
+            inFlight.release();
+            logger.error("Failed to send bulk request of " + documents.size() + " documents", e);
+        }
+    }
+
+    /**
+     * @return keys of the pending documents that are not in a request in flight
+     */
+    private List<String> sendable() {
+        List<String> keys = new ArrayList<>(pending.size());
+        for (String key : pending.keySet()) {
+            if (!sending.contains(key)) {
+                keys.add(key);
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Sends the pending documents, waits for all requests and closes the backend
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        flusher.shutdown();
+        synchronized (this) {
+            while (!pending.isEmpty()) {
+                flush();
+            }
+        }
+        inFlight.acquireUninterruptibly(maxInFlight);
+        inFlight.release(maxInFlight);
+        backend.close();
+        logger.info("Indexed " + indexed.get() + " documents, " + failed.get() + " failed");
+    }
+
+    private synchronized void add(BulkBackend.Document document) {
+        if (closed) {
+            throw new IllegalStateException("Elastic sink is closed");
+        }
+        // a change of HOP_COUNT that is still pending must not be lost to a later change
+        pending.merge(document.getIndex() + '/' + document.getId(), document, (old, changed) ->
+                Boolean.TRUE.equals(old.getParams().get(HOP_COUNT_CHANGED)) ? merged(changed, true) : changed);
+        if (pending.size() >= bulkSize) {
+            flush();
+        }
+    }
+
+    private BulkBackend.Document vertexDocument(Vertex vertex, boolean hopCountChanged) {
+        Map<String, Object> source = properties(vertex);
+        source.put(LABEL, vertex.label());
+        source.put(WINDOW, windowOf(vertex.graph()));
+        return merged(new BulkBackend.Document(vertexIndex, idOf(vertex), source), hopCountChanged);
+    }
+
+    private BulkBackend.Document edgeDocument(Edge edge) {
+        Map<String, Object> source = properties(edge);
+        source.put(LABEL, edge.label());
+        source.put(OUT_ID, idOf(edge.outVertex()));
+        source.put(IN_ID, idOf(edge.inVertex()));
+        source.put(WINDOW, windowOf(edge.graph()));
+        return merged(new BulkBackend.Document(edgeIndex, idOf(edge), source), false);
+    }
+
+    /**
+     * @return the document as an update with {@link #MERGE_SCRIPT}
+     */
+    private static BulkBackend.Document merged(BulkBackend.Document document, boolean hopCountChanged) {
+        Map<String, Object> params = new HashMap<>();
+        params.put("doc", document.getSource());
+        params.put(HOP_COUNT_CHANGED, hopCountChanged);
+        return new BulkBackend.Document(document.getIndex(), document.getId(), document.getSource(), MERGE_SCRIPT, params);
+    }
+
+    private synchronized int windowOf(Graph graph) {
+        return windows.computeIfAbsent(graph, g -> windows.size());
+    }
+
+    private static Map<String, Object> properties(Element element) {
+        Map<String, Object> source = new HashMap<>();
+        element.properties().forEachRemaining(property -> {
+            Object value = property.value();
+            // ids and enums are indexed by their string form
+            boolean plain = value instanceof String || value instanceof Number || value instanceof Boolean;
+            source.put(property.key(), plain ? value : value.toString());
+        });
+        return source;
+    }
+
+    private static String idOf(Element element) {
+        // NodeProperty.ID and EdgeProperty.ID have the same name
+        return element.property(NodeProperty.ID.name()).value().toString();
+    }
+}
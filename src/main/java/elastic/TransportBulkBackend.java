@@ -0,0 +1,80 @@
+package elastic;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.client.transport.TransportClient;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.transport.TransportAddress;
+import org.elasticsearch.script.Script;
+import org.elasticsearch.script.ScriptType;
+import org.elasticsearch.transport.client.PreBuiltTransportClient;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Sends the bulk requests to an Elasticsearch cluster through the transport client
+ */
+public class TransportBulkBackend implements BulkBackend {
+    private static final int DEFAULT_PORT = 9300;
+
+    private final TransportClient client;
+
+    /**
+     * @param hosts comma separated host[:port] list of cluster nodes, the port defaults to 9300
+     * @throws IOException if a host cannot be resolved
+     */
+    public TransportBulkBackend(String hosts) throws IOException {
+        Settings settings = Settings.builder()
+                .put("client.transport.ignore_cluster_name", true)
+                .build();
+        client = new PreBuiltTransportClient(settings);
+        try {
+            for (String host : hosts.split(",")) {
+                host = host.trim();
+                int colon = host.lastIndexOf(':');
+                int port = colon < 0 ? DEFAULT_PORT : Integer.parseInt(host.substring(colon + 1));
+                String name = colon < 0 ? host : host.substring(0, colon);
+                client.addTransportAddress(new TransportAddress(InetAddress.getByName(name), port));
+            }
+        } catch (IOException | RuntimeException e) {
+            client.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public void bulk(List<Document> documents, Consumer<Exception> done) {
+        BulkRequest request = new BulkRequest();
+        for (Document document : documents) {
+            if (document.getScript() == null) {
+                request.add(new IndexRequest(document.getIndex()).id(document.getId()).source(document.getSource()));
+            } else {
+                Script script = new Script(ScriptType.INLINE, "painless", document.getScript(), document.getParams());
+                request.add(new UpdateRequest(document.getIndex(), document.getId())
+                        .script(script).upsert(document.getSource()));
+            }
+        }
+        client.bulk(request, new ActionListener<BulkResponse>() {
+            @Override
+            public void onResponse(BulkResponse response) {
+                done.accept(response.hasFailures() ? new IOException(response.buildFailureMessage()) : null);
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                done.accept(e);
+            }
+        });
+    }
+
+    @Override
+    public void close() {
+        client.close();
+    }
+}
@@ -0,0 +1,132 @@
+package parsers;
+
+import org.apache.avro.Schema;
+import org.apache.avro.file.CodecFactory;
+import org.apache.avro.file.DataFileReader;
+import org.apache.avro.file.DataFileWriter;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+import record.AuditEvent;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+/**
+ * Avro container file of parsed audit events, with the schema in resources/avro/AuditEvent.avsc
+ * <p>
+ * Events are written in blocks compressed with deflate. Every block ends with a sync marker,
+ * so a file can be split into byte ranges that are read independently, see
+ * {@link #AuditEventAvroFile(File, long, long)}.
+ */
+public class AuditEventAvroFile implements AuditEventSource, Closeable {
+    public static final String FILE_EXTENSION = ".avro";
+
+    private static final String SCHEMA_RESOURCE = "/avro/AuditEvent.avsc";
+    private static final String FIELD_EVENT_ID = "eventid", FIELD_DATA = "data";
+    private static final int DEFLATE_LEVEL = 6;
+    private static Schema schema;
+
+    private final DataFileReader<GenericRecord> fileReader;
+    private final long end;
+    private GenericRecord record;
+
+    /**
+     * Opens the whole file for reading
+     *
+     * @param file avro file
+     * @throws IOException if the file couldn't be opened
+     */
+    public AuditEventAvroFile(File file) throws IOException {
+        this(file, 0, Long.MAX_VALUE);
+    }
+
+    /**
+     * Opens a split of the file for reading. The split contains the blocks whose sync marker
+     * follows a position in [start, end), so splits with adjacent ranges read every event once.
+     *
+     * @param file  avro file
+     * @param start first byte of the split
+     * @param end   byte after the split
+     * @throws IOException if the file couldn't be opened
+     */
+    public AuditEventAvroFile(File file, long start, long end) throws IOException {
+        this.fileReader = new DataFileReader<>(file, new GenericDatumReader<GenericRecord>(getSchema()));
+        this.end = end;
+        if (start > 0) {
+            fileReader.sync(start);
+        }
+    }
+
+    /**
+     * @return the schema of the audit event records
+     */
+    public static synchronized Schema getSchema() throws IOException {
+        if (schema == null) {
+            try (InputStream inputStream = AuditEventAvroFile.class.getResourceAsStream(SCHEMA_RESOURCE)) {
+                if (inputStream == null) {
+                    throw new IOException("Missing resource " + SCHEMA_RESOURCE);
+                }
+                schema = new Schema.Parser().parse(inputStream);
+            }
+        }
+        return schema;
+    }
+
+    @Override
+    public Map<String, String> readEventData() throws IOException {
+        if (!fileReader.hasNext() || fileReader.pastSync(end)) {
+            return null;
+        }
+        record = fileReader.next(record);
+        AuditEvent eventData = new AuditEvent();
+        Map<?, ?> data = (Map<?, ?>) record.get(FIELD_DATA);
+        for (Map.Entry<?, ?> entry : data.entrySet()) {
+            eventData.put(entry.getKey().toString(), entry.getValue() == null ? null : entry.getValue().toString());
+        }
+        return eventData;
+    }
+
+    @Override
+    public void close() throws IOException {
+        fileReader.close();
+    }
+
+    /**
+     * Appends events to a new avro file
+     */
+    public static class Writer implements Closeable {
+        private final DataFileWriter<GenericRecord> fileWriter;
+        private final GenericRecord record;
+
+        public Writer(File file) throws IOException {
+            Schema schema = getSchema();
+            this.record = new GenericData.Record(schema);
+            this.fileWriter = new DataFileWriter<>(new GenericDatumWriter<GenericRecord>(schema));
+            fileWriter.setCodec(CodecFactory.deflateCodec(DEFLATE_LEVEL));
+            fileWriter.create(schema, file);
+        }
+
+        /**
+         * Appends an event. Must be called before the event is modified by the handlers.
+         *
+         * @param eventData event as returned by the reader
+         * @throws IOException if writing failed
+         */
+        public void write(Map<String, String> eventData) throws IOException {
+            long eventId = AuditEvent.eventIdOf(eventData);
+            record.put(FIELD_EVENT_ID, eventId < 0 ? null : eventId);
+            record.put(FIELD_DATA, eventData);
+            fileWriter.append(record);
+        }
+
+        @Override
+        public void close() throws IOException {
+            fileWriter.close();
+        }
+    }
+}
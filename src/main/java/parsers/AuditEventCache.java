@@ -0,0 +1,385 @@
+package parsers;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import record.AuditEvent;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * Binary cache of the events read from an audit log, so that later runs over the same log can
+ * skip reading and parsing the text.
+ * <p>
+ * The cache is only used if the size, the modification time and the murmur3 hash of the log
+ * still match the ones in its header. Layout of the file, all numbers big endian:
+ * <pre>
+ * header:  magic, version, log size, log mtime, log hash (16 bytes), event count, index offset
+ * events:  per event the length of the event followed by its key values
+ * index:   key dictionary, then per pid the offsets of the events of that pid
+ * </pre>
+ * Events are read back through memory mapped regions of the file.
+ */
+public class AuditEventCache implements AuditEventSource, Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(AuditEventCache.class);
+
+    public static final String CACHE_FILE_EXTENSION = ".evcache";
+
+    private static final int MAGIC = 0x41564331; // AVC1
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 16 + 8 + 8;
+    private static final int REGION_SIZE = 64 * 1024 * 1024;
+    // value tags
+    private static final int NULL_VALUE = 0, STRING_VALUE = 1;
+
+    private final FileChannel channel;
+    private final long eventCount;
+    private final long indexOffset;
+    private final String[] keys;
+    private final Map<Integer, long[]> pidOffsets;
+
+    private MappedByteBuffer region;
+    private long regionOffset;
+    private long nextEventOffset = HEADER_SIZE;
+    private byte[] stringBuffer = new byte[256];
+
+    private AuditEventCache(FileChannel channel, long eventCount, long indexOffset) throws IOException {
+        this.channel = channel;
+        this.eventCount = eventCount;
+        this.indexOffset = indexOffset;
+        ByteBuffer index = map(indexOffset, (int) (channel.size() - indexOffset));
+        keys = new String[readVarInt(index)];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = readString(index).intern();
+        }
+        int pidCount = index.getInt();
+        pidOffsets = new HashMap<>(pidCount * 2);
+        for (int i = 0; i < pidCount; i++) {
+            int pid = index.getInt();
+            long[] offsets = new long[index.getInt()];
+            for (int j = 0; j < offsets.length; j++) {
+                offsets[j] = index.getLong();
+            }
+            pidOffsets.put(pid, offsets);
+        }
+    }
+
+    /**
+     * @param logFile path of the audit log
+     * @return the cache file for the log
+     */
+    public static File getCacheFile(String logFile) {
+        return new File(logFile + CACHE_FILE_EXTENSION);
+    }
+
+    /**
+     * Opens the cache of the given log
+     *
+     * @param cacheFile cache file
+     * @param logFile   audit log the cache was written for
+     * @return the cache or null if it doesn't exist, is unreadable or doesn't match the log anymore
+     */
+    public static AuditEventCache open(File cacheFile, File logFile) {
+        if (!cacheFile.isFile() || !logFile.isFile()) {
+            return null;
+        }
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(cacheFile.toPath());
+            if (channel.size() < HEADER_SIZE) {
+                channel.close();
+                return null;
+            }
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            byte[] hash = new byte[16];
+            int magic = header.getInt();
+            int version = header.getInt();
+            long logSize = header.getLong();
+            long logModified = header.getLong();
+            header.get(hash);
+            long eventCount = header.getLong();
+            long indexOffset = header.getLong();
+            if (magic != MAGIC || version != VERSION || logSize != logFile.length()
+                    || logModified != logFile.lastModified() || indexOffset < HEADER_SIZE
+                    || indexOffset > channel.size() || !Arrays.equals(hash, hashLog(logFile))) {
+                logger.info("Ignoring stale event cache " + cacheFile);
+                channel.close();
+                return null;
+            }
+            return new AuditEventCache(channel, eventCount, indexOffset);
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Failed to open event cache " + cacheFile, e);
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                }
+            }
+            return null;
+        }
+    }
+
+    public long getEventCount() {
+        return eventCount;
+    }
+
+    /**
+     * @return process ids that have at least one event in the cache
+     */
+    public Set<Integer> getPids() {
+        return Collections.unmodifiableSet(pidOffsets.keySet());
+    }
+
+    /**
+     * Reads the events of one process through the per pid index
+     *
+     * @param pid process id
+     * @return events of the process in log order
+     * @throws IOException if reading failed
+     */
+    public List<Map<String, String>> readEventsOfPid(int pid) throws IOException {
+        long[] offsets = pidOffsets.get(pid);
+        if (offsets == null) {
+            return new ArrayList<>();
+        }
+        List<Map<String, String>> events = new ArrayList<>(offsets.length);
+        for (long offset : offsets) {
+            events.add(readEvent(offset));
+        }
+        return events;
+    }
+
+    /**
+     * Returns the events in the order they were written
+     */
+    @Override
+    public Map<String, String> readEventData() throws IOException {
+        if (nextEventOffset >= indexOffset) {
+            return null;
+        }
+        ByteBuffer buffer = regionAt(nextEventOffset, 4);
+        int length = buffer.getInt();
+        Map<String, String> eventData = readEvent(nextEventOffset);
+        nextEventOffset += 4 + length;
+        return eventData;
+    }
+
+    @Override
+    public void close() throws IOException {
+        region = null;
+        channel.close();
+    }
+
+    private Map<String, String> readEvent(long offset) throws IOException {
+        ByteBuffer buffer = regionAt(offset, 4);
+        int length = buffer.getInt();
+        buffer = regionAt(offset + 4, length);
+        AuditEvent eventData = new AuditEvent();
+        int size = readVarInt(buffer);
+        for (int i = 0; i < size; i++) {
+            String key = keys[readVarInt(buffer)];
+            String value = buffer.get() == NULL_VALUE ? null : readString(buffer);
+            eventData.put(key, value);
+        }
+        return eventData;
+    }
+
+    /**
+     * Returns a buffer positioned at the given offset with at least length bytes remaining,
+     * mapping a new region of the file if needed
+     */
+    private ByteBuffer regionAt(long offset, int length) throws IOException {
+        if (region == null || offset < regionOffset || offset + length > regionOffset + region.limit()) {
+            region = map(offset, (int) Math.min(Math.max(REGION_SIZE, length), channel.size() - offset));
+            regionOffset = offset;
+        }
+        region.position((int) (offset - regionOffset));
+        return region;
+    }
+
+    private MappedByteBuffer map(long offset, int length) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        return buffer;
+    }
+
+    private String readString(ByteBuffer buffer) {
+        int length = readVarInt(buffer);
+        if (stringBuffer.length < length) {
+            stringBuffer = new byte[Math.max(length, stringBuffer.length * 2)];
+        }
+        buffer.get(stringBuffer, 0, length);
+        return new String(stringBuffer, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private static int readVarInt(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7f) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    /**
+     * murmur3 hash of the contents of the log
+     */
+    static byte[] hashLog(File logFile) throws IOException {
+        Hasher hasher = Hashing.murmur3_128().newHasher();
+        byte[] buffer = new byte[1 << 20];
+        try (InputStream inputStream = new FileInputStream(logFile)) {
+            int read;
+            while ((read = inputStream.read(buffer)) > 0) {
+                hasher.putBytes(buffer, 0, read);
+            }
+        }
+        return hasher.hash().asBytes();
+    }
+
+    /**
+     * Writes the cache of a log while its events are being read. The cache file only appears
+     * once the writer has been closed successfully.
+     */
+    public static class Writer implements Closeable {
+        private final File cacheFile;
+        private final File logFile;
+        private final long logSize, logModified;
+        private final File tempFile;
+        private final DataOutputStream output;
+        private final ByteArrayOutputStream eventBytes = new ByteArrayOutputStream();
+        private final DataOutputStream eventOutput = new DataOutputStream(eventBytes);
+        private final Map<String, Integer> keyIds = new HashMap<>();
+        private final List<String> keys = new ArrayList<>();
+        private final Map<Integer, List<Long>> pidOffsets = new HashMap<>();
+        private long offset = HEADER_SIZE;
+        private long eventCount = 0;
+        private boolean closed = false;
+
+        public Writer(File cacheFile, File logFile) throws IOException {
+            this.cacheFile = cacheFile;
+            this.logFile = logFile;
+            // taken before reading so that a log which changes while it is read invalidates the cache
+            this.logSize = logFile.length();
+            this.logModified = logFile.lastModified();
+            File directory = cacheFile.getAbsoluteFile().getParentFile();
+            this.tempFile = File.createTempFile(cacheFile.getName(), ".tmp", directory);
+            this.output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), 1 << 16));
+            output.write(new byte[HEADER_SIZE]);
+        }
+
+        /**
+         * Appends an event. Must be called before the event is modified by the handlers.
+         *
+         * @param eventData event as returned by the reader
+         * @throws IOException if writing failed
+         */
+        public void write(Map<String, String> eventData) throws IOException {
+            eventBytes.reset();
+            writeVarInt(eventOutput, eventData.size());
+            for (Map.Entry<String, String> entry : eventData.entrySet()) {
+                Integer keyId = keyIds.get(entry.getKey());
+                if (keyId == null) {
+                    keyId = keys.size();
+                    keys.add(entry.getKey());
+                    keyIds.put(entry.getKey(), keyId);
+                }
+                writeVarInt(eventOutput, keyId);
+                if (entry.getValue() == null) {
+                    eventOutput.writeByte(NULL_VALUE);
+                } else {
+                    eventOutput.writeByte(STRING_VALUE);
+                    writeString(eventOutput, entry.getValue());
+                }
+            }
+            int pid = AuditEvent.pidOf(eventData);
+            if (pid != -1) {
+                pidOffsets.computeIfAbsent(pid, k -> new ArrayList<>()).add(offset);
+            }
+            output.writeInt(eventBytes.size());
+            eventBytes.writeTo(output);
+            offset += 4 + eventBytes.size();
+            eventCount++;
+        }
+
+        /**
+         * Writes the index and the header and moves the cache into place
+         */
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            boolean written = false;
+            try {
+                long indexOffset = offset;
+                writeVarInt(output, keys.size());
+                for (String key : keys) {
+                    writeString(output, key);
+                }
+                output.writeInt(pidOffsets.size());
+                for (Map.Entry<Integer, List<Long>> entry : pidOffsets.entrySet()) {
+                    output.writeInt(entry.getKey());
+                    output.writeInt(entry.getValue().size());
+                    for (long eventOffset : entry.getValue()) {
+                        output.writeLong(eventOffset);
+                    }
+                }
+                output.close();
+                try (RandomAccessFile file = new RandomAccessFile(tempFile, "rw")) {
+                    file.writeInt(MAGIC);
+                    file.writeInt(VERSION);
+                    file.writeLong(logSize);
+                    file.writeLong(logModified);
+                    file.write(hashLog(logFile));
+                    file.writeLong(eventCount);
+                    file.writeLong(indexOffset);
+                }
+                Files.move(tempFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                written = true;
+                logger.info("Wrote event cache " + cacheFile + " with " + eventCount + " events");
+            } finally {
+                if (!written) {
+                    output.close();
+                    tempFile.delete();
+                }
+            }
+        }
+
+        /**
+         * Discards the cache, e.g. when reading the log failed
+         */
+        public void abort() throws IOException {
+            if (!closed) {
+                closed = true;
+                output.close();
+                tempFile.delete();
+            }
+        }
+
+        private static void writeString(DataOutputStream output, String string) throws IOException {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(output, bytes.length);
+            output.write(bytes);
+        }
+
+        private static void writeVarInt(DataOutputStream output, int value) throws IOException {
+            while ((value & ~0x7f) != 0) {
+                output.writeByte((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            output.writeByte(value);
+        }
+    }
+}
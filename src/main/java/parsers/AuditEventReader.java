@@ -1,5 +1,6 @@
 package parsers;
 
+import record.AuditEvent;
 import utils.CommonFunctions;
 
 import java.io.*;
@@ -13,7 +14,7 @@ import java.util.regex.Pattern;
 /**
  * Audit log reader which reads the log and sorts it in a sliding window of 'x' audit records
  */
-public class AuditEventReader {
+public class AuditEventReader implements AuditEventSource {
     public static final String ARG0 = "a0",
             ARG1 = "a1",
             ARG2 = "a2",
@@ -59,10 +60,6 @@ public class AuditEventReader {
 
     private final Logger logger = Logger.getLogger(this.getClass().getName());
 
-    // Group 1: key
-    // Group 2: value
-    private static final Pattern pattern_key_value = Pattern.compile("(\\w+)=\"*((?<=\")[^\"]+(?=\")|([^\\s]+))\"*");
-
     // Group 1: node
     // Group 2: type
     // Group 3: time
@@ -90,6 +87,39 @@ public class AuditEventReader {
      */
     private SimpleEntry<String, BufferedReader> currentInputStreamReaderEntry;
 
+    /**
+     * Scanner over the memory mapped current file. Used instead of the
+     * current input stream reader when memory mapping is enabled.
+     */
+    private MappedAuditLogScanner currentScanner;
+
+    /**
+     * Read files through memory mapped regions instead of a BufferedReader
+     */
+    private final boolean memoryMapped;
+
+    /**
+     * Follower of a log that is still being written. Used instead of the input streams in
+     * follow mode.
+     */
+    private final AuditLogFollower follower;
+
+    /**
+     * In follow mode, time after which a buffered event is considered complete and is emitted
+     * even though the reorder window isn't full
+     */
+    private final long stableMillis;
+
+    /**
+     * In follow mode, time at which the first record of each buffered event was read
+     */
+    private final Map<Long, Long> eventIdToArrivalMillis = new HashMap<Long, Long>();
+
+    /**
+     * In follow mode, called on the reading thread whenever no record was written for a while
+     */
+    private Runnable idleListener;
+
     /**
      * List of key value pairs of <stream identifier, input streams> to read from in the order in the list.
      * In case of files the stream identifier is the path of the file
@@ -111,6 +141,23 @@ public class AuditEventReader {
      */
     private long currentlyBufferedRecords = 0;
 
+    /**
+     * Default size of the reorder window in audit records
+     */
+    public static final long DEFAULT_WINDOW_RECORDS = 100000;
+
+    /**
+     * Maximum number of audit records to buffer before the event with the smallest
+     * id is emitted. Zero or less means no limit on the number of records.
+     */
+    private final long maxBufferedRecords;
+
+    /**
+     * Maximum distance between the smallest and the largest buffered event id
+     * before the event with the smallest id is emitted. Zero or less means no limit.
+     */
+    private final long maxEventIdDistance;
+
 
     /**
      * Id of the last event that was output. Used to discard out of order event
@@ -128,9 +175,53 @@ public class AuditEventReader {
     private boolean sawDaemonRising = false;
 
     /**
-     * Create instance of the class that reads the given list of files in the given order
+     * Number of DAEMON_START records after which the buffer has been emptied, i.e. the
+     * epoch of the events that are currently being buffered
+     */
+    private long daemonEpoch = 0;
+
+    /**
+     * Event id and epoch of the last event that was output. Unlike lastEventId these
+     * are not reset by DAEMON_START.
+     */
+    private long lastOutputEventId = -1, lastEventEpoch = 0;
+
+    /**
+     * Create instance of the class that reads the given file with the default reorder window
      */
     public AuditEventReader(String logFile) throws Exception {
+        this(logFile, DEFAULT_WINDOW_RECORDS, 0);
+    }
+
+    /**
+     * Create instance of the class that reads the given file and emits events as soon as they
+     * fall out of the reorder window. If both limits are zero or less then the whole file is
+     * buffered before the first event is returned.
+     *
+     * @param logFile            path of the audit log
+     * @param maxBufferedRecords window size in audit records
+     * @param maxEventIdDistance window size in event id distance
+     */
+    public AuditEventReader(String logFile, long maxBufferedRecords, long maxEventIdDistance) throws Exception {
+        this(logFile, maxBufferedRecords, maxEventIdDistance, false);
+    }
+
+    /**
+     * Create instance of the class that reads the given file with the given reorder window
+     * either through a BufferedReader or through memory mapped regions of the file.
+     *
+     * @param logFile            path of the audit log
+     * @param maxBufferedRecords window size in audit records
+     * @param maxEventIdDistance window size in event id distance
+     * @param memoryMapped       scan the file with {@link MappedAuditLogScanner}
+     */
+    public AuditEventReader(String logFile, long maxBufferedRecords, long maxEventIdDistance,
+                            boolean memoryMapped) throws Exception {
+        this.maxBufferedRecords = maxBufferedRecords;
+        this.memoryMapped = memoryMapped;
+        this.maxEventIdDistance = maxEventIdDistance;
+        this.follower = null;
+        this.stableMillis = 0;
         File file = new File(logFile);
         if (file.exists()) {
             this.inputStreamEntries.addLast(new SimpleEntry<String, InputStream>(logFile, new FileInputStream(file)));
@@ -142,6 +233,34 @@ public class AuditEventReader {
     }
 
 
+    /**
+     * Create instance of the class that follows a log which is still being written. Events are
+     * emitted when they fall out of the reorder window or when no record has been added to
+     * them for the given time. {@link #readEventData()} blocks until an event is available and
+     * returns null only after the follower has been stopped.
+     *
+     * @param follower           follower of the audit log
+     * @param maxBufferedRecords window size in audit records
+     * @param maxEventIdDistance window size in event id distance
+     * @param stableMillis       time after which a buffered event is emitted
+     */
+    public AuditEventReader(AuditLogFollower follower, long maxBufferedRecords, long maxEventIdDistance,
+                            long stableMillis) {
+        this.maxBufferedRecords = maxBufferedRecords;
+        this.maxEventIdDistance = maxEventIdDistance;
+        this.memoryMapped = false;
+        this.follower = follower;
+        this.stableMillis = stableMillis;
+    }
+
+    /**
+     * In follow mode, sets the callback that is run on the reading thread while no records are
+     * written, e.g. to flush what has been built from the events returned so far
+     */
+    public void setIdleListener(Runnable idleListener) {
+        this.idleListener = idleListener;
+    }
+
     /**
      * Convenience function to get the next stream and to initialize(open) it.
      * <p>
@@ -154,8 +273,16 @@ public class AuditEventReader {
             currentInputStreamReaderEntry.getValue().close();
             currentInputStreamReaderEntry = null; //set to null
         }
+        if (currentScanner != null) {
+            currentScanner.close();
+            currentScanner = null;
+        }
         if (inputStreamEntries.size() > 0) {
             SimpleEntry<String, InputStream> nextEntry = inputStreamEntries.removeFirst();
+            if (memoryMapped && nextEntry.getValue() instanceof FileInputStream) {
+                currentScanner = new MappedAuditLogScanner(((FileInputStream) nextEntry.getValue()).getChannel());
+                return;
+            }
             currentInputStreamReaderEntry = new SimpleEntry<String, BufferedReader>(
                     nextEntry.getKey(), new BufferedReader(new InputStreamReader(nextEntry.getValue())));
         }
@@ -163,33 +290,57 @@ public class AuditEventReader {
 
 
     /**
-     * Returns a map of key values for the event that is read from the stream(s)
+     * Returns the records of the event that is read from the stream(s) without parsing them
+     * <p>
+     * Records are read only until the reorder window is full, then the event with the
+     * smallest id is returned.
      * <p>
      * Null return value means EOF for all streams
      *
-     * @return map of key values of the read audit event
+     * @return records of the read audit event
      * @throws Exception IOException
      */
-    public Map<String, String> readEventData() throws Exception {
-        if (currentInputStreamReaderEntry == null
-                || sawDaemonRising) { //all streams processed or emptying the buffer because of DAEMON_START
-            return getEventData();
+    public EventRecords readEventRecords() throws Exception {
+        if ((currentInputStreamReaderEntry == null && currentScanner == null && follower == null)
+                || sawDaemonRising || isWindowFull()) { //all streams processed, emptying the buffer because of DAEMON_START or window full
+            return pollEventRecords();
         } else { // not all streams processed
-            while (true) { //read audit records until max amount read
-                String line = currentInputStreamReaderEntry.getValue().readLine();
+            while (true) { //read audit records until the window is full
+                String line;
+                if (follower != null) {
+                    //on a busy log a line is always available, so the age is checked before every read
+                    if (isOldestEventStable()) {
+                        break;
+                    }
+                    line = follower.readLine(Math.max(1, Math.min(stableMillis, 1000)));
+                    if (line == null) { //nothing written yet
+                        if (follower.isStopped() || isOldestEventStable()) {
+                            break;
+                        }
+                        if (idleListener != null) {
+                            idleListener.run();
+                        }
+                        continue;
+                    }
+                } else if (currentScanner != null) {
+                    line = currentScanner.next() ? currentScanner.getRecord() : null;
+                } else {
+                    line = currentInputStreamReaderEntry.getValue().readLine();
+                }
                 if (line == null) { //if input stream read completely
 //                    logger.log(Level.INFO, "Reading succeeded of '" + currentInputStreamReaderEntry.getKey() + "'");
                     initializeCurrentStreamReader(); //initialize the next stream
-                    if (currentInputStreamReaderEntry == null) { //if there was no next stream to be initialized
+                    if (currentInputStreamReaderEntry == null && currentScanner == null) { //if there was no next stream to be initialized
                         break;
                     }
                 } else { //if input stream not completely read yet
-                    if (line.contains("type=EOE")) {
+                    //The scanner already skips EOE and unused records and finds the event id in bytes
+                    if (currentScanner == null && line.contains("type=EOE")) {
                         //Ignoring EOE records since we don't use them
                         //and because EOE of DAEMON_START would break the code
                         continue;
                     }
-                    if (line.contains("type=DAEMON_START")) {
+                    if (currentScanner != null ? currentScanner.isDaemonStart() : line.contains("type=DAEMON_START")) {
                         //Going to stop reading until the buffer is empty
                         //Check if the buffer is already empty
                         //If already empty then continue reading from the stream else break
@@ -198,36 +349,123 @@ public class AuditEventReader {
                             break; //stop reading from the stream and empty the buffer
                         } else { //if buffer already empty
                             lastEventId = -1; //reset because event ids would start from a smaller number now
+                            daemonEpoch++;
+                            continue;
+                        }
+                    }
+                    Long eventId;
+                    if (currentScanner != null) {
+                        eventId = currentScanner.getEventId();
+                    } else {
+                        Matcher event_start_matcher = pattern_eventid.matcher(line);
+                        if (!event_start_matcher.find()) { //no event id
                             continue;
                         }
+                        eventId = CommonFunctions.parseLong(event_start_matcher.group(1), null);
                     }
-                    Matcher event_start_matcher = pattern_eventid.matcher(line);
-                    if (event_start_matcher.find()) { //get the event id
-                        Long eventId = CommonFunctions.parseLong(event_start_matcher.group(1), null);
-                        if (eventId == null) { //if event id null then don't process
-                            logger.log(Level.SEVERE, "Event id null for line -> " + line);
+                    if (eventId == null) { //if event id null then don't process
+                        logger.log(Level.SEVERE, "Event id null for line -> " + line);
+                    } else {
+                        if (eventId <= lastEventId) {
+                            logger.log(Level.WARNING, "Out of order event beyond the window size -> " + line);
                         } else {
-                            if (eventId <= lastEventId) {
-                                logger.log(Level.WARNING, "Out of order event beyond the window size -> " + line);
-                            } else {
-                                currentlyBufferedRecords++; //increment the record count
-                                if (eventIdToEventRecords.get(eventId) == null) {
-                                    eventIdToEventRecords.put(eventId, new HashSet<String>());
-                                    eventIds.add(eventId); //add event id
+                            currentlyBufferedRecords++; //increment the record count
+                            if (eventIdToEventRecords.get(eventId) == null) {
+                                eventIdToEventRecords.put(eventId, new HashSet<String>());
+                                eventIds.add(eventId); //add event id
+                                if (follower != null) {
+                                    eventIdToArrivalMillis.put(eventId, System.currentTimeMillis());
                                 }
-                                eventIdToEventRecords.get(eventId).add(line); //add audit record
+                            }
+                            eventIdToEventRecords.get(eventId).add(line); //add audit record
+                            if (isWindowFull()) {
+                                break; //emit the oldest event
                             }
                         }
                     }
                 }
             }
             //just return the one event
-            return getEventData();
+            return pollEventRecords();
+        }
+    }
+
+    /**
+     * @return event id of the event last returned by {@link #readEventData()}
+     */
+    public long getLastEventId() {
+        return lastOutputEventId;
+    }
+
+    /**
+     * @return number of DAEMON_START records that preceded the event last returned by
+     * {@link #readEventData()} in this reader's streams
+     */
+    public long getLastEventEpoch() {
+        return lastEventEpoch;
+    }
+
+    /**
+     * In follow mode, checks if the event with the smallest id has been buffered for longer
+     * than the time after which events are considered complete
+     */
+    private boolean isOldestEventStable() {
+        if (eventIds.isEmpty()) {
+            return false;
+        }
+        Long arrivalMillis = eventIdToArrivalMillis.get(eventIds.first());
+        return arrivalMillis == null || System.currentTimeMillis() - arrivalMillis >= stableMillis;
+    }
+
+    /**
+     * Checks if the buffered records exceed either of the reorder window limits
+     *
+     * @return true if the event with the smallest id has fallen out of the window
+     */
+    private boolean isWindowFull() {
+        if (eventIds.isEmpty()) {
+            return false;
+        }
+        if (maxBufferedRecords > 0 && currentlyBufferedRecords >= maxBufferedRecords) {
+            return true;
+        }
+        return maxEventIdDistance > 0 && eventIds.last() - eventIds.first() >= maxEventIdDistance;
+    }
+
+    /**
+     * Returns the map of key values for the event that is read from the stream(s)
+     * <p>
+     * Records are read only until the reorder window is full, then the event with the
+     * smallest id is returned.
+     * <p>
+     * Null return value means EOF for all streams
+     *
+     * @return map of key values of the read audit event
+     * @throws Exception IOException
+     */
+    @Override
+    public Map<String, String> readEventData() throws Exception {
+        EventRecords eventRecords = readEventRecords();
+        return eventRecords == null ? null : parseEventRecords(eventRecords);
+    }
+
+    /**
+     * Parses the grouped records of an event. Does not depend on the state of any reader
+     * so events can be parsed on other threads.
+     *
+     * @param eventRecords records of the event
+     * @return map of key values for the event
+     */
+    public static Map<String, String> parseEventRecords(EventRecords eventRecords) {
+        AuditEvent eventData = new AuditEvent();
+        for (String eventRecord : eventRecords.getRecords()) {
+            parseEventLine(eventRecord, eventData);
         }
+        return eventData;
     }
 
     /**
-     * Returns the map of key values for the event with the smallest event id
+     * Returns the records of the event with the smallest event id
      * <p>
      * Because of DAEMON_START logic, make sure this function is called knowing that
      * the buffer isn't empty. Because if it is then this function would return null
@@ -237,46 +475,42 @@ public class AuditEventReader {
      * input stream again after that. Done to avoid false reordering of events based
      * on event ids.
      *
-     * @return map of key values for the event. Null if none found.
+     * @return records of the event. Null if none found.
      * @throws Exception
      */
-    private Map<String, String> getEventData() throws Exception {
+    private EventRecords pollEventRecords() throws Exception {
         Long eventId = eventIds.pollFirst();
         if (eventId == null) { //empty
             return null;
         } else {
             lastEventId = eventId;
+            lastOutputEventId = eventId;
+            lastEventEpoch = daemonEpoch;
             Set<String> eventRecords = eventIdToEventRecords.remove(eventId);
+            eventIdToArrivalMillis.remove(eventId);
             currentlyBufferedRecords -= eventRecords.size();
 
-            Map<String, String> eventData = new HashMap<String, String>();
-
-            if (eventRecords != null) {
-                for (String eventRecord : eventRecords) {
-                    eventData.putAll(parseEventLine(eventRecord));
-                }
-            }
             if (eventIds.size() == 0) { //Buffer emptied
                 if (sawDaemonRising) { //Check if we had stopped reading because of DAEMON_START
                     sawDaemonRising = false;
                     lastEventId = -1; //reset
+                    daemonEpoch++;
                     //Doing this here because we don't want to return null before starting to read
                     //from the file again
                 }
             }
 
-            return eventData;
+            return new EventRecords(eventId, lastEventEpoch, eventRecords);
         }
     }
 
     /**
-     * Creates a map with key values as needed by the Audit reporter from audit records of an event
+     * Adds the key values as needed by the Audit reporter from an audit record to the event
      *
-     * @param line event record to parse
-     * @return map of key values for the argument record
+     * @param line                 event record to parse
+     * @param auditRecordKeyValues key values of the event the record belongs to
      */
-    private Map<String, String> parseEventLine(String line) {
-        Map<String, String> auditRecordKeyValues = new HashMap<String, String>();
+    private static void parseEventLine(String line, Map<String, String> auditRecordKeyValues) {
 
         Matcher event_start_matcher = pattern_message_start.matcher(line);
         if (event_start_matcher.find()) {
@@ -358,43 +592,53 @@ public class AuditEventReader {
                 auditRecordKeyValues.put(NAMETYPE_PREFIX + itemNumber, nametype);
                 auditRecordKeyValues.put(MODE_PREFIX + itemNumber, mode);
             } else if (type.equals(RECORD_TYPE_EXECVE)) {
-                Matcher key_value_matcher = pattern_key_value.matcher(messageData);
-                while (key_value_matcher.find()) {
-                    auditRecordKeyValues.put(EXECVE_PREFIX + key_value_matcher.group(1), key_value_matcher.group(2));
-                }
+                CommonFunctions.putKeyValPairs(messageData, EXECVE_PREFIX, auditRecordKeyValues);
             } else if (type.equals(RECORD_TYPE_FD_PAIR)) {
-                Matcher key_value_matcher = pattern_key_value.matcher(messageData);
-                while (key_value_matcher.find()) {
-                    auditRecordKeyValues.put(key_value_matcher.group(1), key_value_matcher.group(2));
-                }
+                CommonFunctions.putKeyValPairs(messageData, "", auditRecordKeyValues);
             } else if (type.equals(RECORD_TYPE_SOCKETCALL)) {
-                Matcher key_value_matcher = pattern_key_value.matcher(messageData);
-                while (key_value_matcher.find()) {
-                    auditRecordKeyValues.put("socketcall_" + key_value_matcher.group(1), key_value_matcher.group(2));
-                }
+                CommonFunctions.putKeyValPairs(messageData, "socketcall_", auditRecordKeyValues);
             } else if (type.equals(RECORD_TYPE_SOCKADDR)) {
-                Matcher key_value_matcher = pattern_key_value.matcher(messageData);
-                while (key_value_matcher.find()) {
-                    auditRecordKeyValues.put(key_value_matcher.group(1), key_value_matcher.group(2));
-                }
+                CommonFunctions.putKeyValPairs(messageData, "", auditRecordKeyValues);
             } else if (type.equals(RECORD_TYPE_NETFILTER_PKT)) {
                 auditRecordKeyValues.put(TIME, time); // add time
                 auditRecordKeyValues.put(RECORD_TYPE_KEY, RECORD_TYPE_NETFILTER_PKT); // type
                 // rest of the keys as is below
-                Matcher key_value_matcher = pattern_key_value.matcher(messageData);
-                while (key_value_matcher.find()) {
-                    auditRecordKeyValues.put(key_value_matcher.group(1), key_value_matcher.group(2));
-                }
+                CommonFunctions.putKeyValPairs(messageData, "", auditRecordKeyValues);
             } else if (type.equals(RECORD_TYPE_MMAP)) {
-                Matcher key_value_matcher = pattern_key_value.matcher(messageData);
-                while (key_value_matcher.find()) {
-                    auditRecordKeyValues.put(key_value_matcher.group(1), key_value_matcher.group(2));
-                }
+                CommonFunctions.putKeyValPairs(messageData, "", auditRecordKeyValues);
             } else {
                 //System.out.println("I CANNOT HANDLE THIS TYPE:"  + type+ " line " + line);
             }
         }
+    }
 
-        return auditRecordKeyValues;
+    /**
+     * Audit records of one event, grouped by the reader but not parsed yet
+     */
+    public static final class EventRecords {
+        private final long eventId;
+        private final long epoch;
+        private final Set<String> records;
+
+        EventRecords(long eventId, long epoch, Set<String> records) {
+            this.eventId = eventId;
+            this.epoch = epoch;
+            this.records = records;
+        }
+
+        public long getEventId() {
+            return eventId;
+        }
+
+        /**
+         * @return number of DAEMON_START records that preceded the event in the reader's streams
+         */
+        public long getEpoch() {
+            return epoch;
+        }
+
+        public Set<String> getRecords() {
+            return records;
+        }
     }
-}
\ No newline at end of file
+}
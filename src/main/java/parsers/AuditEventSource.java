@@ -0,0 +1,18 @@
+package parsers;
+
+import java.util.Map;
+
+/**
+ * Ordered stream of audit events as consumed by {@link ParseLinuxAudit#finishEvent(Map)}
+ */
+public interface AuditEventSource {
+    /**
+     * Returns a map of key values for the next audit event
+     * <p>
+     * Null return value means EOF for all streams
+     *
+     * @return map of key values of the read audit event
+     * @throws Exception IOException
+     */
+    Map<String, String> readEventData() throws Exception;
+}
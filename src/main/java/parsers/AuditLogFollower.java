@@ -0,0 +1,190 @@
+package parsers;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Reads the lines of an audit log that is still being written, like 'tail -F'.
+ * <p>
+ * Only complete lines are returned, a line that is still being written is kept until its
+ * newline arrives. When the log is rotated, i.e. the path refers to a different file than the
+ * one being read, the rest of the old file is read before continuing with the new file from its
+ * beginning. A log that is truncated in place is read again from its beginning.
+ */
+public class AuditLogFollower implements Closeable {
+    private static final long POLL_MILLIS = 200;
+
+    private final Path path;
+    private final Charset charset = Charset.defaultCharset();
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(1 << 16);
+    private final ArrayDeque<String> lines = new ArrayDeque<>();
+
+    private FileChannel channel;
+    private Object fileKey;
+    private long position = 0;
+    private byte[] partialLine = new byte[4096];
+    private int partialLength = 0;
+    private volatile boolean stopped = false;
+
+    /**
+     * @param logFile path of the audit log, which is read from its beginning
+     * @throws IOException if the log couldn't be opened
+     */
+    public AuditLogFollower(String logFile) throws IOException {
+        this.path = Paths.get(logFile);
+        if (!Files.exists(path)) {
+            throw new IllegalArgumentException("Log file " + path.toAbsolutePath() + " doesn't exist");
+        }
+        open();
+    }
+
+    /**
+     * Returns the next complete line, waiting up to the given time for it to be written
+     *
+     * @param timeoutMillis maximum time to wait
+     * @return the line without the line terminator, or null if no line was written in time or
+     * if the follower has been stopped
+     * @throws IOException          if reading failed
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public String readLine(long timeoutMillis) throws IOException, InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (true) {
+            if (!lines.isEmpty()) {
+                return lines.poll();
+            }
+            if (stopped) {
+                return null;
+            }
+            if (read() > 0) {
+                continue;
+            }
+            if (isRotated()) {
+                // everything of the old file has been read, a line without newline is complete now
+                finishPartialLine();
+                open();
+                continue;
+            }
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return null;
+            }
+            Thread.sleep(Math.min(POLL_MILLIS, remaining));
+        }
+    }
+
+    /**
+     * Makes {@link #readLine(long)} return null from now on. Can be called from any thread.
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    public boolean isStopped() {
+        return stopped;
+    }
+
+    @Override
+    public void close() throws IOException {
+        stopped = true;
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    private void open() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+        try {
+            channel = FileChannel.open(path);
+            fileKey = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+        } catch (NoSuchFileException e) {
+            // rotated but the new log hasn't been created yet
+            fileKey = null;
+        }
+        position = 0;
+        partialLength = 0;
+    }
+
+    /**
+     * Reads what has been appended to the current file into complete lines
+     *
+     * @return number of bytes read
+     */
+    private int read() throws IOException {
+        if (channel == null) {
+            return 0;
+        }
+        if (channel.size() < position) {
+            // truncated in place
+            position = 0;
+            partialLength = 0;
+        }
+        readBuffer.clear();
+        int read = channel.read(readBuffer, position);
+        if (read <= 0) {
+            return 0;
+        }
+        position += read;
+        byte[] bytes = readBuffer.array();
+        int lineStart = 0;
+        for (int i = 0; i < read; i++) {
+            if (bytes[i] == '\n') {
+                appendPartialLine(bytes, lineStart, i);
+                finishPartialLine();
+                lineStart = i + 1;
+            }
+        }
+        appendPartialLine(bytes, lineStart, read);
+        return read;
+    }
+
+    private void appendPartialLine(byte[] bytes, int start, int end) {
+        int length = end - start;
+        if (partialLength + length > partialLine.length) {
+            partialLine = Arrays.copyOf(partialLine, Math.max(partialLength + length, partialLine.length * 2));
+        }
+        System.arraycopy(bytes, start, partialLine, partialLength, length);
+        partialLength += length;
+    }
+
+    private void finishPartialLine() {
+        int length = partialLength;
+        if (length > 0 && partialLine[length - 1] == '\r') {
+            length--;
+        }
+        if (length > 0) {
+            lines.add(new String(partialLine, 0, length, charset));
+        }
+        partialLength = 0;
+    }
+
+    /**
+     * @return true if the path now refers to a different file than the one being read
+     */
+    private boolean isRotated() throws IOException {
+        try {
+            Object currentKey = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+            if (channel == null) {
+                return true; // the new log has been created
+            }
+            return currentKey != null && !Objects.equals(currentKey, fileKey);
+        } catch (NoSuchFileException e) {
+            return false; // keep reading the old file until the new one appears
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package parsers;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Audit log scanner which reads the log through memory mapped regions of the file.
+ * <p>
+ * Newlines, the record type and the event id in the 'msg=audit(time:eventid):' header are
+ * found directly in the mapped bytes. Records of types that are never read by the parser
+ * (EOE, PROCTITLE, CRED_*, ...) are skipped without being decoded, so only the records that
+ * end up in an event are turned into Strings.
+ */
+public class MappedAuditLogScanner implements Closeable {
+    private static final int DEFAULT_REGION_SIZE = 64 * 1024 * 1024;
+
+    private static final byte[] TYPE_KEY = "type=".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] MSG_KEY = "msg=audit(".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] TYPE_DAEMON_START = "DAEMON_START".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * Record types that AuditEventReader.parseEventLine extracts key values from
+     */
+    private static final byte[][] PARSED_RECORD_TYPES = {
+            AuditEventReader.RECORD_TYPE_SYSCALL.getBytes(StandardCharsets.US_ASCII),
+            AuditEventReader.RECORD_TYPE_PATH.getBytes(StandardCharsets.US_ASCII),
+            AuditEventReader.RECORD_TYPE_CWD.getBytes(StandardCharsets.US_ASCII),
+            AuditEventReader.RECORD_TYPE_EXECVE.getBytes(StandardCharsets.US_ASCII),
+            AuditEventReader.RECORD_TYPE_SOCKADDR.getBytes(StandardCharsets.US_ASCII),
+            AuditEventReader.RECORD_TYPE_FD_PAIR.getBytes(StandardCharsets.US_ASCII),
+            AuditEventReader.RECORD_TYPE_SOCKETCALL.getBytes(StandardCharsets.US_ASCII),
+            AuditEventReader.RECORD_TYPE_NETFILTER_PKT.getBytes(StandardCharsets.US_ASCII),
+            AuditEventReader.RECORD_TYPE_MMAP.getBytes(StandardCharsets.US_ASCII),
+            AuditEventReader.RECORD_TYPE_USER.getBytes(StandardCharsets.US_ASCII)
+    };
+
+    private final FileChannel channel;
+    private final long fileSize;
+    private final Charset charset = Charset.defaultCharset();
+
+    private MappedByteBuffer region;
+    private long regionOffset = 0;
+    private int regionSize = DEFAULT_REGION_SIZE;
+    private int position = 0;
+    private byte[] lineBuffer = new byte[4096];
+
+    /**
+     * Current record, event id of the current record and whether it is a DAEMON_START record
+     */
+    private String record;
+    private long eventId;
+    private boolean daemonStart;
+
+    public MappedAuditLogScanner(FileChannel channel) throws IOException {
+        this.channel = channel;
+        this.fileSize = channel.size();
+    }
+
+    /**
+     * Advances to the next record which is either a DAEMON_START record or a record that
+     * is parsed by the reader.
+     *
+     * @return false if the end of the file has been reached
+     * @throws IOException if mapping the file failed
+     */
+    public boolean next() throws IOException {
+        while (true) {
+            if (region == null || position >= region.limit()) {
+                long offset = region == null ? 0 : regionOffset + position;
+                if (offset >= fileSize) {
+                    return false;
+                }
+                map(offset);
+            }
+            int end = indexOf((byte) '\n', position, region.limit());
+            if (end < 0) {
+                if (regionOffset + region.limit() < fileSize) {
+                    // line continues past the region, map again starting at the line
+                    map(regionOffset + position);
+                    continue;
+                }
+                end = region.limit(); // last line without a newline
+            }
+            int start = position;
+            position = Math.min(end + 1, region.limit());
+            if (end > start && region.get(end - 1) == '\r') {
+                end--;
+            }
+            if (accept(start, end)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return the current record. Empty for DAEMON_START records since they are never parsed.
+     */
+    public String getRecord() {
+        return record;
+    }
+
+    /**
+     * @return event id of the current record
+     */
+    public long getEventId() {
+        return eventId;
+    }
+
+    /**
+     * @return true if the current record is of type DAEMON_START
+     */
+    public boolean isDaemonStart() {
+        return daemonStart;
+    }
+
+    @Override
+    public void close() throws IOException {
+        region = null;
+        channel.close();
+    }
+
+    private void map(long offset) throws IOException {
+        if (region != null && offset == regionOffset) {
+            // a single line is longer than the region
+            regionSize = (int) Math.min(Integer.MAX_VALUE, (long) regionSize * 2);
+        }
+        long length = Math.min(regionSize, fileSize - offset);
+        region = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+        regionOffset = offset;
+        position = 0;
+    }
+
+    /**
+     * Checks the record type and the event id of the line [start, end) and decodes it
+     * only if it is needed.
+     */
+    private boolean accept(int start, int end) {
+        int typeStart = indexOf(TYPE_KEY, start, end);
+        if (typeStart < 0) {
+            return false;
+        }
+        typeStart += TYPE_KEY.length;
+        int typeEnd = indexOf((byte) ' ', typeStart, end);
+        if (typeEnd < 0) {
+            return false;
+        }
+        if (regionEquals(typeStart, typeEnd, TYPE_DAEMON_START)) {
+            daemonStart = true;
+            record = "";
+            eventId = -1;
+            return true;
+        }
+        boolean parsed = false;
+        for (byte[] recordType : PARSED_RECORD_TYPES) {
+            if (regionEquals(typeStart, typeEnd, recordType)) {
+                parsed = true;
+                break;
+            }
+        }
+        if (!parsed) {
+            return false;
+        }
+        int msgStart = indexOf(MSG_KEY, typeEnd, end);
+        if (msgStart < 0) {
+            return false;
+        }
+        int idStart = indexOf((byte) ':', msgStart + MSG_KEY.length, end);
+        if (idStart < 0) {
+            return false;
+        }
+        long id = 0;
+        int i = idStart + 1;
+        for (; i < end; i++) {
+            byte b = region.get(i);
+            if (b < '0' || b > '9') {
+                break;
+            }
+            id = id * 10 + (b - '0');
+        }
+        if (i == idStart + 1 || i >= end || region.get(i) != ')') {
+            return false;
+        }
+        daemonStart = false;
+        eventId = id;
+        record = decode(start, end);
+        return true;
+    }
+
+    private String decode(int start, int end) {
+        int length = end - start;
+        if (lineBuffer.length < length) {
+            lineBuffer = new byte[Math.max(length, lineBuffer.length * 2)];
+        }
+        for (int i = 0; i < length; i++) {
+            lineBuffer[i] = region.get(start + i);
+        }
+        return new String(lineBuffer, 0, length, charset);
+    }
+
+    private int indexOf(byte value, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (region.get(i) == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int indexOf(byte[] value, int from, int to) {
+        int last = to - value.length;
+        outer:
+        for (int i = from; i <= last; i++) {
+            for (int j = 0; j < value.length; j++) {
+                if (region.get(i + j) != value[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private boolean regionEquals(int start, int end, byte[] value) {
+        if (end - start != value.length) {
+            return false;
+        }
+        for (int j = 0; j < value.length; j++) {
+            if (region.get(start + j) != value[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,278 @@
+package parsers;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reads a set of audit logs, e.g. the rotated files audit.log.N ... audit.log.1 audit.log,
+ * with one {@link AuditEventReader} per file on its own thread and merges their events into
+ * the order in which a single reader would have returned them from the concatenated files.
+ * <p>
+ * Events are ordered by (DAEMON_START epoch, event id). The epoch of an event is the number
+ * of DAEMON_START records that precede it in all files, so each thread first counts the
+ * DAEMON_START records of its file to give the files after it their starting epoch, and then
+ * parses its file. An event whose records were split across two files by the rotation is
+ * returned once with the key values of both parts.
+ */
+public class ParallelAuditEventReader implements AuditEventSource {
+    private static final Logger logger = LoggerFactory.getLogger(ParallelAuditEventReader.class);
+
+    /**
+     * Number of parsed events each file thread may run ahead of the merge
+     */
+    private static final int QUEUE_CAPACITY = 1024;
+
+    private static final byte[] TYPE_DAEMON_START = "type=DAEMON_START".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] TYPE_EOE = "type=EOE".getBytes(StandardCharsets.US_ASCII);
+
+    private final List<FileWorker> workers = new ArrayList<>();
+
+    /**
+     * Next event of every file that has not been read completely yet
+     */
+    private final PriorityQueue<ParsedEvent> heads = new PriorityQueue<>();
+
+    private boolean started = false;
+
+    /**
+     * Create instance of the class that reads the given files in parallel, each with the given
+     * reorder window
+     *
+     * @param logFiles           paths of the audit logs, oldest first
+     * @param maxBufferedRecords window size in audit records
+     * @param maxEventIdDistance window size in event id distance
+     * @param memoryMapped       scan the files with {@link MappedAuditLogScanner}
+     */
+    public ParallelAuditEventReader(List<String> logFiles, long maxBufferedRecords, long maxEventIdDistance,
+                                    boolean memoryMapped) {
+        if (logFiles.isEmpty()) {
+            throw new IllegalArgumentException("No log files to read");
+        }
+        for (String logFile : logFiles) {
+            File file = new File(logFile);
+            if (!file.exists()) {
+                throw new IllegalArgumentException("Log file " + file.getAbsolutePath() + " doesn't exist");
+            }
+        }
+        for (int i = 0; i < logFiles.size(); i++) {
+            workers.add(new FileWorker(i, logFiles.get(i), maxBufferedRecords, maxEventIdDistance, memoryMapped));
+        }
+    }
+
+    /**
+     * Returns the given log file preceded by its rotated files, oldest first. I.e. for audit.log
+     * this returns audit.log.N, ..., audit.log.2, audit.log.1, audit.log
+     *
+     * @param logFile path of the current audit log
+     * @return paths of the existing files
+     */
+    public static List<String> getRotatedLogFiles(String logFile) {
+        File file = new File(logFile);
+        File directory = file.getAbsoluteFile().getParentFile();
+        Pattern pattern_rotated = Pattern.compile(Pattern.quote(file.getName()) + "\\.([0-9]+)");
+        TreeMap<Long, String> rotatedFiles = new TreeMap<>(Comparator.reverseOrder());
+        String[] names = directory == null ? null : directory.list();
+        if (names != null) {
+            for (String name : names) {
+                Matcher rotated_matcher = pattern_rotated.matcher(name);
+                if (rotated_matcher.matches()) {
+                    rotatedFiles.put(Long.parseLong(rotated_matcher.group(1)), new File(file.getParentFile(), name).getPath());
+                }
+            }
+        }
+        List<String> logFiles = new ArrayList<>(rotatedFiles.values());
+        if (file.exists()) {
+            logFiles.add(logFile);
+        }
+        return logFiles;
+    }
+
+    @Override
+    public Map<String, String> readEventData() throws Exception {
+        if (!started) {
+            start();
+        }
+        ParsedEvent first = heads.poll();
+        if (first == null) {
+            return null;
+        }
+        advance(first.worker);
+        // the same event continued in the next file
+        while (!heads.isEmpty() && heads.peek().compareTo(first.epoch, first.eventId) == 0) {
+            ParsedEvent part = heads.poll();
+            first.eventData.putAll(part.eventData);
+            advance(part.worker);
+        }
+        return first.eventData;
+    }
+
+    private void start() throws Exception {
+        started = true;
+        for (FileWorker worker : workers) {
+            Thread thread = new Thread(worker, "audit-reader-" + worker.index);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        long baseEpoch = 0;
+        for (FileWorker worker : workers) {
+            worker.baseEpoch = baseEpoch;
+            try {
+                baseEpoch += worker.daemonStarts.get();
+            } catch (ExecutionException e) {
+                throw new Exception("Failed to read '" + worker.logFile + "'", e.getCause());
+            }
+        }
+        for (FileWorker worker : workers) {
+            advance(worker);
+        }
+    }
+
+    /**
+     * Takes the next event of the worker's file, if any, into the heads
+     */
+    private void advance(FileWorker worker) throws Exception {
+        Object next = worker.queue.take();
+        if (next instanceof ParsedEvent) {
+            ParsedEvent event = (ParsedEvent) next;
+            event.epoch += worker.baseEpoch;
+            heads.add(event);
+        } else if (next instanceof Throwable) {
+            throw new Exception("Failed to read '" + worker.logFile + "'", (Throwable) next);
+        } else {
+            logger.debug("Read completely '" + worker.logFile + "'");
+        }
+    }
+
+    /**
+     * Counts the DAEMON_START records in the file the same way as {@link AuditEventReader},
+     * i.e. lines that contain 'type=DAEMON_START' but not 'type=EOE'
+     *
+     * @param logFile path of the audit log
+     * @return number of DAEMON_START records
+     * @throws IOException if reading the file failed
+     */
+    static long countDaemonStarts(String logFile) throws IOException {
+        long count = 0;
+        int daemonStartMatched = 0, eoeMatched = 0;
+        boolean daemonStart = false, eoe = false;
+        byte[] buffer = new byte[1 << 20];
+        try (InputStream inputStream = new FileInputStream(logFile)) {
+            int read;
+            while ((read = inputStream.read(buffer)) > 0) {
+                for (int i = 0; i < read; i++) {
+                    byte b = buffer[i];
+                    if (b == '\n') {
+                        if (daemonStart && !eoe) {
+                            count++;
+                        }
+                        daemonStart = eoe = false;
+                        daemonStartMatched = eoeMatched = 0;
+                        continue;
+                    }
+                    // neither pattern has a proper prefix that is also its suffix
+                    daemonStartMatched = b == TYPE_DAEMON_START[daemonStartMatched] ? daemonStartMatched + 1
+                            : b == TYPE_DAEMON_START[0] ? 1 : 0;
+                    if (daemonStartMatched == TYPE_DAEMON_START.length) {
+                        daemonStart = true;
+                        daemonStartMatched = 0;
+                    }
+                    eoeMatched = b == TYPE_EOE[eoeMatched] ? eoeMatched + 1 : b == TYPE_EOE[0] ? 1 : 0;
+                    if (eoeMatched == TYPE_EOE.length) {
+                        eoe = true;
+                        eoeMatched = 0;
+                    }
+                }
+            }
+        }
+        if (daemonStart && !eoe) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * An event read from one of the files
+     */
+    private static class ParsedEvent implements Comparable<ParsedEvent> {
+        final FileWorker worker;
+        final long eventId;
+        final Map<String, String> eventData;
+        long epoch;
+
+        ParsedEvent(FileWorker worker, long epoch, long eventId, Map<String, String> eventData) {
+            this.worker = worker;
+            this.epoch = epoch;
+            this.eventId = eventId;
+            this.eventData = eventData;
+        }
+
+        int compareTo(long epoch, long eventId) {
+            int compare = Long.compare(this.epoch, epoch);
+            return compare != 0 ? compare : Long.compare(this.eventId, eventId);
+        }
+
+        @Override
+        public int compareTo(ParsedEvent other) {
+            int compare = compareTo(other.epoch, other.eventId);
+            return compare != 0 ? compare : Integer.compare(worker.index, other.worker.index);
+        }
+    }
+
+    /**
+     * Counts the DAEMON_START records of one file and then parses it into its queue. The queue
+     * ends with either the worker itself as the end of file marker or the error that stopped it.
+     */
+    private static class FileWorker implements Runnable {
+        final int index;
+        final String logFile;
+        final long maxBufferedRecords, maxEventIdDistance;
+        final boolean memoryMapped;
+        final CompletableFuture<Long> daemonStarts = new CompletableFuture<>();
+        final BlockingQueue<Object> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        // set by the merging thread before the first event is taken
+        long baseEpoch;
+
+        FileWorker(int index, String logFile, long maxBufferedRecords, long maxEventIdDistance, boolean memoryMapped) {
+            this.index = index;
+            this.logFile = logFile;
+            this.maxBufferedRecords = maxBufferedRecords;
+            this.maxEventIdDistance = maxEventIdDistance;
+            this.memoryMapped = memoryMapped;
+        }
+
+        @Override
+        public void run() {
+            try {
+                daemonStarts.complete(countDaemonStarts(logFile));
+                AuditEventReader reader = new AuditEventReader(logFile, maxBufferedRecords, maxEventIdDistance, memoryMapped);
+                Map<String, String> eventData;
+                while ((eventData = reader.readEventData()) != null) {
+                    queue.put(new ParsedEvent(this, reader.getLastEventEpoch(), reader.getLastEventId(), eventData));
+                }
+                queue.put(this);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Throwable t) {
+                daemonStarts.completeExceptionally(t);
+                try {
+                    queue.put(t);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+}
@@ -1,24 +1,34 @@
 package parsers;
 
+import elastic.ElasticGraphSink;
+import elastic.TransportBulkBackend;
 import event.GraphEventType;
 import event.SYSCALL;
 import org.apache.tinkerpop.gremlin.structure.Graph;
-import org.apache.tinkerpop.gremlin.structure.Vertex;
 import org.apache.tinkerpop.gremlin.tinkergraph.structure.TinkerGraph;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import provgraph.ColumnarGraph;
+import provgraph.GraphBatch;
+import provgraph.GraphBatchWriter;
+import provgraph.GraphShards;
+import provgraph.GraphStream;
 import provgraph.GraphStructure;
-import provgraph.NodeProperty;
+import provgraph.ProcessLineage;
 import record.AddressPort;
+import record.AuditEvent;
+import record.DescriptorTable;
 import record.NetworkID;
 import record.PathRecord;
 import record.ProcessManager;
+import tracker.Algorithms;
 import tracker.Configuration;
 import utils.CommonFunctions;
 import utils.Utils;
 
 import java.io.File;
-import java.math.BigInteger;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.*;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -33,8 +43,7 @@ public class ParseLinuxAudit {
 
 
     private final Map<String, Integer> syscall_stats = new HashMap<>();
-    private final Map<String, Map<String, NetworkID>> descriptorsN = new HashMap<>();
-    private final Map<String, Map<String, Map<String, String>>> descriptorsF = new HashMap<>();
+    private final DescriptorTable descriptors = new DescriptorTable();
     private final HashSet<String> unsupportedsyscalls = new HashSet<>();
     private final int SIGCHLD = 17, CLONE_VFORK = 0x00004000, CLONE_VM = 0x00000100;
     private final int AT_FDCWD = -100;
@@ -42,12 +51,53 @@ public class ParseLinuxAudit {
     private static final String PROTOCOL_NAME_UDP = "udp", PROTOCOL_NAME_TCP = "tcp";
     private final int SOCK_STREAM = 1, SOCK_DGRAM = 2, SOCK_SEQPACKET = 5;
 
+    // Parsed events in the order they were handled, only kept if asked for since the list grows with the log
     private final ArrayList<Map<String, String>> eventlist = new ArrayList<>();
+    private final boolean retainEvents;
+
+    // Follower of the log in follow mode, to stop following from another thread
+    private volatile AuditLogFollower follower;
+    private volatile boolean followStopped = false;
+
+    // Closed time windows of the graph if it is sharded, see Configuration.shardWindowMinutes
+    private final GraphShards shards;
+    private final long windowMillis;
+    private long window = Long.MIN_VALUE;
+
+    // Export of the graph written while it is built, see Configuration.graphOutput
+    private GraphStream.Writer graphWriter;
+    // Elasticsearch indexing of the graph, see Configuration.elasticHosts
+    private ElasticGraphSink elasticSink;
+
+    // Vertex and edge intents of the events that are not in the graph yet, see Configuration.graphBatchEvents
+    private GraphBatch batch;
+    // Applies the batches on its own thread, see Configuration.asyncGraph
+    private GraphBatchWriter batchWriter;
+    // Time of the last flush, in follow mode a partial batch is flushed after Configuration.followStableMillis
+    private long lastFlushMillis = System.currentTimeMillis();
 
     public ParseLinuxAudit(Configuration config) {
+        this(config, false);
+    }
+
+    /**
+     * @param retainEvents keep the parsed events for {@link #getEventlist()}. They are not kept
+     *                     while following a log or building a sharded graph.
+     */
+    public ParseLinuxAudit(Configuration config, boolean retainEvents) {
         this.config = config;
-        this.prov_graph = TinkerGraph.open();
-        this.graph = new GraphStructure(prov_graph);
+        this.retainEvents = retainEvents;
+        this.prov_graph = newGraph();
+        this.graph = new GraphStructure(prov_graph, config.aggregateEdges, config.getGraphFilter());
+        this.batch = graph.newBatch();
+        this.windowMillis = config.shardWindowMinutes * 60 * 1000;
+        this.shards = windowMillis > 0
+                ? new GraphShards(new File(config.shardDirectory), config.shardResidentWindows, this::newGraph)
+                : null;
+    }
+
+    private Graph newGraph() {
+        return config.columnarGraph ? new ColumnarGraph() : TinkerGraph.open();
     }
 
     public void collectStats(String syscall) {
@@ -60,25 +110,99 @@ public class ParseLinuxAudit {
         }
     }
 
+    /**
+     * @return the parsed events, empty unless the parser was asked to retain them
+     */
     public ArrayList<Map<String, String>> getEventlist() {
         return eventlist;
     }
 
     public Graph getProvGraph() {
+        syncGraph();
         return prov_graph;
     }
 
+    /**
+     * @return launch tree and HOP_COUNT of the processes of the graph, of the current window
+     * if the graph is sharded
+     */
+    public ProcessLineage getProcessLineage() {
+        syncGraph();
+        return graph.getLineage();
+    }
+
+    /**
+     * @return the time windows of the graph or null if it is not sharded
+     */
+    public GraphShards getGraphShards() {
+        return shards;
+    }
+
+    /**
+     * @return traversals of the returned graph, which continue into the earlier windows of a
+     * sharded graph and read only the windows they reach
+     */
+    public Algorithms newAlgorithms() {
+        return new Algorithms(shards);
+    }
+
 
     public Graph parseLogFile(String path) throws Exception {
         if (path == null)
             return prov_graph;
+        if (path.endsWith(AuditEventAvroFile.FILE_EXTENSION)) {
+            return parseAvroFile(path);
+        }
+        if (path.endsWith(GraphStream.FILE_EXTENSION)) {
+            GraphStream.read(new File(path), prov_graph);
+            compactGraph();
+            return prov_graph;
+        }
         logger.debug("======= Parsing ======\n " + path);
-        AuditEventReader auditEventReader = new AuditEventReader(path);
+        openGraphExport();
+        AuditEventSource auditEventReader = null;
+        AuditEventCache.Writer cacheWriter = null;
+        if (config.eventCache && !config.parallelRotatedLogs) {
+            File cacheFile = AuditEventCache.getCacheFile(path);
+            auditEventReader = AuditEventCache.open(cacheFile, new File(path));
+            if (auditEventReader != null) {
+                logger.info("Reading events from cache " + cacheFile);
+            } else {
+                cacheWriter = new AuditEventCache.Writer(cacheFile, new File(path));
+            }
+        }
+        if (auditEventReader == null) {
+            auditEventReader = openLogFile(path);
+        }
+        AuditEventAvroFile.Writer avroWriter = config.avroOutput == null ? null
+                : new AuditEventAvroFile.Writer(new File(config.avroOutput));
         Map<String, String> eventData = new HashMap<String, String>();
-        while ((eventData = auditEventReader.readEventData()) != null) {
-            //System.out.println("Handling Event: " + eventData.toString());
-            finishEvent(eventData);
+        try {
+            while ((eventData = auditEventReader.readEventData()) != null) {
+                //System.out.println("Handling Event: " + eventData.toString());
+                if (cacheWriter != null) {
+                    cacheWriter.write(eventData);
+                }
+                if (avroWriter != null) {
+                    avroWriter.write(eventData);
+                }
+                finishEvent(eventData);
+            }
+            if (cacheWriter != null) {
+                cacheWriter.close();
+            }
+        } finally {
+            if (cacheWriter != null) {
+                cacheWriter.abort();
+            }
+            if (avroWriter != null) {
+                avroWriter.close();
+            }
+            if (auditEventReader instanceof AuditEventCache) {
+                ((AuditEventCache) auditEventReader).close();
+            }
         }
+        finishGraph();
         logger.debug("================================\n");
         logger.debug("Final Graph Size: " + Utils.getListFromIterator(prov_graph.edges()).size());
         logger.debug("Seen vertices: " + graph.seen_vertices.size());
@@ -90,18 +214,221 @@ public class ParseLinuxAudit {
         return prov_graph;
     }
 
+    /**
+     * Follows an audit log that is still being written and adds its events to the graph as
+     * they become complete. Returns once {@link #stopFollowing()} has been called or the
+     * thread has been interrupted.
+     *
+     * @param path path of the audit log
+     * @return the provenance graph
+     * @throws Exception if reading the log failed
+     */
+    public Graph followLogFile(String path) throws Exception {
+        logger.info("Following " + path);
+        openGraphExport();
+        try (AuditLogFollower logFollower = new AuditLogFollower(path)) {
+            follower = logFollower;
+            if (followStopped) {
+                logFollower.stop();
+            }
+            AuditEventReader reader = new AuditEventReader(logFollower, config.auditWindowRecords,
+                    config.auditWindowEventIds, config.followStableMillis);
+            // a partial batch shouldn't wait for more events while the log is quiet
+            reader.setIdleListener(this::flushBatch);
+            Map<String, String> eventData;
+            while ((eventData = reader.readEventData()) != null) {
+                finishEvent(eventData);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            follower = null;
+        }
+        finishGraph();
+        logger.info("Stopped following " + path + ", seen vertices: " + graph.seen_vertices.size()
+                + ", seen edges: " + graph.seen_edges.size());
+        return prov_graph;
+    }
+
+    /**
+     * Makes {@link #followLogFile(String)} return after the events that are already buffered.
+     * Can be called from any thread, also before following started.
+     */
+    public void stopFollowing() {
+        followStopped = true;
+        AuditLogFollower logFollower = follower;
+        if (logFollower != null) {
+            logFollower.stop();
+        }
+    }
+
+    /**
+     * Builds the graph from events that were saved in an avro file, see {@link AuditEventAvroFile}
+     *
+     * @param path path of the avro file
+     * @return the provenance graph
+     * @throws Exception if reading the file failed
+     */
+    public Graph parseAvroFile(String path) throws Exception {
+        logger.debug("======= Parsing Avro ======\n " + path);
+        openGraphExport();
+        try (AuditEventAvroFile avroFile = new AuditEventAvroFile(new File(path))) {
+            Map<String, String> eventData;
+            while ((eventData = avroFile.readEventData()) != null) {
+                finishEvent(eventData);
+            }
+        }
+        finishGraph();
+        logger.debug("Seen vertices: " + graph.seen_vertices.size());
+        logger.debug("Seen Edges: " + graph.seen_edges.size());
+        return prov_graph;
+    }
+
+    /**
+     * Completes the graph of the events passed to {@link #finishEvent(Map)}: applies the events
+     * that are still batched, stops the thread of an asynchronous graph and closes the exports
+     *
+     * @return the provenance graph
+     * @throws IOException if closing an export failed
+     */
+    public Graph finish() throws IOException {
+        finishGraph();
+        return prov_graph;
+    }
+
+    /**
+     * Moves the adjacency of a columnar graph into its compact form once the events are added
+     */
+    private void compactGraph() {
+        if (prov_graph instanceof ColumnarGraph) {
+            ((ColumnarGraph) prov_graph).compact();
+        }
+    }
+
+    /**
+     * Called once all events are added. A sharded graph also writes its last window, which
+     * stays the returned graph. Since the caller may summarize that graph, the shards read
+     * the window back from its segment.
+     */
+    private void finishGraph() throws IOException {
+        syncGraph();
+        if (batchWriter != null) {
+            batchWriter.close();
+            batchWriter = null;
+        }
+        compactGraph();
+        if (shards != null && window != Long.MIN_VALUE) {
+            shards.addWindow(prov_graph, window * windowMillis, (window + 1) * windowMillis, false);
+            window = Long.MIN_VALUE;
+        }
+        if (graphWriter != null) {
+            graphWriter.close();
+            graphWriter = null;
+        }
+        if (elasticSink != null) {
+            elasticSink.close();
+            elasticSink = null;
+        }
+    }
+
+    private void openGraphExport() throws IOException {
+        if (config.graphOutput != null && graphWriter == null) {
+            graphWriter = new GraphStream.Writer(new File(config.graphOutput));
+            graph.addListener(graphWriter);
+        }
+        if (config.elasticHosts != null && elasticSink == null) {
+            elasticSink = new ElasticGraphSink(new TransportBulkBackend(config.elasticHosts), config.elasticIndex,
+                    config.elasticBulkSize, config.elasticFlushMillis, config.elasticInFlight);
+            graph.addListener(elasticSink);
+        }
+    }
+
+    /**
+     * Closes the current window of a sharded graph when the event belongs to a later one.
+     * Events that are a little out of order stay in the current window.
+     */
+    private void moveToWindow(Map<String, String> eventData) {
+        long time = AuditEvent.timeMillisOf(eventData);
+        if (time < 0) {
+            return;
+        }
+        long eventWindow = time / windowMillis;
+        if (window == Long.MIN_VALUE) {
+            window = eventWindow;
+        } else if (eventWindow > window) {
+            syncGraph();
+            compactGraph();
+            try {
+                shards.addWindow(prov_graph, window * windowMillis, (window + 1) * windowMillis);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to write graph window", e);
+            }
+            window = eventWindow;
+            prov_graph = newGraph();
+            graph = graph.nextWindow(prov_graph);
+        }
+    }
+
+    private AuditEventSource openLogFile(String path) throws Exception {
+        if (config.parallelRotatedLogs) {
+            return new ParallelAuditEventReader(ParallelAuditEventReader.getRotatedLogFiles(path),
+                    config.auditWindowRecords, config.auditWindowEventIds, config.memoryMappedInput);
+        }
+        AuditEventReader reader = new AuditEventReader(path, config.auditWindowRecords,
+                config.auditWindowEventIds, config.memoryMappedInput);
+        return config.parseWorkers > 0 ? new PipelinedAuditEventReader(reader, config.parseWorkers) : reader;
+    }
+
     public void finishEvent(Map<String, String> eventData) {
         if (eventData == null) {
             logger.info("Null event data read");
             return;
         }
+        if (shards != null) {
+            moveToWindow(eventData);
+        }
         handleSyscallEvent(eventData);
+        batch.endEvent();
+        if (batch.getEventCount() >= config.graphBatchEvents
+                || (follower != null && System.currentTimeMillis() - lastFlushMillis >= config.followStableMillis)) {
+            flushBatch();
+        }
+    }
+
+    /**
+     * Hands the intents of the current batch to the graph, or to the writer thread
+     */
+    private void flushBatch() {
+        lastFlushMillis = System.currentTimeMillis();
+        if (batch.isEmpty()) {
+            batch.clear();
+            return;
+        }
+        if (config.asyncGraph) {
+            if (batchWriter == null) {
+                batchWriter = new GraphBatchWriter(graph, 3);
+            }
+            batch = batchWriter.submit(graph, batch);
+        } else {
+            graph.applyBatch(batch);
+            batch.clear();
+        }
+    }
+
+    /**
+     * Makes the graph contain all events that were handled so far
+     */
+    private void syncGraph() {
+        flushBatch();
+        if (batchWriter != null) {
+            batchWriter.await();
+        }
     }
 
     private void handleSyscallEvent(Map<String, String> eventData) {
         String eventId = eventData.get("eventid");
         try {
-            int syscallNum = CommonFunctions.parseInt(eventData.get("syscall"), -1);
+            int syscallNum = AuditEvent.syscallOf(eventData);
             int arch = 64;
             if (syscallNum == -1) {
                 //System.out.println("A non-syscall audit event OR missing syscall record with for event with id '" + eventId + "'" + eventData.toString());
@@ -112,10 +439,9 @@ public class ParseLinuxAudit {
                 unsupportedsyscalls.add(String.valueOf(syscallNum));
             }
             //convert all arguments from hexadecimal format to decimal format and replace them. done for convenience here and to avoid issues.
+            int failedArguments = AuditEvent.decodeArguments(eventData);
             for (int argumentNumber = 0; argumentNumber < 4; argumentNumber++) { //only 4 arguments received from linux audit
-                try {
-                    eventData.put("a" + argumentNumber, String.valueOf(new BigInteger(eventData.get("a" + argumentNumber), 16).longValue()));
-                } catch (Exception e) {
+                if ((failedArguments & (1 << argumentNumber)) != 0) {
                     if (eventData.containsKey(AuditEventReader.RECORD_TYPE_KEY) && eventData.get(AuditEventReader.RECORD_TYPE_KEY).contains(AuditEventReader.KMODULE_RECORD_TYPE)) {
 
                     } else {
@@ -126,7 +452,9 @@ public class ParseLinuxAudit {
             //System.out.println("Syscall: " + syscall.name());
             collectStats(syscall.name());
             // Add it to the list of events to be read sequentially
-            eventlist.add(eventData);
+            if (retainEvents && follower == null && shards == null) {
+                eventlist.add(eventData);
+            }
             switch (syscall) {
                 case EXIT:
                 case EXIT_GROUP:
@@ -221,20 +549,10 @@ public class ParseLinuxAudit {
         }
         String ppid = eventData.get("ppid");
         String key = pid;
-        if (graph.seen_proc_vertices.containsKey(key)) {
-            Vertex process = graph.seen_proc_vertices.get(key);
-            Vertex object = graph.addApplogVertex(eventData);
-            graph.addEdge(process, object, time, syscall.name(), GraphEventType.FILE_WRITE.name(), eventId);
-            // if (start)
-            // {start unit}
-            // if (end)
-//            pm.addEndUnit(pid,time);
-        } else {
-            Vertex process = graph.addProcessVertex(eventData);
-            Vertex object = graph.addApplogVertex(eventData);
-            graph.addEdge(process, object, time, syscall.name(), GraphEventType.FILE_WRITE.name(), eventId);
-//            System.out.println("Can find pid: "+ key);
-        }
+        // the process that was last seen with the pid, or a new one from the event
+        int process = batch.addProcessVertexOfPid(key, eventData);
+        int object = batch.addApplogVertex(eventData);
+        batch.addEdge(process, object, time, syscall.name(), GraphEventType.FILE_WRITE.name(), eventId);
     }
 
     private void handleSocketPair(Map<String, String> eventData, SYSCALL syscall) {
@@ -246,30 +564,31 @@ public class ParseLinuxAudit {
     }
 
     private void handleClose(Map<String, String> eventData) {
-        String pid = eventData.get(AuditEventReader.PID);
-        String fd = String.valueOf(CommonFunctions.parseLong(eventData.get(AuditEventReader.ARG0), -1L));
+        int pid = AuditEvent.pidOf(eventData);
+        int fd = toFd(AuditEvent.argumentOf(eventData, 0, -1L));
         SYSCALL syscall = SYSCALL.CLOSE;
         String time = eventData.get(AuditEventReader.TIME);
         String eventId = eventData.get(AuditEventReader.EVENT_ID);
         String path = eventData.get(AuditEventReader.PATH_PREFIX);
-        Map<String, String> fileEventData = removeFileDescriptors(pid, fd);
-        if (fileEventData == null) {
-            NetworkID networkID = removeNetworkDescriptors(pid, fd);
-            if (networkID != null) {
-                Vertex process = graph.addProcessVertex(eventData);
-                Vertex network = graph.addNetworkVertex("CLOSE", networkID.getLocalHost(), networkID.getLocalPort(),
-                        networkID.getRemoteHost(), networkID.getRemotePort(), "", networkID.getProtocol());
-                graph.addEdge(process, network, time, syscall.name(), GraphEventType.NETWORK_CLOSE.name(), eventId);
-            }
-        } else {
-            Vertex process = graph.addProcessVertex(eventData);
+        int descriptorType = descriptors.typeOf(pid, fd);
+        if (descriptorType == DescriptorTable.NETWORK) {
+            NetworkID networkID = descriptors.getNetwork(pid, fd);
+            descriptors.remove(pid, fd);
+            int process = batch.addProcessVertex(eventData);
+            int network = batch.addNetworkVertex("CLOSE", networkID.getLocalHost(), networkID.getLocalPort(),
+                    networkID.getRemoteHost(), networkID.getRemotePort(), "", networkID.getProtocol());
+            batch.addEdge(process, network, time, syscall.name(), GraphEventType.NETWORK_CLOSE.name(), eventId);
+        } else if (descriptorType == DescriptorTable.FILE) {
+            String filePath = descriptors.getPath(pid, fd);
+            descriptors.remove(pid, fd);
+            int process = batch.addProcessVertex(eventData);
 
             if ((path != null) && (path.contains(".so.") || path.endsWith(".so"))) {
-                Vertex module = graph.addModuleVertex(eventData);
-                graph.addEdge(module, process, time, syscall.name(), GraphEventType.MODULE_UNLOAD.name(), eventId);
+                int module = batch.addModuleVertex(eventData);
+                batch.addEdge(module, process, time, syscall.name(), GraphEventType.MODULE_UNLOAD.name(), eventId);
             } else {
-                Vertex file = graph.addFileVertex(fileEventData);
-                graph.addEdge(process, file, time, syscall.name(), GraphEventType.FILE_CLOSE.name(), eventId);
+                int file = batch.addFileVertex(filePath);
+                batch.addEdge(process, file, time, syscall.name(), GraphEventType.FILE_CLOSE.name(), eventId);
             }
         }
     }
@@ -297,10 +616,10 @@ public class ParseLinuxAudit {
             logger.info("Failed to build absolute path from log data", null, eventData.get("time"), eventId, syscall);
             return;
         }
-        Vertex process = graph.addProcessVertex(eventData);
+        int process = batch.addProcessVertex(eventData);
         eventData.put(AuditEventReader.PATH_PREFIX, deletedPath);
-        Vertex file = graph.addFileVertex(eventData);
-        graph.addEdge(process, file, time, syscall.name(), GraphEventType.FILE_UNLINK.name(), eventId);
+        int file = batch.addFileVertex(eventData);
+        batch.addEdge(process, file, time, syscall.name(), GraphEventType.FILE_UNLINK.name(), eventId);
     }
 
     private void handleRename(Map<String, String> eventData, SYSCALL syscall) {
@@ -333,12 +652,12 @@ public class ParseLinuxAudit {
             logger.info("Failed to create path(s)", null, time, eventId, syscall);
             return;
         }
-        Vertex process = graph.addProcessVertex(eventData);
+        int process = batch.addProcessVertex(eventData);
         eventData.put(AuditEventReader.PATH_PREFIX, oldFilePath);
-        Vertex srcFile = graph.addFileVertex(eventData);
+        int srcFile = batch.addFileVertex(eventData);
         eventData.put(AuditEventReader.PATH_PREFIX, newFilePath);
-        Vertex dstFile = graph.addFileVertex(eventData);
-        graph.addEdge(process, dstFile, time, syscall.name(), GraphEventType.FILE_RENAME.name(), eventId);
+        int dstFile = batch.addFileVertex(eventData);
+        batch.addEdge(process, dstFile, time, syscall.name(), GraphEventType.FILE_RENAME.name(), eventId);
     }
 
     private void handleForkClone(Map<String, String> eventData, SYSCALL syscall) {
@@ -347,7 +666,7 @@ public class ParseLinuxAudit {
         String oldPID = eventData.get("pid");
         String newPID = eventData.get("exit");
         if (syscall == SYSCALL.CLONE) {
-            Long flags = CommonFunctions.parseLong(eventData.get("a0"), 0L);
+            long flags = AuditEvent.argumentOf(eventData, 0, 0L);
             //source: http://www.makelinux.net/books/lkd2/ch03lev1sec3
             if ((flags & SIGCHLD) == SIGCHLD && (flags & CLONE_VM) == CLONE_VM && (flags & CLONE_VFORK) == CLONE_VFORK) { //is vfork
                 syscall = SYSCALL.VFORK;
@@ -356,7 +675,7 @@ public class ParseLinuxAudit {
             }
             //otherwise it is just clone
         }
-        Vertex oldProcess = graph.addProcessVertex(eventData); //will create if doesn't exist
+        int oldProcess = batch.addProcessVertex(eventData); //will create if doesn't exist
         Map<String, String> newEventData = new HashMap<String, String>();
         newEventData.putAll(eventData);
         newEventData.put("pid", newPID);
@@ -364,14 +683,14 @@ public class ParseLinuxAudit {
         newEventData.put("commandline", eventData.get("commandline"));
         newEventData.put("cwd", eventData.get("cwd"));
         newEventData.put("start time", time);
-        Vertex newProcess = graph.addProcessVertex(newEventData);
-        graph.addEdge(oldProcess, newProcess, time, syscall.toString(), GraphEventType.PROCESS_LAUNCH.name(), eventId);
+        int newProcess = batch.addProcessVertex(newEventData);
+        batch.addEdge(oldProcess, newProcess, time, syscall.toString(), GraphEventType.PROCESS_LAUNCH.name(), eventId);
     }
 
     private void handleExecve(Map<String, String> eventData) {
         String eventId = eventData.get("eventid");
         String time = eventData.get("time");
-        Vertex oldProcess = graph.addProcessVertex(eventData);
+        int oldProcess = batch.addProcessVertex(eventData);
         String commandline = null;
         if (eventData.get("execve_argc") != null) {
             Long argc = CommonFunctions.parseLong(eventData.get("execve_argc"), 0L);
@@ -385,23 +704,17 @@ public class ParseLinuxAudit {
         }
         eventData.put("commandline", commandline);
         eventData.put("start time", time);
-        Vertex newProcess = graph.addProcessVertex(eventData);
-        graph.addEdge(oldProcess, newProcess, time, SYSCALL.EXECVE.name(), GraphEventType.PROCESS_LAUNCH.name(), eventId);
+        int newProcess = batch.addProcessVertex(eventData);
+        batch.addEdge(oldProcess, newProcess, time, SYSCALL.EXECVE.name(), GraphEventType.PROCESS_LAUNCH.name(), eventId);
     }
 
     private void handleDup(Map<String, String> eventData, SYSCALL syscall) {
-        String pid = eventData.get("pid");
-        String fd = eventData.get("a0");
-        String newFD = eventData.get("exit"); //new fd returned in all: dup, dup2, dup3
-        if (!fd.equals(newFD)) { //if both fds same then it succeeds in case of dup2 and it does nothing so do nothing here too
-            if (checkInFileDescriptors(pid, fd)) {
-                addToFileDescriptors(pid, newFD, eventData);
-            } else if (checkInNetworkDescriptors(pid, fd)) {
-                addToNetworkDescriptors(pid, newFD, getInNetworkDescriptor(pid, fd));
-            } else {
-                //descriptors.duplicateDescriptor(pid, fd, newFD);
-                //System.out.println("need to add duplicate descriptors " + pid);
-            }
+        int pid = AuditEvent.pidOf(eventData);
+        int fd = toFd(AuditEvent.argumentOf(eventData, 0, -1L));
+        int newFd = toFd(AuditEvent.exitOf(eventData)); //new fd returned in all: dup, dup2, dup3
+        if (fd != newFd && newFd >= 0) { //if both fds same then it succeeds in case of dup2 and it does nothing so do nothing here too
+            // the new fd refers to the same file or socket as the old one
+            descriptors.duplicate(pid, fd, newFd);
         }
     }
 
@@ -428,12 +741,12 @@ public class ParseLinuxAudit {
     }
 
     private void handleOpen(Map<String, String> eventData, SYSCALL syscall) {
-        Long flags = CommonFunctions.parseLong(eventData.get(AuditEventReader.ARG1), 0L);
-        Long modeArg = CommonFunctions.parseLong(eventData.get(AuditEventReader.ARG2), 0L);
+        long flags = AuditEvent.argumentOf(eventData, 1, 0L);
+        long modeArg = AuditEvent.argumentOf(eventData, 2, 0L);
         String eventId = eventData.get(AuditEventReader.EVENT_ID);
         String pid = eventData.get(AuditEventReader.PID);
         String cwd = eventData.get(AuditEventReader.CWD);
-        String fd = eventData.get(AuditEventReader.EXIT);
+        int fd = toFd(AuditEvent.exitOf(eventData));
         String time = eventData.get(AuditEventReader.TIME);
         boolean isCreate = syscall == SYSCALL.CREATE || syscall == SYSCALL.CREAT; //TODO later on change only to CREAT only
         PathRecord pathRecord = getFirstPathWithNametype(eventData, AuditEventReader.NAMETYPE_CREATE);
@@ -456,7 +769,7 @@ public class ParseLinuxAudit {
             return;
         }
 
-        Vertex process = graph.addProcessVertex(eventData);
+        int process = batch.addProcessVertex(eventData);
         eventData.put(AuditEventReader.PATH_PREFIX, path);
         boolean openedForRead = false;
         String flagsArgs = "";
@@ -481,22 +794,22 @@ public class ParseLinuxAudit {
                 (flags & O_RDWR) == O_RDWR ||
                 (flags & O_APPEND) == O_APPEND ||
                 (flags & O_TRUNC) == O_TRUNC) {
-            Vertex file = graph.addFileVertex(eventData);
-            graph.addEdge(process, file, time, syscall.name(), GraphEventType.FILE_OPEN.name(), eventId);
+            int file = batch.addFileVertex(eventData);
+            batch.addEdge(process, file, time, syscall.name(), GraphEventType.FILE_OPEN.name(), eventId);
             pm.addSyscall(pid, syscall);
             openedForRead = false;
         } else if ((flags & O_RDONLY) == O_RDONLY) {
-            Vertex file = graph.addFileVertex(eventData);
+            int file = batch.addFileVertex(eventData);
             if (isCreate) {
-                graph.addEdge(process, file, time, syscall.name(), GraphEventType.FILE_CREATE.name(), eventId);
+                batch.addEdge(process, file, time, syscall.name(), GraphEventType.FILE_CREATE.name(), eventId);
             } else {
                 //System.out.println("I AM HERE " + path);
                 if (path.contains(".so.") || path.endsWith(".so")) {
-                    Vertex module = graph.addModuleVertex(eventData);
-                    graph.addEdge(module, process, time, syscall.name(), GraphEventType.MODULE_LOAD.name(), eventId);
+                    int module = batch.addModuleVertex(eventData);
+                    batch.addEdge(module, process, time, syscall.name(), GraphEventType.MODULE_LOAD.name(), eventId);
                     pm.addSyscall(pid, syscall);
                 } else {
-                    graph.addEdge(file, process, time, syscall.name(), GraphEventType.FILE_OPEN.name(), eventId);
+                    batch.addEdge(file, process, time, syscall.name(), GraphEventType.FILE_OPEN.name(), eventId);
                     pm.addSyscall(pid, syscall);
                 }
 
@@ -506,7 +819,9 @@ public class ParseLinuxAudit {
             logger.info("Unhandled value of FLAGS argument '" + flags + "'", null, time, eventId, syscall);
             return;
         }
-        addToFileDescriptors(pid, fd, eventData);
+        if (fd >= 0) {
+            descriptors.addFile(AuditEvent.pidOf(eventData), fd, path, (int) flags);
+        }
     }
 
 
@@ -525,19 +840,16 @@ public class ParseLinuxAudit {
 
         // If not absolute then only run the following logic according to the manpage
         if (!path.startsWith(File.separator)) {
-            Long dirFd = CommonFunctions.parseLong(eventData.get(AuditEventReader.ARG0), -1L);
+            long dirFd = AuditEvent.argumentOf(eventData, 0, -1L);
 
             //according to manpage if following true then use cwd if path not absolute, which is already handled by open
             if (dirFd != AT_FDCWD) { //checking if cwd needs to be replaced by dirFd's path
-                String pid = eventData.get(AuditEventReader.PID);
-                String dirFdString = String.valueOf(dirFd);
                 //if null of if not file then cannot process it
-                Map<String, String> fd_eventdata = getInFileDescriptor(pid, dirFdString);
-                if (fd_eventdata == null) {
+                String dirPath = descriptors.getPath(AuditEvent.pidOf(eventData), toFd(dirFd));
+                if (dirPath == null) {
                     logger.info("Expected 'dir' type fd: '", null, time, eventId, syscall);
                     return;
                 } else { //is file
-                    String dirPath = fd_eventdata.get(AuditEventReader.PATH_PREFIX);
                     eventData.put(AuditEventReader.CWD, dirPath); //replace cwd with dirPath to make eventData compatible with open
                 }
             }
@@ -564,9 +876,9 @@ public class ParseLinuxAudit {
         AddressPort addressPort = Utils.parseSaddr(saddr);
         if (addressPort == null)
             return;
-        Vertex process = graph.addProcessVertex(eventData);
-        Vertex network = graph.addNetworkVertex("CONNECT", addressPort.address, addressPort.port, "", "", "", eventId);
-        graph.addEdge(process, network, time, syscall.name(), GraphEventType.NETWORK_CONNECT.name(), eventId);
+        int process = batch.addProcessVertex(eventData);
+        int network = batch.addNetworkVertex("CONNECT", addressPort.address, addressPort.port, "", "", "", eventId);
+        batch.addEdge(process, network, time, syscall.name(), GraphEventType.NETWORK_CONNECT.name(), eventId);
         pm.addSyscall(pid, syscall);
     }
 
@@ -583,9 +895,9 @@ public class ParseLinuxAudit {
             System.out.println("wrong lsaddr or rsaddr");
             return;
         }
-        Vertex process = graph.addProcessVertex(eventData);
-        Vertex network = graph.addNetworkVertex("CONNECT", lap.address, lap.port, rap.address, rap.port, "", sockType);
-        graph.addEdge(process, network, time, syscall.name(), GraphEventType.NETWORK_CONNECT.name(), eventId);
+        int process = batch.addProcessVertex(eventData);
+        int network = batch.addNetworkVertex("CONNECT", lap.address, lap.port, rap.address, rap.port, "", sockType);
+        batch.addEdge(process, network, time, syscall.name(), GraphEventType.NETWORK_CONNECT.name(), eventId);
         pm.addSyscall(pid, syscall);
     }
 
@@ -603,19 +915,20 @@ public class ParseLinuxAudit {
             System.out.println("wrong lsaddr or rsaddr");
             return;
         }
-        Vertex process = graph.addProcessVertex(eventData);
-        Vertex network = graph.addNetworkVertex("ACCEPT", lap.address, lap.port, rap.address, rap.port, "", sockType);
-        graph.addEdge(network, process, time, syscall.name(), GraphEventType.NETWORK_ACCEPT.name(), eventId);
+        int process = batch.addProcessVertex(eventData);
+        int network = batch.addNetworkVertex("ACCEPT", lap.address, lap.port, rap.address, rap.port, "", sockType);
+        batch.addEdge(network, process, time, syscall.name(), GraphEventType.NETWORK_ACCEPT.name(), eventId);
         pm.addSyscall(pid, syscall);
     }
 
     private void handleSocket(Map<String, String> eventData, SYSCALL syscall) {
-        String sockFd = eventData.get("exit");
+        int sockFd = toFd(AuditEvent.exitOf(eventData));
         Integer socketType = CommonFunctions.parseInt(eventData.get("a1"), null);
         String protocolName = getProtocolNameBySockType(socketType);
-        String pid = eventData.get("pid");
-        NetworkID networkID = new NetworkID("", "", "", "", protocolName);
-        addToNetworkDescriptors(pid, sockFd, networkID); // no close edge
+        if (sockFd >= 0) {
+            NetworkID networkID = new NetworkID("", "", "", "", protocolName);
+            descriptors.addNetwork(AuditEvent.pidOf(eventData), sockFd, networkID); // no close edge
+        }
     }
 
     private void handleAccept(Map<String, String> eventData, SYSCALL syscall) {
@@ -634,9 +947,9 @@ public class ParseLinuxAudit {
         }
         if (Utils.isNetworkSaddr(saddr)) {
             AddressPort addressPort = Utils.parseSaddr(saddr);
-            Vertex process = graph.addProcessVertex(eventData);
-            Vertex network = graph.addNetworkVertex("ACCEPT", "", "", addressPort.address, addressPort.port, "", eventId);
-            graph.addEdge(network, process, time, syscall.name(), GraphEventType.NETWORK_ACCEPT.name(), eventId);
+            int process = batch.addProcessVertex(eventData);
+            int network = batch.addNetworkVertex("ACCEPT", "", "", addressPort.address, addressPort.port, "", eventId);
+            batch.addEdge(network, process, time, syscall.name(), GraphEventType.NETWORK_ACCEPT.name(), eventId);
             pm.addSyscall(pid, syscall);
         } else if (Utils.isUnixSaddr(saddr)) {
             logger.warn("Encountered Unix Socket Accept rather than Network Socket; Still need to handle it");
@@ -644,17 +957,13 @@ public class ParseLinuxAudit {
     }
 
     private void handleExit(Map<String, String> eventData, SYSCALL syscall) {
-        String uid = Utils.getIdentifierProcess(eventData);
         String time = eventData.get("time");
-        if (graph.seen_vertices.containsKey(uid)) {
-            Vertex vertex = graph.seen_vertices.get(uid);
-            vertex.property(NodeProperty.TERMINATE.name(), "TRUE");
-            vertex.property(NodeProperty.TERMINATE_TIME.name(), time);
-        } else {
-            // If the process was never seen before just make a vertex
-            Vertex vertex = graph.addProcessVertex(eventData);
-            vertex.property(NodeProperty.TERMINATE.name(), "TRUE");
-            vertex.property(NodeProperty.TERMINATE_TIME.name(), time);
+        // If the process was never seen before this just makes a vertex
+        int process = batch.addProcessVertex(eventData);
+        batch.markTerminated(process, time);
+        // exit only ends the calling thread, the descriptors are shared with the other threads
+        if (syscall == SYSCALL.EXIT_GROUP) {
+            descriptors.removeProcess(AuditEvent.pidOf(eventData));
         }
     }
 
@@ -662,77 +971,13 @@ public class ParseLinuxAudit {
     /// DONE=======================================================
     /// DONE=======================================================
 
-    private boolean checkInFileDescriptors(String pid, String fd) {
-        if (descriptorsF.containsKey(pid)) {
-            return descriptorsF.get(pid).containsKey(fd);
-        }
-        return false;
+    /**
+     * @return the descriptor number or -1 if the value can't be one
+     */
+    private static int toFd(long value) {
+        return value >= 0 && value <= Integer.MAX_VALUE ? (int) value : -1;
     }
 
-    private Map<String, String> removeFileDescriptors(String pid, String fd) {
-        if (descriptorsF.get(pid) == null) {
-            return null;
-        }
-        return descriptorsF.get(pid).remove(fd);
-    }
-
-    private Map<String, String> getInFileDescriptor(String pid, String fd) {
-        if (descriptorsF.containsKey(pid)) {
-            if (descriptorsF.get(pid).containsKey(fd)) {
-                return descriptorsF.get(pid).get(fd);
-            }
-        }
-        return null;
-    }
-
-    private void addToFileDescriptors(String pid, String fd, Map<String, String> eventData) {
-        HashMap<String, Map<String, String>> map = new HashMap<>();
-        map.put(fd, eventData);
-        if (descriptorsF.containsKey(pid))
-            descriptorsF.get(pid).put(fd, eventData);
-        else
-            descriptorsF.put(pid, map);
-    }
-
-    private NetworkID removeNetworkDescriptors(String pid, String fd) {
-        if (descriptorsN.get(pid) == null) {
-            return null;
-        }
-        return descriptorsN.get(pid).remove(fd);
-    }
-
-    private boolean checkInNetworkDescriptors(String pid, String fd) {
-        if (descriptorsN.containsKey(pid)) {
-            return descriptorsN.get(pid).containsKey(fd);
-        }
-        return false;
-    }
-
-    private NetworkID getInNetworkDescriptor(String pid, String fd) {
-        if (descriptorsN.containsKey(pid)) {
-            if (descriptorsN.get(pid).containsKey(fd)) {
-                return descriptorsN.get(pid).get(fd);
-            }
-        }
-        return null;
-    }
-
-    private NetworkID addToNetworkDescriptors(String pid, String fd, NetworkID netid) {
-        HashMap<String, NetworkID> map = new HashMap<>();
-        if (netid == null) {
-            return null;
-        }
-        map.put(fd, netid);
-        if (descriptorsN.containsKey(pid))
-            descriptorsN.get(pid).put(fd, netid);
-        else {
-            System.out.println(pid + " Adding new " + netid);
-            descriptorsN.put(pid, map);
-        }
-        return netid;
-    }
-
-
     private List<PathRecord> getPathsWithNametype(Map<String, String> eventData, String nametypeValue) {
         List<PathRecord> pathRecords = new ArrayList<PathRecord>();
         if (eventData != null && nametypeValue != null) {
@@ -801,18 +1046,12 @@ public class ParseLinuxAudit {
                         return path;
                     }
                 } else {
-                    Map<String, String> eventData = getInFileDescriptor(pid, String.valueOf(fd));
-                    if (eventData == null) {
+                    path = descriptors.getPath(CommonFunctions.parseInt(pid, -1), toFd(fd));
+                    if (path == null) {
                         logger.info("No FD with number '" + fd + "' for pid '" + pid + "'", null, time, eventId, syscall);
                         return null;
                     } else {
-                        path = eventData.get(AuditEventReader.PATH_PREFIX);
-                        if (path == null) {
-                            logger.info("Invalid Path");
-                            return null;
-                        } else {
-                            return path;
-                        }
+                        return path;
                     }
                 }
             }
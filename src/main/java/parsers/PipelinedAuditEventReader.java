@@ -0,0 +1,104 @@
+package parsers;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Audit event source that parses the events of an {@link AuditEventReader} on a pool of
+ * worker threads.
+ * <p>
+ * A reading thread groups the records of each event in the reader's window and hands them
+ * to the workers. The futures of the parsed events are queued in the order in which the
+ * reader returned the events, so {@link #readEventData()} returns exactly the same sequence
+ * as the reader itself, while the caller remains the only thread that consumes the events.
+ */
+public class PipelinedAuditEventReader implements AuditEventSource {
+    /**
+     * Number of events that may be read ahead of the consumer per worker
+     */
+    private static final int EVENTS_AHEAD_PER_WORKER = 256;
+
+    private static final Future<Map<String, String>> END_OF_EVENTS = CompletableFuture.completedFuture(null);
+
+    private final AuditEventReader reader;
+    private final ExecutorService workers;
+    private final BlockingQueue<Future<Map<String, String>>> parsedEvents;
+    private final Thread readingThread;
+    private boolean started = false;
+    private boolean ended = false;
+
+    /**
+     * @param reader      reader to group the records of the events
+     * @param workerCount number of threads that parse the events
+     */
+    public PipelinedAuditEventReader(AuditEventReader reader, int workerCount) {
+        if (workerCount < 1) {
+            throw new IllegalArgumentException("Worker count must be positive: " + workerCount);
+        }
+        this.reader = reader;
+        AtomicInteger workerNumber = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(workerCount, runnable -> {
+            Thread thread = new Thread(runnable, "audit-parser-" + workerNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.parsedEvents = new ArrayBlockingQueue<>(workerCount * EVENTS_AHEAD_PER_WORKER);
+        this.readingThread = new Thread(this::readEvents, "audit-grouper");
+        this.readingThread.setDaemon(true);
+    }
+
+    @Override
+    public Map<String, String> readEventData() throws Exception {
+        if (ended) {
+            return null;
+        }
+        if (!started) {
+            started = true;
+            readingThread.start();
+        }
+        Future<Map<String, String>> next = parsedEvents.take();
+        try {
+            Map<String, String> eventData = next.get();
+            ended = eventData == null;
+            return eventData;
+        } catch (ExecutionException e) {
+            ended = true;
+            workers.shutdownNow();
+            readingThread.interrupt();
+            throw new Exception("Failed to read audit events", e.getCause());
+        }
+    }
+
+    /**
+     * Runs on the reading thread
+     */
+    private void readEvents() {
+        try {
+            AuditEventReader.EventRecords eventRecords;
+            while ((eventRecords = reader.readEventRecords()) != null) {
+                final AuditEventReader.EventRecords records = eventRecords;
+                parsedEvents.put(workers.submit(() -> AuditEventReader.parseEventRecords(records)));
+            }
+            parsedEvents.put(END_OF_EVENTS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            CompletableFuture<Map<String, String>> failure = new CompletableFuture<>();
+            failure.completeExceptionally(e);
+            try {
+                parsedEvents.put(failure);
+            } catch (InterruptedException interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        } finally {
+            workers.shutdown();
+        }
+    }
+}
@@ -10,8 +10,8 @@ import parsers.jgraph.ULogGraph;
 import parsers.jgraph.ULogLink;
 import parsers.jgraph.ULogNode;
 import parsers.partitioner.JPartitioner;
+import record.AuditEvent;
 import tracker.PTAnalyzer;
-import utils.CommonFunctions;
 import utils.Statistics;
 import utils.Utils;
 
@@ -120,7 +120,7 @@ public class JValidator {
     }
 
     private void validateSystemCallEvent(Map<String, String> auditEvent, ValidationState validationState) {
-        int sysNum = CommonFunctions.parseInt(auditEvent.get("syscall"), -1);
+        int sysNum = AuditEvent.syscallOf(auditEvent);
         SYSCALL syscall = SYSCALL.getSyscall(sysNum, arch);
         Set<String> libCall = PTAnalyzer.getLibcCall(syscall);
 
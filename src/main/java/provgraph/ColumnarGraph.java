@@ -0,0 +1,1268 @@
+package provgraph;
+
+import org.apache.commons.configuration.BaseConfiguration;
+import org.apache.commons.configuration.Configuration;
+import org.apache.tinkerpop.gremlin.process.computer.GraphComputer;
+import org.apache.tinkerpop.gremlin.structure.Direction;
+import org.apache.tinkerpop.gremlin.structure.Edge;
+import org.apache.tinkerpop.gremlin.structure.Element;
+import org.apache.tinkerpop.gremlin.structure.Graph;
+import org.apache.tinkerpop.gremlin.structure.Property;
+import org.apache.tinkerpop.gremlin.structure.T;
+import org.apache.tinkerpop.gremlin.structure.Transaction;
+import org.apache.tinkerpop.gremlin.structure.Vertex;
+import org.apache.tinkerpop.gremlin.structure.VertexProperty;
+import org.apache.tinkerpop.gremlin.structure.util.StringFactory;
+import utils.Uid;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * In-memory provenance graph with int vertex and edge ids, stored column by column.
+ * <p>
+ * Labels, property keys and property values are dictionary encoded, so an element is a row of
+ * ints: its label id, the ids of its end vertices for an edge, and one value id per property
+ * key column. A value that repeats across elements, like an event type or an executable path,
+ * is stored once however many elements refer to it. {@link Uid} values, which are unique per
+ * element, are kept inline in two long columns instead.
+ * <p>
+ * Vertex properties live in one attribute table per vertex label, and a vertex only stores its
+ * label and its row in the table of the label. A process vertex therefore has no cells for
+ * the socket addresses of network vertices and the other way round. Properties handed out
+ * through the TinkerPop API are materialized from the table when they are read.
+ * <p>
+ * Edges are appended to per-vertex linked lists (forward star) while the graph is built.
+ * {@link #compact()} moves all of them into compressed sparse row arrays and drops removed
+ * edges, edges added afterwards go to the lists again. Adjacency iterates the CSR range of a
+ * vertex followed by its list, both in insertion order.
+ * <p>
+ * The class implements the TinkerPop structure API, so {@link GraphStructure}, the
+ * summarizations and {@link dotgraph.DotGraph} work on it unchanged. Vertices, edges and
+ * properties handed out through that API are lightweight views that are equal if they refer
+ * to the same element. Properties have single cardinality and no meta properties. The graph
+ * is not thread safe.
+ */
+public class ColumnarGraph implements Graph {
+    private static final int NONE = -1;
+    /**
+     * Value id of a property that isn't set
+     */
+    private static final int ABSENT = 0;
+    /**
+     * Value id of a {@link Uid} that is kept inline
+     */
+    private static final int INLINE_UID = -2;
+    private static final byte EMPTY_COLUMN = 0, UID_COLUMN = 1, DICTIONARY_COLUMN = 2;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final Dictionary labels = new Dictionary();
+    private final Dictionary keys = new Dictionary();
+    private final Dictionary values = new Dictionary();
+    // attribute table of each vertex label by label id
+    private Columns[] vertexTables = new Columns[0];
+    private final Columns edgeColumns = new Columns();
+    private final Configuration configuration = new BaseConfiguration();
+    private final Features features = new ColumnarFeatures();
+
+    // vertices, the label of a removed vertex is NONE
+    private int vertexCount = 0;
+    private int liveVertexCount = 0;
+    private int[] vertexLabels = new int[INITIAL_CAPACITY];
+    private int[] vertexRows = new int[INITIAL_CAPACITY];
+    private int[] firstOut = newIds(INITIAL_CAPACITY), lastOut = newIds(INITIAL_CAPACITY);
+    private int[] firstIn = newIds(INITIAL_CAPACITY), lastIn = newIds(INITIAL_CAPACITY);
+
+    // edges, the label of a removed edge is NONE
+    private int edgeCount = 0;
+    private int liveEdgeCount = 0;
+    private int[] edgeLabels = new int[INITIAL_CAPACITY];
+    private int[] edgeOut = new int[INITIAL_CAPACITY], edgeIn = new int[INITIAL_CAPACITY];
+    private int[] nextOut = new int[INITIAL_CAPACITY], nextIn = new int[INITIAL_CAPACITY];
+
+    // compressed sparse rows of the vertices below compactedVertexCount
+    private int compactedVertexCount = 0;
+    private int[] outOffsets = new int[1], outEdges = new int[0];
+    private int[] inOffsets = new int[1], inEdges = new int[0];
+
+    public ColumnarGraph() {
+    }
+
+    /// Int API ======================================================
+
+    /**
+     * @param label label of the vertex
+     * @return id of the new vertex
+     */
+    public int addVertexId(String label) {
+        if (vertexCount == vertexLabels.length) {
+            int capacity = vertexCount * 2;
+            vertexLabels = Arrays.copyOf(vertexLabels, capacity);
+            vertexRows = Arrays.copyOf(vertexRows, capacity);
+            firstOut = growIds(firstOut, capacity);
+            lastOut = growIds(lastOut, capacity);
+            firstIn = growIds(firstIn, capacity);
+            lastIn = growIds(lastIn, capacity);
+        }
+        int vertex = vertexCount++;
+        int labelId = labels.idOf(label);
+        if (labelId >= vertexTables.length) {
+            vertexTables = Arrays.copyOf(vertexTables, labelId + 1);
+        }
+        if (vertexTables[labelId] == null) {
+            vertexTables[labelId] = new Columns();
+        }
+        vertexLabels[vertex] = labelId;
+        vertexRows[vertex] = vertexTables[labelId].addRow();
+        liveVertexCount++;
+        return vertex;
+    }
+
+    /**
+     * @param outVertex id of the vertex the edge starts at
+     * @param inVertex  id of the vertex the edge ends at
+     * @param label     label of the edge
+     * @return id of the new edge
+     */
+    public int addEdgeId(int outVertex, int inVertex, String label) {
+        checkVertex(outVertex);
+        checkVertex(inVertex);
+        if (edgeCount == edgeLabels.length) {
+            int capacity = edgeCount * 2;
+            edgeLabels = Arrays.copyOf(edgeLabels, capacity);
+            edgeOut = Arrays.copyOf(edgeOut, capacity);
+            edgeIn = Arrays.copyOf(edgeIn, capacity);
+            nextOut = Arrays.copyOf(nextOut, capacity);
+            nextIn = Arrays.copyOf(nextIn, capacity);
+        }
+        int edge = edgeCount++;
+        edgeLabels[edge] = labels.idOf(label);
+        edgeOut[edge] = outVertex;
+        edgeIn[edge] = inVertex;
+        nextOut[edge] = NONE;
+        nextIn[edge] = NONE;
+        if (lastOut[outVertex] == NONE) {
+            firstOut[outVertex] = edge;
+        } else {
+            nextOut[lastOut[outVertex]] = edge;
+        }
+        lastOut[outVertex] = edge;
+        if (lastIn[inVertex] == NONE) {
+            firstIn[inVertex] = edge;
+        } else {
+            nextIn[lastIn[inVertex]] = edge;
+        }
+        lastIn[inVertex] = edge;
+        liveEdgeCount++;
+        return edge;
+    }
+
+    public boolean containsVertex(int vertex) {
+        return vertex >= 0 && vertex < vertexCount && vertexLabels[vertex] != NONE;
+    }
+
+    public boolean containsEdge(int edge) {
+        return edge >= 0 && edge < edgeCount && edgeLabels[edge] != NONE;
+    }
+
+    /**
+     * @return view of the vertex for the TinkerPop API
+     */
+    public ColumnarVertex vertex(int vertex) {
+        checkVertex(vertex);
+        return new ColumnarVertex(vertex);
+    }
+
+    /**
+     * @return view of the edge for the TinkerPop API
+     */
+    public ColumnarEdge edge(int edge) {
+        checkEdge(edge);
+        return new ColumnarEdge(edge);
+    }
+
+    public int getOutVertex(int edge) {
+        return edgeOut[edge];
+    }
+
+    public int getInVertex(int edge) {
+        return edgeIn[edge];
+    }
+
+    public String getVertexLabel(int vertex) {
+        return (String) labels.get(vertexLabels[vertex]);
+    }
+
+    public String getEdgeLabel(int edge) {
+        return (String) labels.get(edgeLabels[edge]);
+    }
+
+    /**
+     * @return the value of the vertex property or null if it isn't set
+     */
+    public Object getVertexValue(int vertex, String key) {
+        int keyId = keys.find(key);
+        return keyId == NONE ? null : vertexValue(vertex, keyId);
+    }
+
+    /**
+     * @return the value of the edge property or null if it isn't set
+     */
+    public Object getEdgeValue(int edge, String key) {
+        int keyId = keys.find(key);
+        return keyId == NONE ? null : edgeColumns.get(keyId, edge);
+    }
+
+    public void setVertexValue(int vertex, String key, Object value) {
+        checkVertex(vertex);
+        vertexTables[vertexLabels[vertex]].set(keyIdOf(key), vertexRows[vertex], checkValue(value));
+    }
+
+    public void setEdgeValue(int edge, String key, Object value) {
+        checkEdge(edge);
+        edgeColumns.set(keyIdOf(key), edge, checkValue(value));
+    }
+
+    /**
+     * @return number of vertices that have not been removed
+     */
+    public int getVertexCount() {
+        return liveVertexCount;
+    }
+
+    /**
+     * @return number of edges that have not been removed
+     */
+    public int getEdgeCount() {
+        return liveEdgeCount;
+    }
+
+    /**
+     * Moves the adjacency of all vertices into compressed sparse rows and leaves out the
+     * removed edges. Edge ids don't change.
+     */
+    public void compact() {
+        int[] newOutOffsets = new int[vertexCount + 1];
+        int[] newInOffsets = new int[vertexCount + 1];
+        for (int edge = 0; edge < edgeCount; edge++) {
+            if (edgeLabels[edge] != NONE) {
+                newOutOffsets[edgeOut[edge] + 1]++;
+                newInOffsets[edgeIn[edge] + 1]++;
+            }
+        }
+        for (int vertex = 0; vertex < vertexCount; vertex++) {
+            newOutOffsets[vertex + 1] += newOutOffsets[vertex];
+            newInOffsets[vertex + 1] += newInOffsets[vertex];
+        }
+        int[] newOutEdges = new int[liveEdgeCount];
+        int[] newInEdges = new int[liveEdgeCount];
+        int[] outPositions = Arrays.copyOf(newOutOffsets, vertexCount);
+        int[] inPositions = Arrays.copyOf(newInOffsets, vertexCount);
+        // ascending edge ids keep every row in insertion order
+        for (int edge = 0; edge < edgeCount; edge++) {
+            if (edgeLabels[edge] != NONE) {
+                newOutEdges[outPositions[edgeOut[edge]]++] = edge;
+                newInEdges[inPositions[edgeIn[edge]]++] = edge;
+            }
+        }
+        outOffsets = newOutOffsets;
+        outEdges = newOutEdges;
+        inOffsets = newInOffsets;
+        inEdges = newInEdges;
+        compactedVertexCount = vertexCount;
+        Arrays.fill(firstOut, 0, vertexCount, NONE);
+        Arrays.fill(lastOut, 0, vertexCount, NONE);
+        Arrays.fill(firstIn, 0, vertexCount, NONE);
+        Arrays.fill(lastIn, 0, vertexCount, NONE);
+    }
+
+    public void removeVertex(int vertex) {
+        checkVertex(vertex);
+        List<Integer> incident = new ArrayList<>();
+        for (EdgeIterator edges = new EdgeIterator(vertex, Direction.BOTH, null); edges.hasNext(); ) {
+            incident.add(edges.nextId());
+        }
+        for (int edge : incident) {
+            if (edgeLabels[edge] != NONE) {
+                removeEdge(edge);
+            }
+        }
+        // rows of removed vertices are not reused
+        vertexTables[vertexLabels[vertex]].clear(vertexRows[vertex]);
+        vertexLabels[vertex] = NONE;
+        liveVertexCount--;
+    }
+
+    public void removeEdge(int edge) {
+        checkEdge(edge);
+        // stays in the adjacency until the next compaction, where it is skipped meanwhile
+        edgeColumns.clear(edge);
+        edgeLabels[edge] = NONE;
+        liveEdgeCount--;
+    }
+
+    /// TinkerPop Graph ==============================================
+
+    @Override
+    public Vertex addVertex(Object... keyValues) {
+        if (keyValues.length % 2 != 0) {
+            throw new IllegalArgumentException("The provided key/value array length must be a multiple of two");
+        }
+        String label = Vertex.DEFAULT_LABEL;
+        for (int i = 0; i < keyValues.length; i += 2) {
+            if (keyValues[i] == T.label) {
+                label = (String) keyValues[i + 1];
+            } else if (keyValues[i] == T.id) {
+                throw new UnsupportedOperationException("Vertex does not support user supplied identifiers");
+            }
+        }
+        ColumnarVertex vertex = new ColumnarVertex(addVertexId(label));
+        setProperties(vertex, keyValues);
+        return vertex;
+    }
+
+    @Override
+    public Vertex addVertex(String label) {
+        return new ColumnarVertex(addVertexId(label));
+    }
+
+    @Override
+    public <C extends GraphComputer> C compute(Class<C> graphComputerClass) throws IllegalArgumentException {
+        throw Graph.Exceptions.graphComputerNotSupported();
+    }
+
+    @Override
+    public GraphComputer compute() throws IllegalArgumentException {
+        throw Graph.Exceptions.graphComputerNotSupported();
+    }
+
+    @Override
+    public Iterator<Vertex> vertices(Object... vertexIds) {
+        if (vertexIds.length == 0) {
+            return new ElementIterator<Vertex>(vertexCount) {
+                @Override
+                boolean exists(int id) {
+                    return vertexLabels[id] != NONE;
+                }
+
+                @Override
+                Vertex view(int id) {
+                    return new ColumnarVertex(id);
+                }
+            };
+        }
+        List<Vertex> found = new ArrayList<>(vertexIds.length);
+        for (Object vertexId : vertexIds) {
+            int id = toId(vertexId);
+            if (containsVertex(id)) {
+                found.add(new ColumnarVertex(id));
+            }
+        }
+        return found.iterator();
+    }
+
+    @Override
+    public Iterator<Edge> edges(Object... edgeIds) {
+        if (edgeIds.length == 0) {
+            return new ElementIterator<Edge>(edgeCount) {
+                @Override
+                boolean exists(int id) {
+                    return edgeLabels[id] != NONE;
+                }
+
+                @Override
+                Edge view(int id) {
+                    return new ColumnarEdge(id);
+                }
+            };
+        }
+        List<Edge> found = new ArrayList<>(edgeIds.length);
+        for (Object edgeId : edgeIds) {
+            int id = toId(edgeId);
+            if (containsEdge(id)) {
+                found.add(new ColumnarEdge(id));
+            }
+        }
+        return found.iterator();
+    }
+
+    @Override
+    public Transaction tx() {
+        throw Graph.Exceptions.transactionsNotSupported();
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public Variables variables() {
+        throw Graph.Exceptions.variablesNotSupported();
+    }
+
+    @Override
+    public Configuration configuration() {
+        return configuration;
+    }
+
+    @Override
+    public Features features() {
+        return features;
+    }
+
+    @Override
+    public String toString() {
+        return StringFactory.graphString(this, "vertices:" + liveVertexCount + " edges:" + liveEdgeCount);
+    }
+
+    /// Internals ====================================================
+
+    /**
+     * @return value of the vertex property or null if it isn't set or the vertex was removed
+     */
+    private Object vertexValue(int vertex, int keyId) {
+        if (vertex >= vertexCount || vertexLabels[vertex] == NONE) {
+            return null;
+        }
+        return vertexTables[vertexLabels[vertex]].get(keyId, vertexRows[vertex]);
+    }
+
+    private boolean hasVertexValue(int vertex, int keyId) {
+        return vertex < vertexCount && vertexLabels[vertex] != NONE
+                && vertexTables[vertexLabels[vertex]].has(keyId, vertexRows[vertex]);
+    }
+
+    private void removeVertexValue(int vertex, int keyId) {
+        if (vertex < vertexCount && vertexLabels[vertex] != NONE) {
+            vertexTables[vertexLabels[vertex]].remove(keyId, vertexRows[vertex]);
+        }
+    }
+
+    private int keyIdOf(String key) {
+        if (key == null) {
+            throw Property.Exceptions.propertyKeyCanNotBeNull();
+        }
+        return keys.idOf(key);
+    }
+
+    private static Object checkValue(Object value) {
+        if (value == null) {
+            throw Property.Exceptions.propertyValueCanNotBeNull();
+        }
+        return value;
+    }
+
+    private static void setProperties(Element element, Object... keyValues) {
+        for (int i = 0; i < keyValues.length; i += 2) {
+            if (!(keyValues[i] instanceof T)) {
+                element.property((String) keyValues[i], keyValues[i + 1]);
+            }
+        }
+    }
+
+    /**
+     * @return the int id of a vertex or edge, its id as a number or string, or NONE
+     */
+    private static int toId(Object id) {
+        if (id instanceof Element) {
+            id = ((Element) id).id();
+        }
+        if (id instanceof Number) {
+            long value = ((Number) id).longValue();
+            return value >= 0 && value <= Integer.MAX_VALUE ? (int) value : NONE;
+        }
+        if (id instanceof String) {
+            try {
+                return Integer.parseInt((String) id);
+            } catch (NumberFormatException e) {
+                return NONE;
+            }
+        }
+        return NONE;
+    }
+
+    private int[] labelIdsOf(String[] edgeLabels) {
+        if (edgeLabels.length == 0) {
+            return null;
+        }
+        int[] labelIds = new int[edgeLabels.length];
+        for (int i = 0; i < edgeLabels.length; i++) {
+            labelIds[i] = labels.find(edgeLabels[i]);
+        }
+        return labelIds;
+    }
+
+    private int[] keyIdsOf(String[] propertyKeys) {
+        if (propertyKeys.length == 0) {
+            return null;
+        }
+        int[] keyIds = new int[propertyKeys.length];
+        for (int i = 0; i < propertyKeys.length; i++) {
+            keyIds[i] = keys.find(propertyKeys[i]);
+        }
+        return keyIds;
+    }
+
+    private void checkVertex(int vertex) {
+        if (!containsVertex(vertex)) {
+            throw new IllegalStateException("Vertex with id " + vertex + " doesn't exist or was removed");
+        }
+    }
+
+    private void checkEdge(int edge) {
+        if (!containsEdge(edge)) {
+            throw new IllegalStateException("Edge with id " + edge + " doesn't exist or was removed");
+        }
+    }
+
+    private static int[] newIds(int capacity) {
+        int[] ids = new int[capacity];
+        Arrays.fill(ids, NONE);
+        return ids;
+    }
+
+    private static int[] growIds(int[] ids, int capacity) {
+        int length = ids.length;
+        ids = Arrays.copyOf(ids, capacity);
+        Arrays.fill(ids, length, capacity, NONE);
+        return ids;
+    }
+
+    /**
+     * Objects numbered in the order they were first seen. Id 0 is reserved for "no value".
+     */
+    private static final class Dictionary {
+        private final Map<Object, Integer> ids = new HashMap<>();
+        private final List<Object> objects = new ArrayList<>(Collections.singletonList(null));
+
+        int idOf(Object object) {
+            Integer id = ids.get(object);
+            if (id == null) {
+                id = objects.size();
+                objects.add(object);
+                ids.put(object, id);
+            }
+            return id;
+        }
+
+        int find(Object object) {
+            Integer id = ids.get(object);
+            return id == null ? NONE : id;
+        }
+
+        Object get(int id) {
+            return objects.get(id);
+        }
+    }
+
+    /**
+     * One column of value ids per property key, allocated when the key is first set. A column
+     * whose values are {@link Uid}s keeps them in two long arrays and marks their rows as
+     * INLINE_UID, until a value of another type is set and the ids move to the dictionary.
+     */
+    private final class Columns {
+        private int[][] columns = new int[0][];
+        private long[][] uidHighs = new long[0][], uidLows = new long[0][];
+        // per key whether the column keeps its values inline, in the dictionary or is still empty
+        private byte[] kinds = new byte[0];
+        private int rowCount = 0;
+
+        int addRow() {
+            return rowCount++;
+        }
+
+        /**
+         * @return the value or null if it isn't set
+         */
+        Object get(int keyId, int row) {
+            int valueId = valueIdAt(keyId, row);
+            if (valueId == INLINE_UID) {
+                return new Uid(uidHighs[keyId][row], uidLows[keyId][row]);
+            }
+            return values.get(valueId);
+        }
+
+        boolean has(int keyId, int row) {
+            return valueIdAt(keyId, row) != ABSENT;
+        }
+
+        void set(int keyId, int row, Object value) {
+            if (keyId >= columns.length) {
+                columns = Arrays.copyOf(columns, keyId + 1);
+                uidHighs = Arrays.copyOf(uidHighs, keyId + 1);
+                uidLows = Arrays.copyOf(uidLows, keyId + 1);
+                kinds = Arrays.copyOf(kinds, keyId + 1);
+            }
+            if (kinds[keyId] == EMPTY_COLUMN) {
+                kinds[keyId] = value instanceof Uid ? UID_COLUMN : DICTIONARY_COLUMN;
+            }
+            int[] column = columns[keyId];
+            if (column == null) {
+                column = columns[keyId] = new int[Math.max(Math.min(INITIAL_CAPACITY, rowCount), row + 1)];
+            } else if (row >= column.length) {
+                column = columns[keyId] = Arrays.copyOf(column, Math.max(column.length * 2, row + 1));
+            }
+            if (kinds[keyId] == UID_COLUMN && value instanceof Uid) {
+                long[] highs = uidHighs[keyId], lows = uidLows[keyId];
+                if (highs == null || row >= highs.length) {
+                    int capacity = column.length;
+                    highs = uidHighs[keyId] = highs == null ? new long[capacity] : Arrays.copyOf(highs, capacity);
+                    lows = uidLows[keyId] = lows == null ? new long[capacity] : Arrays.copyOf(lows, capacity);
+                }
+                highs[row] = ((Uid) value).getHigh();
+                lows[row] = ((Uid) value).getLow();
+                column[row] = INLINE_UID;
+                return;
+            }
+            if (kinds[keyId] == UID_COLUMN) {
+                moveUidsToDictionary(keyId);
+            }
+            column[row] = values.idOf(value);
+        }
+
+        void remove(int keyId, int row) {
+            if (keyId < columns.length && columns[keyId] != null && row < columns[keyId].length) {
+                columns[keyId][row] = ABSENT;
+            }
+        }
+
+        void clear(int row) {
+            for (int keyId = 0; keyId < columns.length; keyId++) {
+                remove(keyId, row);
+            }
+        }
+
+        /**
+         * @return ids of the keys that are set for the row, limited to the given key ids
+         * unless they are null
+         */
+        List<Integer> keysOf(int row, int[] keyIds) {
+            List<Integer> present = new ArrayList<>();
+            if (keyIds == null) {
+                for (int keyId = 0; keyId < columns.length; keyId++) {
+                    if (has(keyId, row)) {
+                        present.add(keyId);
+                    }
+                }
+            } else {
+                for (int keyId : keyIds) {
+                    if (keyId != NONE && has(keyId, row)) {
+                        present.add(keyId);
+                    }
+                }
+            }
+            return present;
+        }
+
+        private int valueIdAt(int keyId, int row) {
+            if (keyId < 0 || keyId >= columns.length) {
+                return ABSENT;
+            }
+            int[] column = columns[keyId];
+            return column == null || row >= column.length ? ABSENT : column[row];
+        }
+
+        private void moveUidsToDictionary(int keyId) {
+            int[] column = columns[keyId];
+            for (int row = 0; row < column.length; row++) {
+                if (column[row] == INLINE_UID) {
+                    column[row] = values.idOf(new Uid(uidHighs[keyId][row], uidLows[keyId][row]));
+                }
+            }
+            uidHighs[keyId] = null;
+            uidLows[keyId] = null;
+            kinds[keyId] = DICTIONARY_COLUMN;
+        }
+    }
+
+    /**
+     * Iterates the ids 0 ... count-1 that exist
+     */
+    private abstract static class ElementIterator<E> implements Iterator<E> {
+        private final int count;
+        private int next = -1;
+
+        ElementIterator(int count) {
+            this.count = count;
+            advance();
+        }
+
+        abstract boolean exists(int id);
+
+        abstract E view(int id);
+
+        private void advance() {
+            do {
+                next++;
+            } while (next < count && !exists(next));
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < count;
+        }
+
+        @Override
+        public E next() {
+            if (next >= count) {
+                throw new NoSuchElementException();
+            }
+            E element = view(next);
+            advance();
+            return element;
+        }
+    }
+
+    /**
+     * Iterates the edges of a vertex: the outgoing then the incoming ones for BOTH, each in
+     * their compressed row followed by their list
+     */
+    private final class EdgeIterator {
+        private final int vertex;
+        private final int[] labelIds;
+        private boolean out;
+        private final boolean both;
+        private int position, end;
+        private int listEdge;
+        private int next = NONE;
+        private boolean nextIsOut, lastIsOut;
+
+        EdgeIterator(int vertex, Direction direction, int[] labelIds) {
+            this.vertex = vertex;
+            this.labelIds = labelIds;
+            this.both = direction == Direction.BOTH;
+            start(direction != Direction.IN);
+            advance();
+        }
+
+        private void start(boolean out) {
+            this.out = out;
+            if (vertex < compactedVertexCount) {
+                int[] offsets = out ? outOffsets : inOffsets;
+                position = offsets[vertex];
+                end = offsets[vertex + 1];
+            } else {
+                position = end = 0;
+            }
+            listEdge = out ? firstOut[vertex] : firstIn[vertex];
+        }
+
+        private void advance() {
+            while (true) {
+                int edge;
+                if (position < end) {
+                    edge = (out ? outEdges : inEdges)[position++];
+                } else if (listEdge != NONE) {
+                    edge = listEdge;
+                    listEdge = (out ? nextOut : nextIn)[edge];
+                } else if (both && out) {
+                    start(false);
+                    continue;
+                } else {
+                    next = NONE;
+                    return;
+                }
+                if (matches(edge)) {
+                    next = edge;
+                    nextIsOut = out;
+                    return;
+                }
+            }
+        }
+
+        private boolean matches(int edge) {
+            int label = edgeLabels[edge];
+            if (label == NONE) {
+                return false;
+            }
+            if (labelIds == null) {
+                return true;
+            }
+            for (int labelId : labelIds) {
+                if (labelId == label) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        boolean hasNext() {
+            return next != NONE;
+        }
+
+        /**
+         * @return the next edge id
+         */
+        int nextId() {
+            if (next == NONE) {
+                throw new NoSuchElementException();
+            }
+            int edge = next;
+            lastIsOut = nextIsOut;
+            advance();
+            return edge;
+        }
+
+        /**
+         * @return whether the edge last returned by {@link #nextId()} is an outgoing one
+         */
+        boolean lastWasOut() {
+            return lastIsOut;
+        }
+    }
+
+    /// TinkerPop views ==============================================
+
+    public final class ColumnarVertex implements Vertex {
+        private final int id;
+
+        private ColumnarVertex(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public Object id() {
+            return id;
+        }
+
+        @Override
+        public String label() {
+            return getVertexLabel(id);
+        }
+
+        @Override
+        public Graph graph() {
+            return ColumnarGraph.this;
+        }
+
+        @Override
+        public Edge addEdge(String label, Vertex inVertex, Object... keyValues) {
+            if (!(inVertex instanceof ColumnarVertex) || inVertex.graph() != ColumnarGraph.this) {
+                throw new IllegalArgumentException("Vertex " + inVertex + " is not in this graph");
+            }
+            for (int i = 0; i < keyValues.length; i += 2) {
+                if (keyValues[i] == T.id) {
+                    throw new UnsupportedOperationException("Edge does not support user supplied identifiers");
+                }
+            }
+            ColumnarEdge edge = new ColumnarEdge(addEdgeId(id, ((ColumnarVertex) inVertex).id, label));
+            setProperties(edge, keyValues);
+            return edge;
+        }
+
+        @Override
+        public <V> VertexProperty<V> property(String key) {
+            int keyId = keys.find(key);
+            if (keyId == NONE || !hasVertexValue(id, keyId)) {
+                return VertexProperty.empty();
+            }
+            return new ColumnarVertexProperty<>(this, keyId);
+        }
+
+        @Override
+        public <V> VertexProperty<V> property(String key, V value) {
+            checkVertex(id);
+            int keyId = keyIdOf(key);
+            vertexTables[vertexLabels[id]].set(keyId, vertexRows[id], checkValue(value));
+            return new ColumnarVertexProperty<>(this, keyId);
+        }
+
+        @Override
+        public <V> VertexProperty<V> property(VertexProperty.Cardinality cardinality, String key, V value,
+                                              Object... keyValues) {
+            if (keyValues.length > 0) {
+                throw VertexProperty.Exceptions.metaPropertiesNotSupported();
+            }
+            return property(key, value);
+        }
+
+        @Override
+        public <V> Iterator<VertexProperty<V>> properties(String... propertyKeys) {
+            List<VertexProperty<V>> properties = new ArrayList<>();
+            if (!containsVertex(id)) {
+                return properties.iterator();
+            }
+            for (int keyId : vertexTables[vertexLabels[id]].keysOf(vertexRows[id], keyIdsOf(propertyKeys))) {
+                properties.add(new ColumnarVertexProperty<>(this, keyId));
+            }
+            return properties.iterator();
+        }
+
+        @Override
+        public Iterator<Edge> edges(Direction direction, String... edgeLabels) {
+            EdgeIterator edges = new EdgeIterator(id, direction, labelIdsOf(edgeLabels));
+            return new Iterator<Edge>() {
+                @Override
+                public boolean hasNext() {
+                    return edges.hasNext();
+                }
+
+                @Override
+                public Edge next() {
+                    return new ColumnarEdge(edges.nextId());
+                }
+            };
+        }
+
+        @Override
+        public Iterator<Vertex> vertices(Direction direction, String... edgeLabels) {
+            EdgeIterator edges = new EdgeIterator(id, direction, labelIdsOf(edgeLabels));
+            return new Iterator<Vertex>() {
+                @Override
+                public boolean hasNext() {
+                    return edges.hasNext();
+                }
+
+                @Override
+                public Vertex next() {
+                    int edge = edges.nextId();
+                    return new ColumnarVertex(edges.lastWasOut() ? edgeIn[edge] : edgeOut[edge]);
+                }
+            };
+        }
+
+        @Override
+        public void remove() {
+            removeVertex(id);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof ColumnarVertex && ((ColumnarVertex) other).id == id
+                    && ((ColumnarVertex) other).graph() == ColumnarGraph.this;
+        }
+
+        @Override
+        public int hashCode() {
+            return Integer.hashCode(id);
+        }
+
+        @Override
+        public String toString() {
+            return StringFactory.vertexString(this);
+        }
+    }
+
+    public final class ColumnarEdge implements Edge {
+        private final int id;
+
+        private ColumnarEdge(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public Object id() {
+            return id;
+        }
+
+        @Override
+        public String label() {
+            return getEdgeLabel(id);
+        }
+
+        @Override
+        public Graph graph() {
+            return ColumnarGraph.this;
+        }
+
+        @Override
+        public Iterator<Vertex> vertices(Direction direction) {
+            switch (direction) {
+                case OUT:
+                    return Collections.<Vertex>singletonList(new ColumnarVertex(edgeOut[id])).iterator();
+                case IN:
+                    return Collections.<Vertex>singletonList(new ColumnarVertex(edgeIn[id])).iterator();
+                default:
+                    return Arrays.<Vertex>asList(new ColumnarVertex(edgeOut[id]), new ColumnarVertex(edgeIn[id])).iterator();
+            }
+        }
+
+        @Override
+        public Vertex outVertex() {
+            return new ColumnarVertex(edgeOut[id]);
+        }
+
+        @Override
+        public Vertex inVertex() {
+            return new ColumnarVertex(edgeIn[id]);
+        }
+
+        @Override
+        public <V> Property<V> property(String key) {
+            int keyId = keys.find(key);
+            if (keyId == NONE || !edgeColumns.has(keyId, id)) {
+                return Property.empty();
+            }
+            return new ColumnarProperty<>(this, keyId);
+        }
+
+        @Override
+        public <V> Property<V> property(String key, V value) {
+            checkEdge(id);
+            int keyId = keyIdOf(key);
+            edgeColumns.set(keyId, id, checkValue(value));
+            return new ColumnarProperty<>(this, keyId);
+        }
+
+        @Override
+        public <V> Iterator<Property<V>> properties(String... propertyKeys) {
+            List<Property<V>> properties = new ArrayList<>();
+            for (int keyId : edgeColumns.keysOf(id, keyIdsOf(propertyKeys))) {
+                properties.add(new ColumnarProperty<>(this, keyId));
+            }
+            return properties.iterator();
+        }
+
+        @Override
+        public void remove() {
+            removeEdge(id);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof ColumnarEdge && ((ColumnarEdge) other).id == id
+                    && ((ColumnarEdge) other).graph() == ColumnarGraph.this;
+        }
+
+        @Override
+        public int hashCode() {
+            return Integer.hashCode(id);
+        }
+
+        @Override
+        public String toString() {
+            return StringFactory.edgeString(this);
+        }
+    }
+
+    /**
+     * Property of an edge, reads the column on every call
+     */
+    private final class ColumnarProperty<V> implements Property<V> {
+        private final ColumnarEdge edge;
+        private final int keyId;
+
+        ColumnarProperty(ColumnarEdge edge, int keyId) {
+            this.edge = edge;
+            this.keyId = keyId;
+        }
+
+        @Override
+        public String key() {
+            return (String) keys.get(keyId);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public V value() throws NoSuchElementException {
+            Object value = edgeColumns.get(keyId, edge.id);
+            if (value == null) {
+                throw new NoSuchElementException("Property " + key() + " was removed");
+            }
+            return (V) value;
+        }
+
+        @Override
+        public boolean isPresent() {
+            return edgeColumns.has(keyId, edge.id);
+        }
+
+        @Override
+        public Element element() {
+            return edge;
+        }
+
+        @Override
+        public void remove() {
+            edgeColumns.remove(keyId, edge.id);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof ColumnarProperty && ((ColumnarProperty<?>) other).keyId == keyId
+                    && ((ColumnarProperty<?>) other).edge.equals(edge);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * edge.hashCode() + keyId;
+        }
+
+        @Override
+        public String toString() {
+            return StringFactory.propertyString(this);
+        }
+    }
+
+    /**
+     * Property of a vertex, reads the column on every call
+     */
+    private final class ColumnarVertexProperty<V> implements VertexProperty<V> {
+        private final ColumnarVertex vertex;
+        private final int keyId;
+
+        ColumnarVertexProperty(ColumnarVertex vertex, int keyId) {
+            this.vertex = vertex;
+            this.keyId = keyId;
+        }
+
+        @Override
+        public Object id() {
+            return ((long) vertex.id << 32) | keyId;
+        }
+
+        @Override
+        public String key() {
+            return (String) keys.get(keyId);
+        }
+
+        @Override
+        public String label() {
+            return key();
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public V value() throws NoSuchElementException {
+            Object value = vertexValue(vertex.id, keyId);
+            if (value == null) {
+                throw new NoSuchElementException("Property " + key() + " was removed");
+            }
+            return (V) value;
+        }
+
+        @Override
+        public boolean isPresent() {
+            return hasVertexValue(vertex.id, keyId);
+        }
+
+        @Override
+        public Vertex element() {
+            return vertex;
+        }
+
+        @Override
+        public Graph graph() {
+            return ColumnarGraph.this;
+        }
+
+        @Override
+        public <U> Property<U> property(String key, U value) {
+            throw VertexProperty.Exceptions.metaPropertiesNotSupported();
+        }
+
+        @Override
+        public <U> Iterator<Property<U>> properties(String... propertyKeys) {
+            return Collections.emptyIterator();
+        }
+
+        @Override
+        public void remove() {
+            removeVertexValue(vertex.id, keyId);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof ColumnarVertexProperty && ((ColumnarVertexProperty<?>) other).keyId == keyId
+                    && ((ColumnarVertexProperty<?>) other).vertex.equals(vertex);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * vertex.hashCode() + keyId;
+        }
+
+        @Override
+        public String toString() {
+            return StringFactory.propertyString(this);
+        }
+    }
+
+    private static final class ColumnarFeatures implements Features {
+        @Override
+        public GraphFeatures graph() {
+            return new GraphFeatures() {
+                @Override
+                public boolean supportsComputer() {
+                    return false;
+                }
+
+                @Override
+                public boolean supportsPersistence() {
+                    return false;
+                }
+
+                @Override
+                public boolean supportsConcurrentAccess() {
+                    return false;
+                }
+
+                @Override
+                public boolean supportsTransactions() {
+                    return false;
+                }
+
+                @Override
+                public boolean supportsThreadedTransactions() {
+                    return false;
+                }
+
+                @Override
+                public VariableFeatures variables() {
+                    return new VariableFeatures() {
+                        @Override
+                        public boolean supportsVariables() {
+                            return false;
+                        }
+                    };
+                }
+            };
+        }
+
+        @Override
+        public VertexFeatures vertex() {
+            return new VertexFeatures() {
+                @Override
+                public VertexProperty.Cardinality getCardinality(String key) {
+                    return VertexProperty.Cardinality.single;
+                }
+
+                @Override
+                public boolean supportsMultiProperties() {
+                    return false;
+                }
+
+                @Override
+                public boolean supportsMetaProperties() {
+                    return false;
+                }
+
+                @Override
+                public boolean supportsUserSuppliedIds() {
+                    return false;
+                }
+            };
+        }
+
+        @Override
+        public EdgeFeatures edge() {
+            return new EdgeFeatures() {
+                @Override
+                public boolean supportsUserSuppliedIds() {
+                    return false;
+                }
+            };
+        }
+
+        @Override
+        public String toString() {
+            return StringFactory.featureString(this);
+        }
+    }
+}
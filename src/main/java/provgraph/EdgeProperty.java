@@ -17,5 +17,8 @@ public enum EdgeProperty {
     SYSCALL,
     EVENTID,
     COUNTER,
+    END_TIME,
+    EVENT_COUNT,
+    LAST_EVENTID,
 }
 
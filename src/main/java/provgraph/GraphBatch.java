@@ -0,0 +1,320 @@
+package provgraph;
+
+import org.apache.tinkerpop.gremlin.structure.Vertex;
+import parsers.AuditEventReader;
+import record.ObjectType;
+import utils.Uid;
+import utils.Utils;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Vertex and edge intents of a number of events, applied to the graph at once by
+ * {@link GraphStructure#applyBatch(GraphBatch)}.
+ * <p>
+ * The methods mirror those of {@link GraphStructure} but return a handle of the vertex
+ * instead of the vertex. Vertex and edge ids are computed when an intent is added, and a
+ * vertex that is added again in the same batch gets the handle of its first intent, so the
+ * graph looks up each distinct vertex of the batch once. The values of an intent are copied
+ * from the event, so an event may be changed after it has been added. Since nothing here
+ * touches the graph, a batch can be filled on one thread while another applies the last one.
+ */
+public class GraphBatch {
+    // operations, in the order they are applied
+    private static final byte VERTEX = 0, EDGE = 1, TERMINATE = 2;
+    // kinds of vertex intents
+    private static final byte PROCESS = 0, PROCESS_OF_PID = 1, FILE = 2, MODULE = 3, APPLOG = 4, NETWORK = 5;
+
+    private final boolean aggregateEdges;
+
+    private byte[] operations = new byte[256];
+    private int[] operationIndexes = new int[256];
+    private int operationCount = 0;
+
+    // vertex intents
+    private byte[] kinds = new byte[64];
+    private Uid[] uids = new Uid[64];
+    private String[][] vertexValues = new String[64][];
+    private int vertexCount = 0;
+    private final Map<Uid, Integer> handles = new HashMap<>();
+
+    // edge intents: actor and target handle, id and the time, syscall, event type and event id
+    private int[] actors = new int[64];
+    private int[] targets = new int[64];
+    private Uid[] edgeUids = new Uid[64];
+    private String[][] edgeValues = new String[64][];
+    private int edgeCount = 0;
+
+    // terminations: process handle and time
+    private int[] terminated = new int[16];
+    private String[] terminateTimes = new String[16];
+    private int terminateCount = 0;
+
+    private int eventCount = 0;
+
+    GraphBatch(boolean aggregateEdges) {
+        this.aggregateEdges = aggregateEdges;
+    }
+
+    /**
+     * @see GraphStructure#addProcessVertex(Map)
+     */
+    public int addProcessVertex(Map<String, String> annotations) {
+        return addVertex(PROCESS, Utils.getIdentifierProcess(annotations), GraphStructure.processValues(annotations));
+    }
+
+    /**
+     * Refers to the process vertex that was added last with the given pid, or adds a process
+     * vertex from the event if there is none, like the applog handling of the parser does
+     */
+    public int addProcessVertexOfPid(String pid, Map<String, String> annotations) {
+        String[] values = GraphStructure.processValues(annotations);
+        String[] withKey = Arrays.copyOf(values, values.length + 1);
+        withKey[values.length] = pid;
+        // which vertex it is depends on the graph, so the intent is not shared
+        return addIntent(PROCESS_OF_PID, Utils.getIdentifierProcess(annotations), withKey);
+    }
+
+    /**
+     * @see GraphStructure#addFileVertex(Map)
+     */
+    public int addFileVertex(Map<String, String> annotations) {
+        return addFileVertex(annotations.get(AuditEventReader.PATH_PREFIX));
+    }
+
+    /**
+     * @see GraphStructure#addFileVertex(String)
+     */
+    public int addFileVertex(String path) {
+        return addVertex(FILE, Utils.getIdentifierFile(path, ObjectType.FILE.name()), new String[]{path});
+    }
+
+    /**
+     * @see GraphStructure#addModuleVertex(Map)
+     */
+    public int addModuleVertex(Map<String, String> annotations) {
+        String path = annotations.get(AuditEventReader.PATH_PREFIX);
+        return addVertex(MODULE, Utils.getIdentifierFile(path, ObjectType.MODULE.name()), new String[]{path});
+    }
+
+    /**
+     * @see GraphStructure#addApplogVertex(Map)
+     */
+    public int addApplogVertex(Map<String, String> annotations) {
+        String data = Utils.decodeHex(annotations.get(AuditEventReader.DATA));
+        // applog vertices are never shared
+        return addIntent(APPLOG, GraphStructure.applogId(data, annotations), new String[]{data});
+    }
+
+    /**
+     * @see GraphStructure#addNetworkVertex(String, String, String, String, String, String, String)
+     */
+    public int addNetworkVertex(String act, String src_ip, String src_port, String dst_ip, String dst_port, String direction, String protocol) {
+        return addVertex(NETWORK, Utils.getIdentifierNetwork(src_ip, src_port, dst_ip, dst_port, protocol, direction, act),
+                new String[]{src_ip, src_port, dst_ip, dst_port, direction, protocol});
+    }
+
+    /**
+     * @param actor  handle of the actor vertex
+     * @param target handle of the target vertex
+     * @see GraphStructure#addEdge(Vertex, Vertex, String, String, String, String)
+     */
+    public void addEdge(int actor, int target, String begin_time, String syscall, String eventype, String eventid) {
+        if (edgeCount == actors.length) {
+            int capacity = edgeCount * 2;
+            actors = Arrays.copyOf(actors, capacity);
+            targets = Arrays.copyOf(targets, capacity);
+            edgeUids = Arrays.copyOf(edgeUids, capacity);
+            edgeValues = Arrays.copyOf(edgeValues, capacity);
+        }
+        actors[edgeCount] = actor;
+        targets[edgeCount] = target;
+        // the id of a process found by pid is only known once the batch is applied
+        if (kinds[actor] != PROCESS_OF_PID && kinds[target] != PROCESS_OF_PID) {
+            edgeUids[edgeCount] = aggregateEdges ? Utils.getAggregatedEdgeId(uids[actor], uids[target], syscall, eventype)
+                    : Utils.getEdgeId(uids[actor], uids[target], syscall, eventype, eventid);
+        }
+        edgeValues[edgeCount] = new String[]{begin_time, syscall, eventype, eventid};
+        addOperation(EDGE, edgeCount++);
+    }
+
+    /**
+     * @see GraphStructure#markTerminated(Vertex, String)
+     */
+    public void markTerminated(int process, String time) {
+        if (terminateCount == terminated.length) {
+            terminated = Arrays.copyOf(terminated, terminateCount * 2);
+            terminateTimes = Arrays.copyOf(terminateTimes, terminateCount * 2);
+        }
+        terminated[terminateCount] = process;
+        terminateTimes[terminateCount] = time;
+        addOperation(TERMINATE, terminateCount++);
+    }
+
+    /**
+     * Counts an event whose intents have all been added
+     */
+    public void endEvent() {
+        eventCount++;
+    }
+
+    /**
+     * @return number of events counted by {@link #endEvent()}
+     */
+    public int getEventCount() {
+        return eventCount;
+    }
+
+    public boolean isEmpty() {
+        return operationCount == 0;
+    }
+
+    /**
+     * Removes all intents, keeping the arrays for the next batch
+     */
+    public void clear() {
+        Arrays.fill(uids, 0, vertexCount, null);
+        Arrays.fill(vertexValues, 0, vertexCount, null);
+        Arrays.fill(edgeUids, 0, edgeCount, null);
+        Arrays.fill(edgeValues, 0, edgeCount, null);
+        Arrays.fill(terminateTimes, 0, terminateCount, null);
+        handles.clear();
+        operationCount = vertexCount = edgeCount = terminateCount = eventCount = 0;
+    }
+
+    void applyTo(GraphStructure graph) {
+        Vertex[] vertices = new Vertex[vertexCount];
+        // ids of the vertices the filter of the graph dropped, the vertex is null then
+        Uid[] dropped = new Uid[vertexCount];
+        for (int i = 0; i < operationCount; i++) {
+            int index = operationIndexes[i];
+            switch (operations[i]) {
+                case VERTEX:
+                    vertices[index] = resolve(graph, index, dropped);
+                    break;
+                case EDGE: {
+                    int actorHandle = actors[index], targetHandle = targets[index];
+                    Vertex actor = vertices[actorHandle], target = vertices[targetHandle];
+                    String[] values = edgeValues[index];
+                    Uid uid = edgeUids[index];
+                    if (uid == null) {
+                        Object actorId = idOf(actor, dropped[actorHandle]), targetId = idOf(target, dropped[targetHandle]);
+                        uid = aggregateEdges ? Utils.getAggregatedEdgeId(actorId, targetId, values[1], values[2])
+                                : Utils.getEdgeId(actorId, targetId, values[1], values[2], values[3]);
+                    }
+                    if (actor == null || target == null) {
+                        graph.dropEdge(uid, idOf(actor, dropped[actorHandle]), idOf(target, dropped[targetHandle]));
+                    } else {
+                        graph.addEdge(uid, actor, target, values[0], values[1], values[2], values[3]);
+                    }
+                    break;
+                }
+                case TERMINATE: {
+                    Vertex process = vertices[terminated[index]];
+                    if (process != null) {
+                        graph.markTerminated(process, terminateTimes[index]);
+                    }
+                    break;
+                }
+                default:
+                    throw new IllegalStateException("Unknown batch operation " + operations[i]);
+            }
+        }
+    }
+
+    private static Object idOf(Vertex vertex, Uid dropped) {
+        return vertex == null ? dropped : vertex.property(NodeProperty.ID.name()).value();
+    }
+
+    /**
+     * @return the vertex of the intent, or null if the filter of the graph dropped it, which
+     * puts the id of the dropped vertex into dropped
+     */
+    private Vertex resolve(GraphStructure graph, int handle, Uid[] dropped) {
+        Uid uid = uids[handle];
+        String[] values = vertexValues[handle];
+        Vertex vertex;
+        switch (kinds[handle]) {
+            case PROCESS:
+                vertex = seen(graph, uid, id -> graph.newProcessVertex(id, values));
+                break;
+            case PROCESS_OF_PID: {
+                String pid = values[values.length - 1];
+                vertex = graph.seen_proc_vertices.get(pid);
+                if (vertex == null) {
+                    Uid droppedProcess = graph.dropped_proc_vertices.get(pid);
+                    if (droppedProcess != null) {
+                        dropped[handle] = droppedProcess;
+                        return null;
+                    }
+                    vertex = seen(graph, uid, id -> graph.newProcessVertex(id, values));
+                }
+                break;
+            }
+            case FILE:
+                vertex = seen(graph, uid, id -> graph.newPathVertex(id, ObjectType.FILE, values[0]));
+                break;
+            case MODULE:
+                vertex = seen(graph, uid, id -> graph.newPathVertex(id, ObjectType.MODULE, values[0]));
+                break;
+            case APPLOG:
+                vertex = graph.newApplogVertex(uid, values[0]);
+                break;
+            case NETWORK:
+                vertex = seen(graph, uid, id -> graph.newNetworkVertex(id,
+                        values[0], values[1], values[2], values[3], values[4], values[5]));
+                break;
+            default:
+                throw new IllegalStateException("Unknown vertex intent " + kinds[handle]);
+        }
+        if (vertex == null) {
+            dropped[handle] = uid;
+        }
+        return vertex;
+    }
+
+    private static Vertex seen(GraphStructure graph, Uid uid, Function<Uid, Vertex> create) {
+        if (!graph.dropped_vertices.isEmpty() && graph.dropped_vertices.contains(uid)) {
+            return null;
+        }
+        // nothing is put for a vertex that create drops
+        return graph.seen_vertices.computeIfAbsent(uid, create);
+    }
+
+    private int addVertex(byte kind, Uid uid, String[] values) {
+        Integer handle = handles.get(uid);
+        if (handle != null && kinds[handle] == kind) {
+            return handle;
+        }
+        handle = addIntent(kind, uid, values);
+        handles.put(uid, handle);
+        return handle;
+    }
+
+    private int addIntent(byte kind, Uid uid, String[] values) {
+        if (vertexCount == kinds.length) {
+            int capacity = vertexCount * 2;
+            kinds = Arrays.copyOf(kinds, capacity);
+            uids = Arrays.copyOf(uids, capacity);
+            vertexValues = Arrays.copyOf(vertexValues, capacity);
+        }
+        kinds[vertexCount] = kind;
+        uids[vertexCount] = uid;
+        vertexValues[vertexCount] = values;
+        addOperation(VERTEX, vertexCount);
+        return vertexCount++;
+    }
+
+    private void addOperation(byte operation, int index) {
+        if (operationCount == operations.length) {
+            operations = Arrays.copyOf(operations, operationCount * 2);
+            operationIndexes = Arrays.copyOf(operationIndexes, operationCount * 2);
+        }
+        operations[operationCount] = operation;
+        operationIndexes[operationCount] = index;
+        operationCount++;
+    }
+}
@@ -0,0 +1,113 @@
+package provgraph;
+
+import java.io.Closeable;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Applies batches to the graph on a thread of its own, so that parsing the next events runs
+ * ahead of building the graph from the last ones.
+ * <p>
+ * Batches are applied in the order they are submitted. A fixed number of batches is
+ * recycled between the two threads: submitting blocks while all of them are queued, so the
+ * parser gets at most that many batches ahead. The graph must not be read before
+ * {@link #await()} returns.
+ */
+public class GraphBatchWriter implements Closeable {
+    private final ExecutorService executor;
+    private final BlockingQueue<GraphBatch> free;
+    private volatile RuntimeException failure;
+
+    /**
+     * @param graph   graph the batches are created for
+     * @param batches number of batches, including the one the caller fills at the moment,
+     *                which it got from {@link GraphStructure#newBatch()}
+     */
+    public GraphBatchWriter(GraphStructure graph, int batches) {
+        batches = Math.max(2, batches);
+        this.free = new ArrayBlockingQueue<>(batches);
+        for (int i = 1; i < batches; i++) {
+            free.add(graph.newBatch());
+        }
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "graph-batch-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @return an empty batch to fill, waits if all batches are queued
+     */
+    private GraphBatch take() {
+        checkFailure();
+        try {
+            return free.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a graph batch", e);
+        }
+    }
+
+    /**
+     * Queues the batch to be applied to the graph. The batch must be the caller's initial
+     * batch or one returned by this writer.
+     *
+     * @return an empty batch for the next events, waits if all batches are queued
+     */
+    public GraphBatch submit(GraphStructure graph, GraphBatch batch) {
+        executor.execute(() -> {
+            try {
+                if (failure == null) {
+                    graph.applyBatch(batch);
+                }
+            } catch (RuntimeException e) {
+                failure = e;
+            } finally {
+                batch.clear();
+                free.add(batch);
+            }
+        });
+        return take();
+    }
+
+    /**
+     * Waits until all submitted batches have been applied
+     *
+     * @throws IllegalStateException if applying a batch failed
+     */
+    public void await() {
+        try {
+            executor.submit(() -> {
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the graph", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Graph batch writer failed", e.getCause());
+        }
+        checkFailure();
+    }
+
+    /**
+     * Waits for the submitted batches and stops the thread
+     */
+    @Override
+    public void close() {
+        try {
+            await();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private void checkFailure() {
+        RuntimeException e = failure;
+        if (e != null) {
+            throw new IllegalStateException("Failed to apply a graph batch", e);
+        }
+    }
+}
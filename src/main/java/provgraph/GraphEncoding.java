@@ -0,0 +1,136 @@
+package provgraph;
+
+import utils.Uid;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Encoding of strings and property values shared by the graph file formats.
+ * <p>
+ * Strings can be written through a dictionary that is built while writing: a string is
+ * written once, after its first id, and later only as its id.
+ */
+final class GraphEncoding {
+    // value tags
+    private static final int STRING_VALUE = 0, LONG_VALUE = 1, INTEGER_VALUE = 2, UID_VALUE = 3,
+            BOOLEAN_VALUE = 4, DOUBLE_VALUE = 5;
+
+    private GraphEncoding() {
+    }
+
+    /**
+     * Writes a property value. Enums like the object type are written as their name and
+     * read back as strings.
+     *
+     * @param dictionary dictionary for string values or null to write them as is
+     */
+    static void writeValue(DataOutputStream output, Map<String, Integer> dictionary, Object value) throws IOException {
+        if (value instanceof Long) {
+            output.writeByte(LONG_VALUE);
+            output.writeLong((Long) value);
+        } else if (value instanceof Integer) {
+            output.writeByte(INTEGER_VALUE);
+            output.writeInt((Integer) value);
+        } else if (value instanceof Uid) {
+            output.writeByte(UID_VALUE);
+            output.writeLong(((Uid) value).getHigh());
+            output.writeLong(((Uid) value).getLow());
+        } else if (value instanceof Boolean) {
+            output.writeByte(BOOLEAN_VALUE);
+            output.writeBoolean((Boolean) value);
+        } else if (value instanceof Double) {
+            output.writeByte(DOUBLE_VALUE);
+            output.writeDouble((Double) value);
+        } else {
+            output.writeByte(STRING_VALUE);
+            if (dictionary == null) {
+                writeString(output, value.toString());
+            } else {
+                writeString(output, dictionary, value.toString());
+            }
+        }
+    }
+
+    /**
+     * @param dictionary dictionary the values were written with or null
+     */
+    static Object readValue(DataInputStream input, List<String> dictionary) throws IOException {
+        int tag = input.readByte();
+        switch (tag) {
+            case STRING_VALUE:
+                return dictionary == null ? readString(input) : readString(input, dictionary);
+            case LONG_VALUE:
+                return input.readLong();
+            case INTEGER_VALUE:
+                return input.readInt();
+            case UID_VALUE:
+                return new Uid(input.readLong(), input.readLong());
+            case BOOLEAN_VALUE:
+                return input.readBoolean();
+            case DOUBLE_VALUE:
+                return input.readDouble();
+            default:
+                throw new IOException("Unknown value tag " + tag);
+        }
+    }
+
+    static void writeString(DataOutputStream output, Map<String, Integer> dictionary, String string) throws IOException {
+        Integer id = dictionary.get(string);
+        if (id != null) {
+            writeVarInt(output, id);
+            return;
+        }
+        writeVarInt(output, dictionary.size());
+        dictionary.put(string, dictionary.size());
+        writeString(output, string);
+    }
+
+    static String readString(DataInputStream input, List<String> dictionary) throws IOException {
+        int id = readVarInt(input);
+        if (id < dictionary.size()) {
+            return dictionary.get(id);
+        }
+        if (id != dictionary.size()) {
+            throw new IOException("Corrupt string id " + id);
+        }
+        String string = readString(input);
+        dictionary.add(string);
+        return string;
+    }
+
+    static void writeString(DataOutputStream output, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(output, bytes.length);
+        output.write(bytes);
+    }
+
+    static String readString(DataInputStream input) throws IOException {
+        byte[] bytes = new byte[readVarInt(input)];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static void writeVarInt(DataOutputStream output, int value) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            output.writeByte((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        output.writeByte(value);
+    }
+
+    static int readVarInt(DataInputStream input) throws IOException {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = input.readByte();
+            value |= (b & 0x7f) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+}
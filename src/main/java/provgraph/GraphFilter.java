@@ -0,0 +1,51 @@
+package provgraph;
+
+/**
+ * Summarizations that decide about a vertex or an edge on its own, applied by
+ * {@link GraphStructure} while batches are added so that what they remove is never added to
+ * the graph.
+ * <p>
+ * The outcome is the same as removing the vertices and edges after the graph was built: a
+ * dropped process still takes part in the launch tree, so the HOP_COUNT of its descendants
+ * does not change, and a dropped edge still takes its COUNTER.
+ */
+public class GraphFilter {
+    public static final GraphFilter NONE = new GraphFilter(false, false);
+
+    private final boolean dropVertices;
+    private final boolean dropDuplicateEdges;
+
+    /**
+     * @param dropVertices       drop the systemd processes and the /proc files
+     * @param dropDuplicateEdges drop an edge when its actor already has an edge of the same
+     *                           event type to the same target
+     */
+    public GraphFilter(boolean dropVertices, boolean dropDuplicateEdges) {
+        this.dropVertices = dropVertices;
+        this.dropDuplicateEdges = dropDuplicateEdges;
+    }
+
+    public static boolean isSystemProcess(String path) {
+        return path != null && path.contains("/lib/systemd/");
+    }
+
+    public static boolean isProcFile(String path) {
+        return path != null && path.contains("/proc/");
+    }
+
+    public boolean dropsVertices() {
+        return dropVertices;
+    }
+
+    public boolean dropsDuplicateEdges() {
+        return dropDuplicateEdges;
+    }
+
+    boolean dropsProcess(String path) {
+        return dropVertices && isSystemProcess(path);
+    }
+
+    boolean dropsFile(String path) {
+        return dropVertices && isProcFile(path);
+    }
+}
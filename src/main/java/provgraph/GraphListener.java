@@ -0,0 +1,30 @@
+package provgraph;
+
+import org.apache.tinkerpop.gremlin.structure.Edge;
+import org.apache.tinkerpop.gremlin.structure.Vertex;
+
+/**
+ * Receives the changes {@link GraphStructure} makes to the provenance graph, in the order in
+ * which they are made
+ */
+public interface GraphListener {
+    /**
+     * Called once the vertex and all its initial properties have been added
+     */
+    void vertexAdded(Vertex vertex);
+
+    /**
+     * Called once the edge and all its initial properties have been added
+     */
+    void edgeAdded(Edge edge);
+
+    /**
+     * Called after a property of an existing vertex has been set
+     */
+    void vertexPropertyChanged(Vertex vertex, String key, Object value);
+
+    /**
+     * Called after a property of an existing edge has been set
+     */
+    void edgePropertyChanged(Edge edge, String key, Object value);
+}
@@ -0,0 +1,187 @@
+package provgraph;
+
+import org.apache.tinkerpop.gremlin.structure.Edge;
+import org.apache.tinkerpop.gremlin.structure.Graph;
+import org.apache.tinkerpop.gremlin.structure.Property;
+import org.apache.tinkerpop.gremlin.structure.Vertex;
+import org.apache.tinkerpop.gremlin.structure.VertexProperty;
+import utils.Uid;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * On disk form of the provenance graph of one time window, see {@link GraphShards}.
+ * <p>
+ * Layout of the file, all numbers big endian:
+ * <pre>
+ * header:   magic, version, window start, window end, vertex count, edge count
+ * vertices: per vertex the label and the properties
+ * edges:    per edge the index of the out and in vertex, the label and the properties
+ * </pre>
+ * Labels, keys and string values are written through a dictionary, see {@link GraphEncoding}.
+ */
+public final class GraphSegment {
+    public static final String FILE_EXTENSION = ".segment";
+
+    private static final int MAGIC = 0x47534731; // GSG1
+    private static final int VERSION = 1;
+
+    private final long start, end;
+    private final Graph graph;
+    private final Map<Uid, Vertex> vertices;
+
+    private GraphSegment(long start, long end, Graph graph, Map<Uid, Vertex> vertices) {
+        this.start = start;
+        this.end = end;
+        this.graph = graph;
+        this.vertices = vertices;
+    }
+
+    /**
+     * @return start of the window in milliseconds since the epoch
+     */
+    public long getStart() {
+        return start;
+    }
+
+    /**
+     * @return end of the window in milliseconds since the epoch, exclusive
+     */
+    public long getEnd() {
+        return end;
+    }
+
+    public Graph getGraph() {
+        return graph;
+    }
+
+    /**
+     * @return the vertex with the given id or null if it is not part of the window
+     */
+    public Vertex getVertex(Uid uid) {
+        return vertices.get(uid);
+    }
+
+    /**
+     * Wraps the graph of a window that is still resident
+     */
+    static GraphSegment of(Graph graph, long start, long end) {
+        return new GraphSegment(start, end, graph, indexVertices(graph));
+    }
+
+    /**
+     * Writes the graph of a window
+     *
+     * @param graph graph of the window
+     * @param start start of the window
+     * @param end   end of the window
+     * @param file  segment file, replaced if it exists
+     * @throws IOException if writing failed
+     */
+    public static void write(Graph graph, long start, long end, File file) throws IOException {
+        List<Vertex> vertexList = new ArrayList<>();
+        graph.vertices().forEachRemaining(vertexList::add);
+        List<Edge> edgeList = new ArrayList<>();
+        graph.edges().forEachRemaining(edgeList::add);
+        Map<Object, Integer> vertexIndexes = new HashMap<>(vertexList.size() * 2);
+        for (Vertex vertex : vertexList) {
+            vertexIndexes.put(vertex.id(), vertexIndexes.size());
+        }
+        File tempFile = new File(file.getPath() + ".tmp");
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), 1 << 16))) {
+            Map<String, Integer> dictionary = new HashMap<>();
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeLong(start);
+            output.writeLong(end);
+            output.writeInt(vertexList.size());
+            output.writeInt(edgeList.size());
+            for (Vertex vertex : vertexList) {
+                GraphEncoding.writeString(output, dictionary, vertex.label());
+                List<VertexProperty<Object>> properties = new ArrayList<>();
+                vertex.properties().forEachRemaining(properties::add);
+                GraphEncoding.writeVarInt(output, properties.size());
+                for (VertexProperty<Object> property : properties) {
+                    GraphEncoding.writeString(output, dictionary, property.key());
+                    GraphEncoding.writeValue(output, dictionary, property.value());
+                }
+            }
+            for (Edge edge : edgeList) {
+                GraphEncoding.writeVarInt(output, vertexIndexes.get(edge.outVertex().id()));
+                GraphEncoding.writeVarInt(output, vertexIndexes.get(edge.inVertex().id()));
+                GraphEncoding.writeString(output, dictionary, edge.label());
+                List<Property<Object>> properties = new ArrayList<>();
+                edge.properties().forEachRemaining(properties::add);
+                GraphEncoding.writeVarInt(output, properties.size());
+                for (Property<Object> property : properties) {
+                    GraphEncoding.writeString(output, dictionary, property.key());
+                    GraphEncoding.writeValue(output, dictionary, property.value());
+                }
+            }
+        }
+        if (!tempFile.renameTo(file)) {
+            file.delete();
+            if (!tempFile.renameTo(file)) {
+                throw new IOException("Failed to move " + tempFile + " to " + file);
+            }
+        }
+    }
+
+    /**
+     * Reads a segment into an empty graph
+     *
+     * @param file  segment file
+     * @param graph graph to add the vertices and edges to
+     * @return the segment
+     * @throws IOException if reading failed or the file is not a segment
+     */
+    public static GraphSegment read(File file, Graph graph) throws IOException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                throw new IOException("Not a graph segment: " + file);
+            }
+            List<String> dictionary = new ArrayList<>();
+            long start = input.readLong();
+            long end = input.readLong();
+            Vertex[] vertexArray = new Vertex[input.readInt()];
+            int edgeCount = input.readInt();
+            Map<Uid, Vertex> vertices = new HashMap<>(vertexArray.length * 2);
+            for (int i = 0; i < vertexArray.length; i++) {
+                Vertex vertex = graph.addVertex(GraphEncoding.readString(input, dictionary));
+                int size = GraphEncoding.readVarInt(input);
+                for (int j = 0; j < size; j++) {
+                    String key = GraphEncoding.readString(input, dictionary);
+                    Object value = GraphEncoding.readValue(input, dictionary);
+                    vertex.property(key, value);
+                    if (value instanceof Uid && key.equals(NodeProperty.ID.name())) {
+                        vertices.put((Uid) value, vertex);
+                    }
+                }
+                vertexArray[i] = vertex;
+            }
+            for (int i = 0; i < edgeCount; i++) {
+                Vertex outVertex = vertexArray[GraphEncoding.readVarInt(input)];
+                Vertex inVertex = vertexArray[GraphEncoding.readVarInt(input)];
+                Edge edge = outVertex.addEdge(GraphEncoding.readString(input, dictionary), inVertex);
+                int size = GraphEncoding.readVarInt(input);
+                for (int j = 0; j < size; j++) {
+                    edge.property(GraphEncoding.readString(input, dictionary), GraphEncoding.readValue(input, dictionary));
+                }
+            }
+            return new GraphSegment(start, end, graph, vertices);
+        }
+    }
+
+    private static Map<Uid, Vertex> indexVertices(Graph graph) {
+        Map<Uid, Vertex> vertices = new HashMap<>();
+        for (Iterator<Vertex> iterator = graph.vertices(); iterator.hasNext(); ) {
+            Vertex vertex = iterator.next();
+            Property<Object> id = vertex.property(NodeProperty.ID.name());
+            if (id.isPresent() && id.value() instanceof Uid) {
+                vertices.put((Uid) id.value(), vertex);
+            }
+        }
+        return vertices;
+    }
+}
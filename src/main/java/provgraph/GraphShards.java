@@ -0,0 +1,258 @@
+package provgraph;
+
+import org.apache.tinkerpop.gremlin.structure.Direction;
+import org.apache.tinkerpop.gremlin.structure.Edge;
+import org.apache.tinkerpop.gremlin.structure.Graph;
+import org.apache.tinkerpop.gremlin.structure.Property;
+import org.apache.tinkerpop.gremlin.structure.Vertex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import utils.Uid;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.function.Supplier;
+
+/**
+ * Provenance graph split into time windows that are kept on disk.
+ * <p>
+ * The parser builds the graph of one window at a time and hands it over once the window is
+ * closed. The window is then written to a {@link GraphSegment} file and only a bounded number
+ * of window graphs stay resident, least recently used ones are dropped and read again from
+ * their segment when a query touches them. A process or file that is active in several
+ * windows has a vertex with the same id in each of them; the resident dictionary from vertex
+ * id to the windows that contain it links these vertices, so that traversals can continue
+ * from one window into the next.
+ */
+public class GraphShards {
+    private static final Logger logger = LoggerFactory.getLogger(GraphShards.class);
+
+    private final File directory;
+    private final Supplier<Graph> graphFactory;
+    private final int residentWindows;
+
+    private final List<File> files = new ArrayList<>();
+    private final List<long[]> bounds = new ArrayList<>();
+    // windows of each vertex in ascending order, only the used part of the array is valid
+    private final Map<Uid, int[]> vertexWindows = new HashMap<>();
+    private final LinkedHashMap<Integer, GraphSegment> resident = new LinkedHashMap<>(16, 0.75f, true);
+    // window of every graph that is still referenced, also by traversals after its eviction
+    private final Map<Graph, Integer> graphWindows = new WeakHashMap<>();
+
+    /**
+     * @param directory       directory of the segment files, created if needed
+     * @param residentWindows number of window graphs kept in memory
+     * @param graphFactory    creates the empty graphs segments are read into
+     */
+    public GraphShards(File directory, int residentWindows, Supplier<Graph> graphFactory) {
+        this.directory = directory;
+        this.residentWindows = Math.max(1, residentWindows);
+        this.graphFactory = graphFactory;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new UncheckedIOException(new IOException("Failed to create shard directory " + directory));
+        }
+    }
+
+    /**
+     * Writes the graph of a closed window to its segment. The graph stays resident until
+     * it is evicted and must not be modified anymore.
+     *
+     * @param graph graph of the window
+     * @param start start of the window in milliseconds since the epoch
+     * @param end   end of the window, exclusive
+     * @return index of the window
+     * @throws IOException if writing the segment failed
+     */
+    public int addWindow(Graph graph, long start, long end) throws IOException {
+        return addWindow(graph, start, end, true);
+    }
+
+    /**
+     * Writes the graph of a closed window to its segment
+     *
+     * @param resident false if the caller keeps modifying the graph, the window is then read
+     *                 from its segment when it is used
+     * @see #addWindow(Graph, long, long)
+     */
+    public int addWindow(Graph graph, long start, long end, boolean resident) throws IOException {
+        int window = files.size();
+        File file = new File(directory, "window-" + start + GraphSegment.FILE_EXTENSION);
+        GraphSegment.write(graph, start, end, file);
+        files.add(file);
+        bounds.add(new long[]{start, end});
+        for (Iterator<Vertex> vertices = graph.vertices(); vertices.hasNext(); ) {
+            Property<Object> id = vertices.next().property(NodeProperty.ID.name());
+            if (id.isPresent() && id.value() instanceof Uid) {
+                addVertexWindow((Uid) id.value(), window);
+            }
+        }
+        if (resident) {
+            makeResident(window, GraphSegment.of(graph, start, end));
+        } else {
+            // the caller's graph isn't resident but traversals from its vertices reach the other windows
+            graphWindows.put(graph, window);
+        }
+        logger.info("Closed window " + window + " [" + start + ", " + end + ") into " + file);
+        return window;
+    }
+
+    public int getWindowCount() {
+        return files.size();
+    }
+
+    public long getWindowStart(int window) {
+        return bounds.get(window)[0];
+    }
+
+    public long getWindowEnd(int window) {
+        return bounds.get(window)[1];
+    }
+
+    /**
+     * @return index of the window that contains the time or -1 if no window does
+     */
+    public int findWindow(long timeMillis) {
+        int low = 0, high = bounds.size() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long[] window = bounds.get(middle);
+            if (timeMillis < window[0]) {
+                high = middle - 1;
+            } else if (timeMillis >= window[1]) {
+                low = middle + 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the windows that contain a vertex with the given id, in time order
+     */
+    public int[] getWindows(Uid uid) {
+        int[] windows = vertexWindows.get(uid);
+        if (windows == null) {
+            return new int[0];
+        }
+        return Arrays.copyOf(windows, windowCount(windows));
+    }
+
+    /**
+     * Returns the graph of a window, reading it from its segment if it is not resident
+     */
+    public Graph getGraph(int window) {
+        return getSegment(window).getGraph();
+    }
+
+    /**
+     * @return the vertex with the given id in the window or null
+     */
+    public Vertex getVertex(int window, Uid uid) {
+        return getSegment(window).getVertex(uid);
+    }
+
+    /**
+     * @return the vertex with the given id in the first window that contains it or null
+     */
+    public Vertex getFirstVertex(Uid uid) {
+        int[] windows = vertexWindows.get(uid);
+        return windows == null ? null : getVertex(windows[0], uid);
+    }
+
+    /**
+     * @return window of a vertex of a window graph or -1
+     */
+    public int getWindow(Vertex vertex) {
+        Integer window = graphWindows.get(vertex.graph());
+        return window == null ? -1 : window;
+    }
+
+    /**
+     * Edges of a vertex over all windows that contain its id: out edges from its window and the
+     * later ones, in edges from its window and the earlier ones. Only these windows are read.
+     *
+     * @param vertex    vertex of a window graph
+     * @param direction {@link Direction#OUT} or {@link Direction#IN}
+     * @return the edges, in time order of the windows
+     */
+    public List<Edge> edges(Vertex vertex, Direction direction) {
+        List<Edge> edges = new ArrayList<>();
+        int window = getWindow(vertex);
+        Property<Object> id = vertex.property(NodeProperty.ID.name());
+        int[] windows = id.isPresent() ? vertexWindows.get(id.value()) : null;
+        if (window < 0 || windows == null) {
+            vertex.edges(direction).forEachRemaining(edges::add);
+            return edges;
+        }
+        Uid uid = (Uid) id.value();
+        int count = windowCount(windows);
+        for (int i = 0; i < count; i++) {
+            int other = windows[i];
+            if (other == window) {
+                vertex.edges(direction).forEachRemaining(edges::add);
+            } else if (direction == Direction.OUT ? other > window : other < window) {
+                Vertex otherVertex = getVertex(other, uid);
+                if (otherVertex != null) {
+                    otherVertex.edges(direction).forEachRemaining(edges::add);
+                }
+            }
+        }
+        return edges;
+    }
+
+    private GraphSegment getSegment(int window) {
+        GraphSegment segment = resident.get(window);
+        if (segment == null) {
+            try {
+                segment = GraphSegment.read(files.get(window), graphFactory.get());
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to read window " + window, e);
+            }
+            if (segment.getGraph() instanceof ColumnarGraph) {
+                ((ColumnarGraph) segment.getGraph()).compact();
+            }
+            makeResident(window, segment);
+        }
+        return segment;
+    }
+
+    private void makeResident(int window, GraphSegment segment) {
+        resident.put(window, segment);
+        graphWindows.put(segment.getGraph(), window);
+        Iterator<Integer> iterator = resident.keySet().iterator();
+        while (resident.size() > residentWindows) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    private void addVertexWindow(Uid uid, int window) {
+        int[] windows = vertexWindows.get(uid);
+        if (windows == null) {
+            // most vertices only live in one window
+            vertexWindows.put(uid, new int[]{window});
+            return;
+        }
+        int count = windowCount(windows);
+        if (windows[count - 1] == window) {
+            return;
+        }
+        if (count == windows.length) {
+            windows = Arrays.copyOf(windows, count * 2);
+            Arrays.fill(windows, count, windows.length, -1);
+            vertexWindows.put(uid, windows);
+        }
+        windows[count] = window;
+    }
+
+    private static int windowCount(int[] windows) {
+        int count = windows.length;
+        while (count > 0 && windows[count - 1] < 0) {
+            count--;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,287 @@
+package provgraph;
+
+import org.apache.tinkerpop.gremlin.structure.Edge;
+import org.apache.tinkerpop.gremlin.structure.Element;
+import org.apache.tinkerpop.gremlin.structure.Graph;
+import org.apache.tinkerpop.gremlin.structure.Property;
+import org.apache.tinkerpop.gremlin.structure.Vertex;
+import org.apache.tinkerpop.gremlin.structure.VertexProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.util.*;
+
+/**
+ * Export of the provenance graph that is written while the graph is built, so that other
+ * tools can load the graph without parsing the audit log again.
+ * <p>
+ * The file is a log of the changes {@link GraphStructure} makes, all numbers big endian:
+ * <pre>
+ * header:  magic, version
+ * records: vertex:          tag, id, label, properties
+ *          edge:            tag, id, id of the out and in vertex, label, properties
+ *          vertex property: tag, id of the vertex, key, value
+ *          edge property:   tag, id of the edge, key, value
+ * </pre>
+ * Elements are referenced by the value of their ID property, so writing needs no memory
+ * beyond the dictionary of labels and keys. A vertex that is added again, like a process of
+ * a sharded graph that is active in several windows, updates the vertex that was read before.
+ * An aggregated edge that is added again in a later window continues the edge that was read
+ * before: the EVENT_COUNTs add up, the earlier BEGIN_TIME and EVENTID and the later END_TIME
+ * and LAST_EVENTID are kept. A file whose writer did not finish is read up to its last
+ * complete record.
+ */
+public final class GraphStream {
+    private static final Logger logger = LoggerFactory.getLogger(GraphStream.class);
+
+    public static final String FILE_EXTENSION = ".gstream";
+
+    private static final int MAGIC = 0x47535431; // GST1
+    private static final int VERSION = 1;
+    // record tags
+    private static final int VERTEX = 1, EDGE = 2, VERTEX_PROPERTY = 3, EDGE_PROPERTY = 4;
+
+    private GraphStream() {
+    }
+
+    /**
+     * Reads an exported graph
+     *
+     * @param file  export file
+     * @param graph graph to add the vertices and edges to
+     * @return the graph
+     * @throws IOException if reading failed or the file is not a graph export
+     */
+    public static Graph read(File file, Graph graph) throws IOException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                throw new IOException("Not a graph export: " + file);
+            }
+            List<String> dictionary = new ArrayList<>();
+            Map<Object, Vertex> vertices = new HashMap<>();
+            Map<Object, Edge> edges = new HashMap<>();
+            // EVENT_COUNT of the earlier windows of the edges that were added again
+            Map<Object, Long> countBases = new HashMap<>();
+            long records = 0;
+            while (true) {
+                int tag = input.read();
+                if (tag < 0) {
+                    break;
+                }
+                try {
+                    readRecord(input, tag, dictionary, vertices, edges, countBases, graph);
+                } catch (EOFException e) {
+                    logger.warn("Graph export " + file + " ends within a record, it was not closed");
+                    break;
+                }
+                records++;
+            }
+            logger.info("Read " + records + " records, " + vertices.size() + " vertices and "
+                    + edges.size() + " edges from " + file);
+        }
+        return graph;
+    }
+
+    private static void readRecord(DataInputStream input, int tag, List<String> dictionary, Map<Object, Vertex> vertices,
+                                   Map<Object, Edge> edges, Map<Object, Long> countBases, Graph graph) throws IOException {
+        Object id = GraphEncoding.readValue(input, null);
+        switch (tag) {
+            case VERTEX: {
+                String label = GraphEncoding.readString(input, dictionary);
+                Vertex vertex = vertices.get(id);
+                if (vertex == null) {
+                    vertex = graph.addVertex(label);
+                    vertices.put(id, vertex);
+                    readProperties(input, dictionary, vertex);
+                } else {
+                    // a later window adds the vertex again and starts a process at HOP_COUNT 0
+                    int size = GraphEncoding.readVarInt(input);
+                    for (int i = 0; i < size; i++) {
+                        String key = GraphEncoding.readString(input, dictionary);
+                        Object value = GraphEncoding.readValue(input, null);
+                        if (!key.equals(NodeProperty.HOP_COUNT.name()) || !vertex.property(key).isPresent()) {
+                            vertex.property(key, value);
+                        }
+                    }
+                }
+                break;
+            }
+            case EDGE: {
+                Vertex outVertex = vertices.get(GraphEncoding.readValue(input, null));
+                Vertex inVertex = vertices.get(GraphEncoding.readValue(input, null));
+                String label = GraphEncoding.readString(input, dictionary);
+                if (outVertex == null || inVertex == null) {
+                    throw new IOException("Edge " + id + " references an unknown vertex");
+                }
+                Edge edge = edges.get(id);
+                if (edge == null) {
+                    edge = outVertex.addEdge(label, inVertex);
+                    edges.put(id, edge);
+                    readProperties(input, dictionary, edge);
+                } else {
+                    Property<Object> count = edge.property(EdgeProperty.EVENT_COUNT.name());
+                    if (count.isPresent()) {
+                        countBases.put(id, ((Number) count.value()).longValue());
+                    }
+                    int size = GraphEncoding.readVarInt(input);
+                    for (int i = 0; i < size; i++) {
+                        String key = GraphEncoding.readString(input, dictionary);
+                        mergeProperty(edge, key, GraphEncoding.readValue(input, null), countBases.get(id));
+                    }
+                }
+                break;
+            }
+            case VERTEX_PROPERTY:
+            case EDGE_PROPERTY: {
+                String key = GraphEncoding.readString(input, dictionary);
+                Object value = GraphEncoding.readValue(input, null);
+                if (tag == VERTEX_PROPERTY) {
+                    Vertex vertex = vertices.get(id);
+                    if (vertex != null) {
+                        vertex.property(key, value);
+                    }
+                } else {
+                    Edge edge = edges.get(id);
+                    if (edge != null) {
+                        mergeProperty(edge, key, value, countBases.get(id));
+                    }
+                }
+                break;
+            }
+            default:
+                throw new IOException("Unknown record tag " + tag);
+        }
+    }
+
+    /**
+     * Sets a property of an edge, merging the aggregate properties with those of the earlier
+     * windows
+     *
+     * @param countBase EVENT_COUNT of the earlier windows, null if the edge is only in one
+     */
+    private static void mergeProperty(Edge edge, String key, Object value, Long countBase) {
+        Property<Object> current = edge.property(key);
+        if (countBase != null && key.equals(EdgeProperty.EVENT_COUNT.name()) && value instanceof Number) {
+            value = countBase + ((Number) value).longValue();
+        } else if (current.isPresent() && (key.equals(EdgeProperty.BEGIN_TIME.name())
+                || key.equals(EdgeProperty.EVENTID.name()))) {
+            value = compare(current.value(), value) <= 0 ? current.value() : value;
+        } else if (current.isPresent() && (key.equals(EdgeProperty.END_TIME.name())
+                || key.equals(EdgeProperty.LAST_EVENTID.name()))) {
+            value = compare(current.value(), value) >= 0 ? current.value() : value;
+        }
+        edge.property(key, value);
+    }
+
+    /**
+     * Compares times and event ids by their number, ISO times by their text
+     */
+    private static int compare(Object first, Object second) {
+        try {
+            return new BigDecimal(first.toString()).compareTo(new BigDecimal(second.toString()));
+        } catch (NumberFormatException e) {
+            return first.toString().compareTo(second.toString());
+        }
+    }
+
+    private static void readProperties(DataInputStream input, List<String> dictionary, Element element) throws IOException {
+        int size = GraphEncoding.readVarInt(input);
+        for (int i = 0; i < size; i++) {
+            String key = GraphEncoding.readString(input, dictionary);
+            element.property(key, GraphEncoding.readValue(input, null));
+        }
+    }
+
+    /**
+     * Writes the changes of the graph as {@link GraphStructure} makes them, see
+     * {@link GraphStructure#addListener(GraphListener)}
+     */
+    public static class Writer implements GraphListener, Closeable {
+        private final DataOutputStream output;
+        private final Map<String, Integer> dictionary = new HashMap<>();
+
+        public Writer(File file) throws IOException {
+            output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+        }
+
+        @Override
+        public void vertexAdded(Vertex vertex) {
+            try {
+                output.writeByte(VERTEX);
+                writeId(vertex);
+                GraphEncoding.writeString(output, dictionary, vertex.label());
+                List<VertexProperty<Object>> properties = new ArrayList<>();
+                vertex.properties().forEachRemaining(properties::add);
+                GraphEncoding.writeVarInt(output, properties.size());
+                for (VertexProperty<Object> property : properties) {
+                    GraphEncoding.writeString(output, dictionary, property.key());
+                    GraphEncoding.writeValue(output, null, property.value());
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to write graph export", e);
+            }
+        }
+
+        @Override
+        public void edgeAdded(Edge edge) {
+            try {
+                output.writeByte(EDGE);
+                writeId(edge);
+                writeId(edge.outVertex());
+                writeId(edge.inVertex());
+                GraphEncoding.writeString(output, dictionary, edge.label());
+                List<Property<Object>> properties = new ArrayList<>();
+                edge.properties().forEachRemaining(properties::add);
+                GraphEncoding.writeVarInt(output, properties.size());
+                for (Property<Object> property : properties) {
+                    GraphEncoding.writeString(output, dictionary, property.key());
+                    GraphEncoding.writeValue(output, null, property.value());
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to write graph export", e);
+            }
+        }
+
+        @Override
+        public void vertexPropertyChanged(Vertex vertex, String key, Object value) {
+            writeProperty(VERTEX_PROPERTY, vertex, key, value);
+        }
+
+        @Override
+        public void edgePropertyChanged(Edge edge, String key, Object value) {
+            writeProperty(EDGE_PROPERTY, edge, key, value);
+        }
+
+        /**
+         * Writes the buffered records, for example before another process reads the file
+         */
+        public void flush() throws IOException {
+            output.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            output.close();
+        }
+
+        private void writeProperty(int tag, Element element, String key, Object value) {
+            try {
+                output.writeByte(tag);
+                writeId(element);
+                GraphEncoding.writeString(output, dictionary, key);
+                GraphEncoding.writeValue(output, null, value);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to write graph export", e);
+            }
+        }
+
+        private void writeId(Element element) throws IOException {
+            String key = element instanceof Vertex ? NodeProperty.ID.name() : EdgeProperty.ID.name();
+            GraphEncoding.writeValue(output, null, element.property(key).value());
+        }
+    }
+}
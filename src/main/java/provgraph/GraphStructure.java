@@ -5,146 +5,374 @@ import org.apache.tinkerpop.gremlin.structure.Graph;
 import org.apache.tinkerpop.gremlin.structure.Vertex;
 import parsers.AuditEventReader;
 import record.ObjectType;
+import utils.StringDictionary;
+import utils.Uid;
 import utils.Utils;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public class GraphStructure {
     Graph prov_graph;
     long EVENT_COUNTER = 1;
-    public Map<String, Vertex> seen_vertices = new HashMap<>();
+    public Map<Uid, Vertex> seen_vertices = new HashMap<>();
     public Map<String, Vertex> seen_proc_vertices = new HashMap<>();
-    public Map<String, Edge> seen_edges = new HashMap<>();
+    public Map<Uid, Edge> seen_edges = new HashMap<>();
+    // Repeated events between the same vertices update one edge instead of adding new ones
+    private final boolean aggregateEdges;
+    private final List<GraphListener> listeners = new ArrayList<>();
+    // property values that repeat across vertices are stored once, for as long as the graph of this window
+    private final StringDictionary strings = new StringDictionary();
+    // processes are keyed by their ID, so the lineage can be carried over to the next window
+    private ProcessLineage lineage = new ProcessLineage(
+            vertex -> vertex.value(NodeProperty.ID.name()), this::setHopCount);
+    // Vertices and edges the filter drops from batches, see GraphFilter
+    private final GraphFilter filter;
+    final Set<Uid> dropped_vertices = new HashSet<>();
+    final Map<String, Uid> dropped_proc_vertices = new HashMap<>();
+    private final Set<Uid> dropped_edges = new HashSet<>();
+    // actor, target and event type of the edges that were added, to find duplicates
+    private final Set<Uid> edge_targets = new HashSet<>();
 
     public GraphStructure(Graph inputGraph) {
+        this(inputGraph, false);
+    }
+
+    public GraphStructure(Graph inputGraph, boolean aggregateEdges) {
+        this(inputGraph, aggregateEdges, GraphFilter.NONE);
+    }
+
+    /**
+     * @param filter summarizations applied while vertices and edges are added, the add methods
+     *               return null for a vertex it drops
+     */
+    public GraphStructure(Graph inputGraph, boolean aggregateEdges, GraphFilter filter) {
         this.prov_graph = inputGraph;
+        this.aggregateEdges = aggregateEdges;
+        this.filter = filter;
+    }
+
+    /**
+     * Starts the graph of the next time window. Vertices of this window are added again to
+     * the next one when they are used there; the event counter keeps counting and processes
+     * keep their place in the lineage.
+     */
+    public GraphStructure nextWindow(Graph inputGraph) {
+        GraphStructure next = new GraphStructure(inputGraph, aggregateEdges, filter);
+        next.EVENT_COUNTER = EVENT_COUNTER;
+        next.listeners.addAll(listeners);
+        next.lineage = lineage.nextWindow(next::setHopCount);
+        return next;
+    }
+
+    /**
+     * Adds a listener that is told about every vertex, edge and property added from now on
+     */
+    public void addListener(GraphListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * @return launch tree and HOP_COUNT of the process vertices of this graph
+     */
+    public ProcessLineage getLineage() {
+        return lineage;
+    }
+
+    /**
+     * Marks the process of the vertex as terminated at the given time
+     */
+    public void markTerminated(Vertex vertex, String time) {
+        setProperty(vertex, NodeProperty.TERMINATE.name(), "TRUE");
+        setProperty(vertex, NodeProperty.TERMINATE_TIME.name(), time);
+    }
+
+    private void setHopCount(Vertex vertex, int depth) {
+        setProperty(vertex, NodeProperty.HOP_COUNT.name(), depth);
     }
 
-    Vertex checkIfAlreadyExist(String uid) {
+    private void setProperty(Vertex vertex, String key, Object value) {
+        vertex.property(key, value);
+        for (GraphListener listener : listeners) {
+            listener.vertexPropertyChanged(vertex, key, value);
+        }
+    }
+
+    private void setProperty(Edge edge, String key, Object value) {
+        edge.property(key, value);
+        for (GraphListener listener : listeners) {
+            listener.edgePropertyChanged(edge, key, value);
+        }
+    }
+
+    private Vertex added(Vertex vertex) {
+        for (GraphListener listener : listeners) {
+            listener.vertexAdded(vertex);
+        }
+        return vertex;
+    }
+
+    Vertex checkIfAlreadyExist(Uid uid) {
         return seen_vertices.getOrDefault(uid, null);
     }
 
 
     public Vertex addProcessVertex(Map<String, String> annotations) {
-        String uid = Utils.getIdentifierProcess(annotations);
+        Uid uid = Utils.getIdentifierProcess(annotations);
         Vertex found = checkIfAlreadyExist(uid);
-        if (found != null)
+        if (found != null || dropped_vertices.contains(uid))
             return found;
+        Vertex vertex = newProcessVertex(uid, processValues(annotations));
+        if (vertex != null)
+            seen_vertices.put(uid, vertex);
+        return vertex;
+    }
+
+    public Vertex addFileVertex(Map<String, String> annotations) {
+        return addFileVertex(annotations.get(AuditEventReader.PATH_PREFIX));
+    }
+
+    public Vertex addFileVertex(String path) {
+        ObjectType objtype = ObjectType.FILE;
+        Uid uid = Utils.getIdentifierFile(path, objtype.name());
+        Vertex found = checkIfAlreadyExist(uid);
+        if (found != null || dropped_vertices.contains(uid))
+            return found;
+        Vertex vertex = newPathVertex(uid, objtype, path);
+        if (vertex != null)
+            seen_vertices.put(uid, vertex);
+        return vertex;
+    }
+
+    public Vertex addApplogVertex(Map<String, String> annotations) {
+        String data = Utils.decodeHex(annotations.get(AuditEventReader.DATA));
+        return newApplogVertex(applogId(data, annotations), data);
+    }
+
+    public Vertex addNetworkVertex(String act, String src_ip, String src_port, String dst_ip, String dst_port, String direction, String protocol) {
+        Uid uid = Utils.getIdentifierNetwork(src_ip, src_port, dst_ip, dst_port, protocol, direction, act);
+        Vertex found = checkIfAlreadyExist(uid);
+        if (found != null || dropped_vertices.contains(uid))
+            return found;
+        Vertex vertex = newNetworkVertex(uid, src_ip, src_port, dst_ip, dst_port, direction, protocol);
+        if (vertex != null)
+            seen_vertices.put(uid, vertex);
+        return vertex;
+    }
+
+
+    public Vertex addModuleVertex(Map<String, String> annotations) {
+        String path = annotations.get(AuditEventReader.PATH_PREFIX);
+        ObjectType objtype = ObjectType.MODULE;
+        Uid uid = Utils.getIdentifierFile(path, objtype.name());
+        Vertex found = checkIfAlreadyExist(uid);
+        if (found != null || dropped_vertices.contains(uid))
+            return found;
+        Vertex vertex = newPathVertex(uid, objtype, path);
+        if (vertex != null)
+            seen_vertices.put(uid, vertex);
+        return vertex;
+
+    }
+
+    /**
+     * Applies the vertices, edges and terminations of a batch in the order they were added to
+     * it. A vertex that is added several times in the batch is looked up once, with a single
+     * probe of the seen vertices.
+     */
+    public void applyBatch(GraphBatch batch) {
+        batch.applyTo(this);
+    }
+
+    /**
+     * @return an empty batch for this graph, see {@link #applyBatch(GraphBatch)}
+     */
+    public GraphBatch newBatch() {
+        return new GraphBatch(aggregateEdges);
+    }
+
+    /**
+     * Values of a new process vertex from the event: PPID, PID, PATH, NAME and CMD_LINE
+     */
+    static String[] processValues(Map<String, String> annotations) {
         String ppid = annotations.get("ppid");
         String pid = annotations.get("pid");
-        String key = pid;
         String path = annotations.get("exe") == null ? "" : annotations.get("exe");
         String name = annotations.get("name") == null ? (annotations.get("comm") == null ? "" : annotations.get("comm")) : "";
         String cmdline = annotations.get("commandline") == null ? "" : annotations.get("commandline");
-        String time = annotations.get("time");
+        return new String[]{ppid, pid, path, name, cmdline};
+    }
+
+    static Uid applogId(String data, Map<String, String> annotations) {
+        return Utils.getIdentifierFile(data + annotations.get(AuditEventReader.EVENT_ID), ObjectType.FILE.name());
+    }
+
+    // The new*Vertex methods create a vertex without adding it to the seen vertices. They return
+    // null when the filter drops the vertex, which is then in the dropped vertices.
+
+    Vertex newProcessVertex(Uid uid, String[] values) {
+        String pid = strings.intern(values[1]);
+        if (filter.dropsProcess(values[2])) {
+            dropped_vertices.add(uid);
+            // events that refer to the process by pid must not find an older process
+            seen_proc_vertices.remove(pid);
+            dropped_proc_vertices.put(pid, uid);
+            lineage.addHidden(uid);
+            return null;
+        }
         Vertex vertex = prov_graph.addVertex(ObjectType.PROCESS.name());
         vertex.property(NodeProperty.OBJECT_TYPE.name(), ObjectType.PROCESS.name());
         vertex.property(NodeProperty.ID.name(), uid);
-        vertex.property(NodeProperty.PATH.name(), path);
-        vertex.property(NodeProperty.PPID.name(), ppid);
+        vertex.property(NodeProperty.PATH.name(), strings.intern(values[2]));
+        vertex.property(NodeProperty.PPID.name(), strings.intern(values[0]));
         vertex.property(NodeProperty.PID.name(), pid);
-        vertex.property(NodeProperty.NAME.name(), name);
+        vertex.property(NodeProperty.NAME.name(), strings.intern(values[3]));
 //        vertex.property(NodeProperty.CREATED_TIME.name(), time);
-        vertex.property(NodeProperty.CMD_LINE.name(), cmdline);
+        vertex.property(NodeProperty.CMD_LINE.name(), strings.intern(values[4]));
         vertex.property(NodeProperty.TERMINATE.name(), "FALSE");
-        vertex.property(NodeProperty.HOP_COUNT.name(), 0);
-        seen_vertices.put(uid, vertex);
-        seen_proc_vertices.put(key, vertex);
+        int depth = lineage.add(vertex);
+        vertex.property(NodeProperty.HOP_COUNT.name(), depth);
+        seen_proc_vertices.put(pid, vertex);
+        if (!dropped_proc_vertices.isEmpty()) {
+            dropped_proc_vertices.remove(pid);
+        }
+        added(vertex);
+        if (depth != 0) {
+            // a process of an earlier window, listeners that keep its earlier HOP_COUNT learn the current one
+            setHopCount(vertex, depth);
+        }
         return vertex;
     }
 
-    public Vertex addFileVertex(Map<String, String> annotations) {
-        String path = annotations.get(AuditEventReader.PATH_PREFIX);
-        ObjectType objtype = ObjectType.FILE;
-        String uid = Utils.getIdentifierFile(path, objtype.name());
-        Vertex found = checkIfAlreadyExist(uid);
-        if (found != null)
-            return found;
+    Vertex newPathVertex(Uid uid, ObjectType objtype, String path) {
+        if (objtype == ObjectType.FILE && filter.dropsFile(path)) {
+            dropped_vertices.add(uid);
+            return null;
+        }
         Vertex vertex = prov_graph.addVertex(objtype.name());
         vertex.property(NodeProperty.OBJECT_TYPE.name(), objtype);
         vertex.property(NodeProperty.ID.name(), uid);
-        vertex.property(NodeProperty.PATH.name(), path);
-        seen_vertices.put(uid, vertex);
-        return vertex;
+        vertex.property(NodeProperty.PATH.name(), strings.intern(path));
+        return added(vertex);
     }
 
-    public Vertex addApplogVertex(Map<String, String> annotations) {
-        String data = annotations.get(AuditEventReader.DATA);
-        String eventid = annotations.get(AuditEventReader.EVENT_ID);
-        data = Utils.decodeHex(data);
+    Vertex newApplogVertex(Uid uid, String data) {
+        if (filter.dropsFile(data)) {
+            // applog vertices are never looked up again
+            return null;
+        }
         ObjectType objtype = ObjectType.FILE;
-        String uid = Utils.getIdentifierFile(data + eventid, objtype.name());
         Vertex vertex = prov_graph.addVertex(objtype.name());
         vertex.property(NodeProperty.OBJECT_TYPE.name(), objtype);
         vertex.property(NodeProperty.ID.name(), uid);
         vertex.property(NodeProperty.PATH.name(), data);
-        return vertex;
+        return added(vertex);
     }
 
-    public Vertex addNetworkVertex(String act, String src_ip, String src_port, String dst_ip, String dst_port, String direction, String protocol) {
-        String uid = Utils.getIdentifierNetwork(src_ip, src_port, dst_ip, dst_port, protocol, direction, act);
-        Vertex found = checkIfAlreadyExist(uid);
-        if (found != null)
-            return found;
-
+    Vertex newNetworkVertex(Uid uid, String src_ip, String src_port, String dst_ip, String dst_port, String direction, String protocol) {
         Vertex vertex = prov_graph.addVertex(ObjectType.NETWORK.name());
         vertex.property(NodeProperty.OBJECT_TYPE.name(), ObjectType.NETWORK.name());
         vertex.property(NodeProperty.ID.name(), uid);
-        vertex.property(NodeProperty.SRC_IP.name(), src_ip);
-        vertex.property(NodeProperty.SRC_PORT.name(), src_port);
-        vertex.property(NodeProperty.DST_IP.name(), dst_ip);
-        vertex.property(NodeProperty.DST_PORT.name(), dst_port);
+        vertex.property(NodeProperty.SRC_IP.name(), strings.intern(src_ip));
+        vertex.property(NodeProperty.SRC_PORT.name(), strings.intern(src_port));
+        vertex.property(NodeProperty.DST_IP.name(), strings.intern(dst_ip));
+        vertex.property(NodeProperty.DST_PORT.name(), strings.intern(dst_port));
         vertex.property(NodeProperty.DIRECTION.name(), direction);
         vertex.property(NodeProperty.PROTOCOL.name(), protocol);
         // I add path to make all nodes have a path field
-        vertex.property(NodeProperty.PATH.name(), src_ip + ":" + dst_ip);
-        seen_vertices.put(uid, vertex);
-
-        return vertex;
+        vertex.property(NodeProperty.PATH.name(), strings.intern(src_ip + ":" + dst_ip));
+        return added(vertex);
     }
 
 
-    public Vertex addModuleVertex(Map<String, String> annotations) {
-        String path = annotations.get(AuditEventReader.PATH_PREFIX);
-        ObjectType objtype = ObjectType.MODULE;
-        String uid = Utils.getIdentifierFile(path, objtype.name());
-        Vertex found = checkIfAlreadyExist(uid);
-        if (found != null)
-            return found;
-        Vertex vertex = prov_graph.addVertex(objtype.name());
-        vertex.property(NodeProperty.OBJECT_TYPE.name(), objtype);
-        vertex.property(NodeProperty.ID.name(), uid);
-        vertex.property(NodeProperty.PATH.name(), path);
-        seen_vertices.put(uid, vertex);
-        return vertex;
+    /**
+     * Adds the edge of an event. When edges are aggregated, an event with the same syscall and
+     * event type between the same vertices as an earlier one only updates the END_TIME,
+     * EVENT_COUNT and LAST_EVENTID of the earlier edge, which keeps the BEGIN_TIME and EVENTID
+     * of the first event.
+     */
+    public void addEdge(Vertex actor, Vertex target, String begin_time,
+                        String syscall, String eventype, String eventid) {
+        Uid uid = aggregateEdges ? Utils.getAggregatedEdgeId(actor, target, syscall, eventype)
+                : Utils.getEdgeId(actor, target, syscall, eventype, eventid);
+        addEdge(uid, actor, target, begin_time, syscall, eventype, eventid);
+    }
 
+    /**
+     * @param uid id of the edge, or of the aggregated edge when edges are aggregated
+     */
+    void addEdge(Uid uid, Vertex actor, Vertex target, String begin_time,
+                 String syscall, String eventype, String eventid) {
+        if (aggregateEdges) {
+            Edge edge = seen_edges.get(uid);
+            if (edge == null && isDuplicate(actor, target, eventype)) {
+                dropEdge(uid, actor.value(NodeProperty.ID.name()), target.value(NodeProperty.ID.name()));
+                return;
+            }
+            if (edge != null) {
+                long count = (Long) edge.property(EdgeProperty.EVENT_COUNT.name()).value();
+                setProperty(edge, EdgeProperty.END_TIME.name(), begin_time);
+                setProperty(edge, EdgeProperty.EVENT_COUNT.name(), count + 1);
+                setProperty(edge, EdgeProperty.LAST_EVENTID.name(), eventid);
+            } else {
+                edge = newEdge(uid, actor, target, begin_time, syscall, eventype, eventid, true);
+            }
+        } else if (isDuplicate(actor, target, eventype)) {
+            dropEdge(uid, actor.value(NodeProperty.ID.name()), target.value(NodeProperty.ID.name()));
+            return;
+        } else {
+            newEdge(uid, actor, target, begin_time, syscall, eventype, eventid, false);
+        }
+        // only process vertices are in the lineage, it updates their HOP_COUNT
+        if (lineage.contains(actor) && lineage.contains(target)) {
+            lineage.launch(actor, target);
+        }
     }
 
+    private boolean isDuplicate(Vertex actor, Vertex target, String eventype) {
+        return filter.dropsDuplicateEdges()
+                && !edge_targets.add(Uid.builder().append(actor.id()).append(target.id()).append(eventype).build());
+    }
 
-    public void addEdge(Vertex actor, Vertex target, String begin_time,
-                        String syscall, String eventype, String eventid) {
+    /**
+     * Accounts for an edge the filter drops, because of the edge itself or one of its vertices
+     *
+     * @param actorKey  ID of the actor vertex, or the id of the dropped vertex
+     * @param targetKey ID of the target vertex, or the id of the dropped vertex
+     */
+    void dropEdge(Uid uid, Object actorKey, Object targetKey) {
+        // the edge takes its COUNTER, so the edges that are kept are numbered as without filter
+        if (!aggregateEdges || dropped_edges.add(uid)) {
+            EVENT_COUNTER = EVENT_COUNTER + 1;
+        }
+        if (lineage.containsKey(actorKey) && lineage.containsKey(targetKey)) {
+            lineage.launchByKey(actorKey, targetKey);
+        }
+    }
 
-        String uid = Utils.getEdgeId(actor, target, syscall, eventype, eventid);
+    private Edge newEdge(Uid uid, Vertex actor, Vertex target, String begin_time,
+                         String syscall, String eventype, String eventid, boolean aggregated) {
         Edge edge = actor.addEdge(syscall, target);
         seen_edges.put(uid, edge);
         edge.property(EdgeProperty.ID.name(), uid);
         edge.property(EdgeProperty.BEGIN_TIME.name(), begin_time);
-        edge.property(EdgeProperty.EVENTTYPE.name(), eventype);
-        edge.property(EdgeProperty.SYSCALL.name(), syscall);
+        edge.property(EdgeProperty.EVENTTYPE.name(), strings.intern(eventype));
+        edge.property(EdgeProperty.SYSCALL.name(), strings.intern(syscall));
         edge.property(EdgeProperty.EVENTID.name(), eventid);
         edge.property(EdgeProperty.COUNTER.name(), EVENT_COUNTER);
         EVENT_COUNTER = EVENT_COUNTER + 1;
-        if (Utils.getType(target).contains("PROCESS") && Utils.getType(actor).contains("PROCESS")) {
-            boolean hopcount = actor.property(NodeProperty.HOP_COUNT.name()).isPresent();
-            if (hopcount) {
-                Integer hp = Integer.parseInt(actor.property(NodeProperty.HOP_COUNT.name()).value().toString());
-                Integer hp_target = hp + 1;
-                target.property(NodeProperty.HOP_COUNT.name(), hp_target);
-            } else {
-                actor.property(NodeProperty.HOP_COUNT.name(), 0);
-                target.property(NodeProperty.HOP_COUNT.name(), 1);
-            }
+        if (aggregated) {
+            edge.property(EdgeProperty.END_TIME.name(), begin_time);
+            edge.property(EdgeProperty.EVENT_COUNT.name(), 1L);
+            edge.property(EdgeProperty.LAST_EVENTID.name(), eventid);
+        }
+        for (GraphListener listener : listeners) {
+            listener.edgeAdded(edge);
         }
+        return edge;
     }
 }
@@ -0,0 +1,277 @@
+package provgraph;
+
+import org.apache.tinkerpop.gremlin.structure.Property;
+import org.apache.tinkerpop.gremlin.structure.Vertex;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Launch tree of the process vertices and the depth of every process in it, the HOP_COUNT.
+ * <p>
+ * Each process is a row of int columns: its parent, its depth and the links of the list of
+ * its children. A process starts as a root of depth 0 and becomes the child of the process
+ * of its last launch edge. When a process gets another parent, its depth and the depths of
+ * all its descendants are updated, so a depth is always one more than the depth of the
+ * current parent. A launch edge that would make a process its own ancestor, like an exec back
+ * into a process that is already up the tree, leaves the tree as it is.
+ * <p>
+ * Every changed depth is reported to the listener, which {@link GraphStructure} uses to keep
+ * the HOP_COUNT property in sync for summarization, dot output and exports. Processes that
+ * are not in the graph, like the ones a {@link GraphFilter} drops, can be added by a key of
+ * their own; they pass depths on to their descendants but are not reported.
+ * <p>
+ * The lineage of a time window is carried over to the next one by {@link #nextWindow}, when
+ * processes are keyed by something that is the same in every window, like their ID.
+ */
+public class ProcessLineage {
+    public static final int NONE = -1;
+
+    // row of each process vertex by its key, or by the key of a hidden process
+    private final Map<Object, Integer> rows = new HashMap<>();
+    private Vertex[] vertices = new Vertex[64];
+    private int[] parents = new int[64];
+    private int[] depths = new int[64];
+    private int[] firstChildren = new int[64];
+    private int[] nextSiblings = new int[64];
+    private int[] previousSiblings = new int[64];
+    private int size = 0;
+    private int[] stack = new int[64];
+
+    private final Function<Vertex, Object> keyOf;
+    private final ObjIntConsumer<Vertex> depthListener;
+
+    public ProcessLineage() {
+        this((vertex, depth) -> {
+        });
+    }
+
+    /**
+     * @param depthListener called with the vertex and its depth whenever its depth changes and
+     *                      when {@link #launch(Vertex, Vertex)} adds an unknown process
+     */
+    public ProcessLineage(ObjIntConsumer<Vertex> depthListener) {
+        this(Vertex::id, depthListener);
+    }
+
+    /**
+     * @param keyOf key of a process vertex, the vertex id unless given
+     */
+    public ProcessLineage(Function<Vertex, Object> keyOf, ObjIntConsumer<Vertex> depthListener) {
+        this.keyOf = keyOf;
+        this.depthListener = depthListener;
+    }
+
+    /**
+     * Starts the lineage of the next time window with the processes and depths of this one.
+     * They are like hidden processes until the next window adds their vertices again.
+     *
+     * @param depthListener listener of the next window
+     */
+    public ProcessLineage nextWindow(ObjIntConsumer<Vertex> depthListener) {
+        ProcessLineage next = new ProcessLineage(keyOf, depthListener);
+        next.rows.putAll(rows);
+        next.vertices = new Vertex[vertices.length];
+        next.parents = parents.clone();
+        next.depths = depths.clone();
+        next.firstChildren = firstChildren.clone();
+        next.nextSiblings = nextSiblings.clone();
+        next.previousSiblings = previousSiblings.clone();
+        next.size = size;
+        return next;
+    }
+
+    /**
+     * Adds a process as a root of depth 0, unless it is already known. The listener is not
+     * called, the vertex is expected to start with the returned HOP_COUNT.
+     *
+     * @return depth of the process, which is not 0 for a process of an earlier window
+     */
+    public int add(Vertex process) {
+        int row = rowOf(keyOf.apply(process), process, false);
+        return depths[row];
+    }
+
+    /**
+     * Adds a process that has no vertex as a root of depth 0, unless it is already known
+     *
+     * @param key key of the process, which must not be the key of a vertex
+     */
+    public void addHidden(Object key) {
+        rowOf(key, null, false);
+    }
+
+    public boolean contains(Vertex vertex) {
+        return rows.containsKey(keyOf.apply(vertex));
+    }
+
+    /**
+     * @param key key of a vertex or of a hidden process
+     */
+    public boolean containsKey(Object key) {
+        return rows.containsKey(key);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Makes the actor the parent of the launched process. Processes that are not known yet
+     * are added first.
+     *
+     * @return the depth of the launched process
+     */
+    public int launch(Vertex actor, Vertex launched) {
+        return launch(rowOf(keyOf.apply(actor), actor, true), rowOf(keyOf.apply(launched), launched, true));
+    }
+
+    /**
+     * Like {@link #launch(Vertex, Vertex)} for processes that are already known
+     *
+     * @param actorKey    key of a vertex or of a hidden process
+     * @param launchedKey key of a vertex or of a hidden process
+     * @return the depth of the launched process
+     */
+    public int launchByKey(Object actorKey, Object launchedKey) {
+        Integer parent = rows.get(actorKey), child = rows.get(launchedKey);
+        if (parent == null || child == null) {
+            throw new IllegalArgumentException("Unknown process " + (parent == null ? actorKey : launchedKey));
+        }
+        return launch(parent, child);
+    }
+
+    private int launch(int parent, int child) {
+        if (parents[child] == parent) {
+            return depths[child];
+        }
+        for (int ancestor = parent; ancestor != NONE; ancestor = parents[ancestor]) {
+            if (ancestor == child) {
+                return depths[child];
+            }
+        }
+        detach(child);
+        parents[child] = parent;
+        nextSiblings[child] = firstChildren[parent];
+        if (firstChildren[parent] != NONE) {
+            previousSiblings[firstChildren[parent]] = child;
+        }
+        firstChildren[parent] = child;
+        setDepth(child, depths[parent] + 1);
+        return depths[child];
+    }
+
+    /**
+     * @return depth of the process, 0 for a root, or {@link #NONE} if it is not known
+     */
+    public int getDepth(Vertex process) {
+        Integer row = rows.get(keyOf.apply(process));
+        return row == null ? NONE : depths[row];
+    }
+
+    /**
+     * @return the process that launched the process last, or null for a root or unknown process
+     * and for a hidden parent
+     */
+    public Vertex getParent(Vertex process) {
+        Integer row = rows.get(keyOf.apply(process));
+        return row == null || parents[row] == NONE ? null : vertices[parents[row]];
+    }
+
+    /**
+     * Reads the HOP_COUNT property of a vertex, for graphs that were not built with a lineage
+     *
+     * @return the hop count or {@link #NONE} if the vertex has none
+     */
+    public static int hopCountOf(Vertex vertex) {
+        Property<Object> property = vertex.property(NodeProperty.HOP_COUNT.name());
+        if (!property.isPresent()) {
+            return NONE;
+        }
+        Object value = property.value();
+        // graphs read from older exports may still have the count as a string
+        return value instanceof Number ? ((Number) value).intValue() : Integer.parseInt(value.toString());
+    }
+
+    private int rowOf(Object key, Vertex vertex, boolean notify) {
+        Integer row = rows.get(key);
+        if (row != null) {
+            if (vertices[row] == null && vertex != null) {
+                // the process of an earlier window, or a hidden one, is added as a vertex
+                vertices[row] = vertex;
+                if (notify) {
+                    depthListener.accept(vertex, depths[row]);
+                }
+            }
+            return row;
+        }
+        if (size == vertices.length) {
+            int capacity = size * 2;
+            vertices = Arrays.copyOf(vertices, capacity);
+            parents = Arrays.copyOf(parents, capacity);
+            depths = Arrays.copyOf(depths, capacity);
+            firstChildren = Arrays.copyOf(firstChildren, capacity);
+            nextSiblings = Arrays.copyOf(nextSiblings, capacity);
+            previousSiblings = Arrays.copyOf(previousSiblings, capacity);
+        }
+        int added = size++;
+        vertices[added] = vertex;
+        parents[added] = NONE;
+        depths[added] = 0;
+        firstChildren[added] = NONE;
+        nextSiblings[added] = NONE;
+        previousSiblings[added] = NONE;
+        rows.put(key, added);
+        if (notify && vertex != null) {
+            depthListener.accept(vertex, 0);
+        }
+        return added;
+    }
+
+    private void detach(int child) {
+        int parent = parents[child];
+        if (parent == NONE) {
+            return;
+        }
+        int previous = previousSiblings[child], next = nextSiblings[child];
+        if (previous == NONE) {
+            firstChildren[parent] = next;
+        } else {
+            nextSiblings[previous] = next;
+        }
+        if (next != NONE) {
+            previousSiblings[next] = previous;
+        }
+        parents[child] = NONE;
+        nextSiblings[child] = NONE;
+        previousSiblings[child] = NONE;
+    }
+
+    /**
+     * Sets the depth of the process and moves its descendants by the same amount
+     */
+    private void setDepth(int row, int depth) {
+        int delta = depth - depths[row];
+        if (delta == 0) {
+            return;
+        }
+        int top = 0;
+        stack[top++] = row;
+        while (top > 0) {
+            int current = stack[--top];
+            depths[current] += delta;
+            if (vertices[current] != null) {
+                depthListener.accept(vertices[current], depths[current]);
+            }
+            for (int c = firstChildren[current]; c != NONE; c = nextSiblings[c]) {
+                if (top == stack.length) {
+                    stack = Arrays.copyOf(stack, top * 2);
+                }
+                stack[top++] = c;
+            }
+        }
+    }
+}
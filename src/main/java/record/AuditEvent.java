@@ -0,0 +1,659 @@
+package record;
+
+import parsers.AuditEventReader;
+import utils.CommonFunctions;
+import utils.StringDictionary;
+
+import java.math.BigInteger;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Flat representation of an audit event.
+ * <p>
+ * The numeric fields that every handler reads (syscall, pid, ppid, exit, a0-a3, eventid
+ * and time) are kept as primitives and all other fields are kept in a small side table of
+ * parallel key and value arrays. Keys and low cardinality values of the side table are
+ * interned in the shared {@link StringDictionary}. Paths, command lines and addresses are not,
+ * the dictionary never forgets a string and most events are dropped after they were handled;
+ * the graph interns the values it keeps.
+ * <p>
+ * The event is also a {@code Map<String, String>} so that code which still reads events as
+ * maps keeps working. A numeric field is only stored as a primitive if its string form can
+ * be reproduced exactly, otherwise it is kept in the side table as is. The map view
+ * therefore always returns the same strings as the HashMap it replaces, while the typed
+ * accessors and the static helpers avoid parsing the strings again.
+ */
+public final class AuditEvent extends AbstractMap<String, String> {
+    // Primitive fields
+    private static final int SYSCALL = 0,
+            PID = 1,
+            PPID = 2,
+            EXIT = 3,
+            ARG0 = 4,
+            ARG1 = 5,
+            ARG2 = 6,
+            ARG3 = 7,
+            EVENT_ID = 8,
+            TIME = 9,
+            PRIMITIVE_FIELDS = 10;
+
+    private static final String[] PRIMITIVE_KEYS = {
+            AuditEventReader.SYSCALL, AuditEventReader.PID, AuditEventReader.PPID, AuditEventReader.EXIT,
+            AuditEventReader.ARG0, AuditEventReader.ARG1, AuditEventReader.ARG2, AuditEventReader.ARG3,
+            AuditEventReader.EVENT_ID, AuditEventReader.TIME
+    };
+
+    /**
+     * Side table keys whose values repeat across events and are worth interning
+     */
+    private static final Set<String> INTERNED_VALUE_KEYS = Set.of(
+            "arch", "success", "items", "node", "comm", "key", "tty", "ses",
+            "uid", "gid", "euid", "egid", "suid", "sgid", "fsuid", "fsgid", "auid", "ouid", "ogid",
+            "subj", "obj", "dev", "rdev", "cap_fp", "cap_fi", "cap_fe", "cap_fver",
+            AuditEventReader.RECORD_TYPE_KEY, AuditEventReader.KMODULE_SOCKTYPE);
+
+    private static final StringDictionary strings = StringDictionary.shared();
+
+    private int syscall, pid, ppid;
+    private long exit, a0, a1, a2, a3, eventId, timeMillis;
+    // Bit per primitive field that is set
+    private int present;
+    // Arguments are rendered in decimal instead of hexadecimal, see decodeArguments
+    private boolean decimalArguments;
+
+    private String[] keys;
+    private String[] values;
+    private int sideSize;
+
+    public AuditEvent() {
+        keys = new String[8];
+        values = new String[8];
+    }
+
+    /**
+     * Creates an audit event with the key values of the given map
+     *
+     * @param eventData map to copy
+     * @return the given map if it already is an audit event, a copy otherwise
+     */
+    public static AuditEvent of(Map<String, String> eventData) {
+        if (eventData == null || eventData instanceof AuditEvent) {
+            return (AuditEvent) eventData;
+        }
+        AuditEvent event = new AuditEvent();
+        event.putAll(eventData);
+        return event;
+    }
+
+    public boolean hasSyscall() {
+        return has(SYSCALL);
+    }
+
+    /**
+     * @param defaultValue value returned if the event has no (numeric) syscall
+     * @return syscall number
+     */
+    public int getSyscall(int defaultValue) {
+        return has(SYSCALL) ? syscall : defaultValue;
+    }
+
+    public int getPid(int defaultValue) {
+        return has(PID) ? pid : defaultValue;
+    }
+
+    public int getPpid(int defaultValue) {
+        return has(PPID) ? ppid : defaultValue;
+    }
+
+    public long getExit(long defaultValue) {
+        return has(EXIT) ? exit : defaultValue;
+    }
+
+    public long getEventId(long defaultValue) {
+        return has(EVENT_ID) ? eventId : defaultValue;
+    }
+
+    /**
+     * @param defaultValue value returned if the event has no time
+     * @return time of the event in milliseconds since the epoch
+     */
+    public long getTimeMillis(long defaultValue) {
+        return has(TIME) ? timeMillis : defaultValue;
+    }
+
+    /**
+     * Returns the raw 64 bit value of the argument, regardless of whether the map view
+     * renders it as hexadecimal or decimal
+     *
+     * @param argumentNumber 0 to 3
+     * @param defaultValue   value returned if the argument is missing or not numeric
+     * @return value of the argument
+     */
+    public long getArgument(int argumentNumber, long defaultValue) {
+        int field = ARG0 + argumentNumber;
+        return argumentNumber >= 0 && argumentNumber < 4 && has(field) ? getLong(field) : defaultValue;
+    }
+
+    /**
+     * Syscall number of an event which may or may not be an {@link AuditEvent}
+     *
+     * @param eventData event
+     * @return syscall number or -1
+     */
+    public static int syscallOf(Map<String, String> eventData) {
+        if (eventData instanceof AuditEvent) {
+            return ((AuditEvent) eventData).getSyscall(-1);
+        }
+        return CommonFunctions.parseInt(eventData.get(AuditEventReader.SYSCALL), -1);
+    }
+
+    /**
+     * Process id of an event which may or may not be an {@link AuditEvent}
+     *
+     * @param eventData event
+     * @return process id or -1
+     */
+    public static int pidOf(Map<String, String> eventData) {
+        if (eventData instanceof AuditEvent) {
+            return ((AuditEvent) eventData).getPid(-1);
+        }
+        return CommonFunctions.parseInt(eventData.get(AuditEventReader.PID), -1);
+    }
+
+    /**
+     * Exit value of an event which may or may not be an {@link AuditEvent}
+     *
+     * @param eventData event
+     * @return exit value or -1
+     */
+    public static long exitOf(Map<String, String> eventData) {
+        if (eventData instanceof AuditEvent) {
+            return ((AuditEvent) eventData).getExit(-1);
+        }
+        return CommonFunctions.parseLong(eventData.get(AuditEventReader.EXIT), -1L);
+    }
+
+    /**
+     * Event id of an event which may or may not be an {@link AuditEvent}
+     *
+     * @param eventData event
+     * @return event id or -1
+     */
+    public static long eventIdOf(Map<String, String> eventData) {
+        if (eventData instanceof AuditEvent) {
+            return ((AuditEvent) eventData).getEventId(-1);
+        }
+        return CommonFunctions.parseLong(eventData.get(AuditEventReader.EVENT_ID), -1L);
+    }
+
+    /**
+     * Time of an event which may or may not be an {@link AuditEvent}
+     *
+     * @param eventData event
+     * @return time in milliseconds since the epoch or -1
+     */
+    public static long timeMillisOf(Map<String, String> eventData) {
+        if (eventData instanceof AuditEvent) {
+            return ((AuditEvent) eventData).getTimeMillis(-1);
+        }
+        Double seconds = CommonFunctions.parseDouble(eventData.get(AuditEventReader.TIME), null);
+        return seconds == null ? -1 : Math.round(seconds * 1000);
+    }
+
+    /**
+     * Argument of an event, after {@link #decodeArguments(Map)}, which may or may not be an
+     * {@link AuditEvent}
+     *
+     * @param eventData      event
+     * @param argumentNumber 0 to 3
+     * @param defaultValue   value returned if the argument is missing or not numeric
+     * @return value of the argument
+     */
+    public static long argumentOf(Map<String, String> eventData, int argumentNumber, long defaultValue) {
+        if (eventData instanceof AuditEvent) {
+            AuditEvent event = (AuditEvent) eventData;
+            if (event.decimalArguments) {
+                return event.getArgument(argumentNumber, defaultValue);
+            }
+        }
+        return CommonFunctions.parseLong(eventData.get("a" + argumentNumber), defaultValue);
+    }
+
+    /**
+     * Converts the arguments a0-a3 of the event from hexadecimal to decimal. For an
+     * {@link AuditEvent} this only changes how the arguments are rendered.
+     *
+     * @param eventData event
+     * @return bit per argument that was missing or not numeric
+     */
+    public static int decodeArguments(Map<String, String> eventData) {
+        AuditEvent event = eventData instanceof AuditEvent ? (AuditEvent) eventData : null;
+        if (event != null) {
+            if (event.decimalArguments) {
+                return 0;
+            }
+            event.decimalArguments = true;
+        }
+        int failed = 0;
+        for (int argumentNumber = 0; argumentNumber < 4; argumentNumber++) {
+            if (event != null && event.has(ARG0 + argumentNumber)) {
+                continue;
+            }
+            String key = "a" + argumentNumber;
+            try {
+                String value = event != null ? event.sideGet(key) : eventData.get(key);
+                eventData.put(key, String.valueOf(new BigInteger(value, 16).longValue()));
+            } catch (Exception e) {
+                failed |= 1 << argumentNumber;
+            }
+        }
+        return failed;
+    }
+
+    @Override
+    public int size() {
+        return Integer.bitCount(present) + sideSize;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        int field = primitiveField(key);
+        if (field >= 0 && has(field)) {
+            return true;
+        }
+        return indexOf(key) >= 0;
+    }
+
+    @Override
+    public String get(Object key) {
+        int field = primitiveField(key);
+        if (field >= 0 && has(field)) {
+            return format(field);
+        }
+        return sideGet(key);
+    }
+
+    @Override
+    public String put(String key, String value) {
+        int field = primitiveField(key);
+        if (field >= 0) {
+            String previous = has(field) ? format(field) : null;
+            if (parse(field, value)) {
+                int index = indexOf(key);
+                if (index >= 0) {
+                    previous = values[index];
+                    removeAt(index);
+                }
+                return previous;
+            }
+            present &= ~(1 << field);
+            String sidePrevious = sidePut(key, value);
+            return previous != null ? previous : sidePrevious;
+        }
+        return sidePut(key, value);
+    }
+
+    @Override
+    public String remove(Object key) {
+        int field = primitiveField(key);
+        if (field >= 0 && has(field)) {
+            String previous = format(field);
+            present &= ~(1 << field);
+            return previous;
+        }
+        int index = indexOf(key);
+        if (index < 0) {
+            return null;
+        }
+        String previous = values[index];
+        removeAt(index);
+        return previous;
+    }
+
+    @Override
+    public void clear() {
+        present = 0;
+        decimalArguments = false;
+        Arrays.fill(keys, 0, sideSize, null);
+        Arrays.fill(values, 0, sideSize, null);
+        sideSize = 0;
+    }
+
+    @Override
+    public Set<Entry<String, String>> entrySet() {
+        return new AbstractSet<Entry<String, String>>() {
+            @Override
+            public Iterator<Entry<String, String>> iterator() {
+                return new EntryIterator();
+            }
+
+            @Override
+            public int size() {
+                return AuditEvent.this.size();
+            }
+        };
+    }
+
+    private boolean has(int field) {
+        return (present & (1 << field)) != 0;
+    }
+
+    private static int primitiveField(Object key) {
+        if (!(key instanceof String)) {
+            return -1;
+        }
+        switch ((String) key) {
+            case AuditEventReader.SYSCALL:
+                return SYSCALL;
+            case AuditEventReader.PID:
+                return PID;
+            case AuditEventReader.PPID:
+                return PPID;
+            case AuditEventReader.EXIT:
+                return EXIT;
+            case AuditEventReader.ARG0:
+                return ARG0;
+            case AuditEventReader.ARG1:
+                return ARG1;
+            case AuditEventReader.ARG2:
+                return ARG2;
+            case AuditEventReader.ARG3:
+                return ARG3;
+            case AuditEventReader.EVENT_ID:
+                return EVENT_ID;
+            case AuditEventReader.TIME:
+                return TIME;
+            default:
+                return -1;
+        }
+    }
+
+    private long getLong(int field) {
+        switch (field) {
+            case SYSCALL:
+                return syscall;
+            case PID:
+                return pid;
+            case PPID:
+                return ppid;
+            case EXIT:
+                return exit;
+            case ARG0:
+                return a0;
+            case ARG1:
+                return a1;
+            case ARG2:
+                return a2;
+            case ARG3:
+                return a3;
+            case EVENT_ID:
+                return eventId;
+            default:
+                return timeMillis;
+        }
+    }
+
+    private void setLong(int field, long value) {
+        switch (field) {
+            case SYSCALL:
+                syscall = (int) value;
+                break;
+            case PID:
+                pid = (int) value;
+                break;
+            case PPID:
+                ppid = (int) value;
+                break;
+            case EXIT:
+                exit = value;
+                break;
+            case ARG0:
+                a0 = value;
+                break;
+            case ARG1:
+                a1 = value;
+                break;
+            case ARG2:
+                a2 = value;
+                break;
+            case ARG3:
+                a3 = value;
+                break;
+            case EVENT_ID:
+                eventId = value;
+                break;
+            default:
+                timeMillis = value;
+        }
+        present |= 1 << field;
+    }
+
+    private String format(int field) {
+        long value = getLong(field);
+        if (field == TIME) {
+            long millis = value % 1000;
+            return (value / 1000) + (millis < 10 ? ".00" : millis < 100 ? ".0" : ".") + millis;
+        }
+        if (field >= ARG0 && field <= ARG3 && !decimalArguments) {
+            return Long.toHexString(value);
+        }
+        return Long.toString(value);
+    }
+
+    /**
+     * Stores the value as a primitive if formatting it again gives back the same string
+     *
+     * @return false if the value has to be kept as a string
+     */
+    private boolean parse(int field, String value) {
+        if (value == null || value.isEmpty()) {
+            return false;
+        }
+        if (field == TIME) {
+            // seconds.milliseconds as written by auditd
+            int dot = value.length() - 4;
+            if (dot < 1 || value.charAt(dot) != '.' || !isDecimal(value, 0, dot, false)
+                    || !isDigits(value, dot + 1, value.length()) || dot > 15) {
+                return false;
+            }
+            long seconds = Long.parseLong(value, 0, dot, 10);
+            setLong(field, seconds * 1000 + Integer.parseInt(value, dot + 1, value.length(), 10));
+            return true;
+        }
+        if (field >= ARG0 && field <= ARG3 && !decimalArguments) {
+            if (value.length() > 16 || !isHex(value)) {
+                return false;
+            }
+            setLong(field, Long.parseUnsignedLong(value, 16));
+            return true;
+        }
+        if (!isDecimal(value, 0, value.length(), true) || value.length() > 19) {
+            return false;
+        }
+        try {
+            long parsed = Long.parseLong(value);
+            if ((field == SYSCALL || field == PID || field == PPID) && parsed != (int) parsed) {
+                return false;
+            }
+            setLong(field, parsed);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Digits without leading zeros, optionally negative but not -0
+     */
+    private static boolean isDecimal(String value, int start, int end, boolean signed) {
+        if (signed && start < end && value.charAt(start) == '-') {
+            start++;
+            if (start < end && value.charAt(start) == '0') {
+                return false;
+            }
+        }
+        if (start >= end || (value.charAt(start) == '0' && end - start > 1)) {
+            return false;
+        }
+        return isDigits(value, start, end);
+    }
+
+    private static boolean isDigits(String value, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Lower case hexadecimal without leading zeros
+     */
+    private static boolean isHex(String value) {
+        if (value.charAt(0) == '0' && value.length() > 1) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int indexOf(Object key) {
+        for (int i = 0; i < sideSize; i++) {
+            if (keys[i] == key) {
+                return i;
+            }
+        }
+        if (key != null) {
+            for (int i = 0; i < sideSize; i++) {
+                if (key.equals(keys[i])) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private String sideGet(Object key) {
+        int index = indexOf(key);
+        return index < 0 ? null : values[index];
+    }
+
+    private String sidePut(String key, String value) {
+        int index = indexOf(key);
+        if (index >= 0) {
+            String previous = values[index];
+            values[index] = internValue(keys[index], value);
+            return previous;
+        }
+        if (sideSize == keys.length) {
+            keys = Arrays.copyOf(keys, sideSize * 2);
+            values = Arrays.copyOf(values, sideSize * 2);
+        }
+        key = intern(key);
+        keys[sideSize] = key;
+        values[sideSize] = internValue(key, value);
+        sideSize++;
+        return null;
+    }
+
+    private void removeAt(int index) {
+        int last = sideSize - 1;
+        System.arraycopy(keys, index + 1, keys, index, last - index);
+        System.arraycopy(values, index + 1, values, index, last - index);
+        keys[last] = null;
+        values[last] = null;
+        sideSize = last;
+    }
+
+    private static String internValue(String key, String value) {
+        if (value != null && (INTERNED_VALUE_KEYS.contains(key)
+                || key.startsWith(AuditEventReader.NAMETYPE_PREFIX)
+                || key.startsWith(AuditEventReader.MODE_PREFIX))) {
+            return intern(value);
+        }
+        return value;
+    }
+
+    private static String intern(String string) {
+        return strings.intern(string);
+    }
+
+    /**
+     * Iterates over the set primitive fields followed by the side table
+     */
+    private final class EntryIterator implements Iterator<Entry<String, String>> {
+        private int field = nextField(0);
+        private int index = 0;
+        private int lastField = -1;
+        private int lastIndex = -1;
+
+        private int nextField(int from) {
+            while (from < PRIMITIVE_FIELDS && !has(from)) {
+                from++;
+            }
+            return from;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return field < PRIMITIVE_FIELDS || index < sideSize;
+        }
+
+        @Override
+        public Entry<String, String> next() {
+            if (field < PRIMITIVE_FIELDS) {
+                lastField = field;
+                lastIndex = -1;
+                field = nextField(field + 1);
+                final String key = PRIMITIVE_KEYS[lastField];
+                return new SimpleEntry<String, String>(key, format(lastField)) {
+                    @Override
+                    public String setValue(String value) {
+                        super.setValue(value);
+                        return put(key, value);
+                    }
+                };
+            }
+            if (index >= sideSize) {
+                throw new NoSuchElementException();
+            }
+            lastField = -1;
+            lastIndex = index++;
+            final String key = keys[lastIndex];
+            return new SimpleEntry<String, String>(key, values[lastIndex]) {
+                @Override
+                public String setValue(String value) {
+                    super.setValue(value);
+                    return sidePut(key, value);
+                }
+            };
+        }
+
+        @Override
+        public void remove() {
+            if (lastField >= 0) {
+                present &= ~(1 << lastField);
+                lastField = -1;
+            } else if (lastIndex >= 0) {
+                removeAt(lastIndex);
+                index = lastIndex;
+                lastIndex = -1;
+            } else {
+                throw new IllegalStateException();
+            }
+        }
+    }
+}
@@ -2,7 +2,6 @@ package record;
 
 import event.SYSCALL;
 import parsers.AuditEventReader;
-import utils.CommonFunctions;
 import utils.Utils;
 
 import java.util.Map;
@@ -47,7 +46,7 @@ public class AuditRecord implements RecordEvent {
 
     @Override
     public String toString() {
-        int sysNum = CommonFunctions.parseInt(auditEvent.get("syscall"), -1);
+        int sysNum = AuditEvent.syscallOf(auditEvent);
         SYSCALL syscall = SYSCALL.getSyscall(sysNum, arch);
         if (sysNum == 1) {
             String data = Utils.decodeHex(auditEvent.get(AuditEventReader.DATA));
@@ -0,0 +1,242 @@
+package record;
+
+import utils.IntIntHashMap;
+import utils.IntObjectHashMap;
+
+import java.util.Arrays;
+
+/**
+ * Open file and socket descriptors of every process.
+ * <p>
+ * Each process has an int to int table from descriptor number to a descriptor record. A record
+ * is a row of three columns: the file path, the open flags and the id of the {@link NetworkID}
+ * of a socket. Records of closed descriptors are reused, and all records of a process are freed
+ * by {@link #removeProcess(int)} when it exits, so the table, including the paths it refers to,
+ * stays as large as the set of descriptors that are actually open.
+ */
+public final class DescriptorTable {
+    public static final int NONE = 0, FILE = 1, NETWORK = 2;
+
+    private static final int NO_RECORD = -1;
+    private static final int NO_ID = -1;
+
+    private final IntObjectHashMap<IntIntHashMap> processes = new IntObjectHashMap<>(256);
+
+    // descriptor records, a free record links to the next free one through its flags column
+    private String[] recordPaths = new String[64];
+    private int[] recordFlags = new int[64];
+    private int[] recordNetworks = new int[64];
+    private int recordCount = 0;
+    private int freeRecord = NO_RECORD;
+
+    // sockets, shared by duplicated descriptors
+    private NetworkID[] networks = new NetworkID[64];
+    private int[] networkReferences = new int[64];
+    private int networkCount = 0;
+    private int freeNetwork = NO_ID;
+
+    /**
+     * Adds an opened file, replacing a descriptor with the same number
+     *
+     * @param pid   process id
+     * @param fd    descriptor number
+     * @param path  absolute path of the file
+     * @param flags open flags
+     */
+    public void addFile(int pid, int fd, String path, int flags) {
+        int record = allocateRecord();
+        recordPaths[record] = path;
+        recordFlags[record] = flags;
+        recordNetworks[record] = NO_ID;
+        put(pid, fd, record);
+    }
+
+    /**
+     * Adds a socket, replacing a descriptor with the same number
+     *
+     * @param pid       process id
+     * @param fd        descriptor number
+     * @param networkID endpoints of the socket
+     */
+    public void addNetwork(int pid, int fd, NetworkID networkID) {
+        int record = allocateRecord();
+        recordPaths[record] = null;
+        recordFlags[record] = 0;
+        recordNetworks[record] = allocateNetwork(networkID);
+        put(pid, fd, record);
+    }
+
+    /**
+     * Makes the new descriptor refer to the same file or socket as the old one, like dup2
+     *
+     * @return false if the old descriptor is unknown
+     */
+    public boolean duplicate(int pid, int fd, int newFd) {
+        int record = recordOf(pid, fd);
+        if (record == NO_RECORD) {
+            return false;
+        }
+        if (fd == newFd) {
+            return true;
+        }
+        int copy = allocateRecord();
+        recordPaths[copy] = recordPaths[record];
+        recordFlags[copy] = recordFlags[record];
+        recordNetworks[copy] = recordNetworks[record];
+        if (recordNetworks[copy] != NO_ID) {
+            networkReferences[recordNetworks[copy]]++;
+        }
+        put(pid, newFd, copy);
+        return true;
+    }
+
+    /**
+     * @return {@link #FILE}, {@link #NETWORK} or {@link #NONE} if the descriptor is unknown
+     */
+    public int typeOf(int pid, int fd) {
+        int record = recordOf(pid, fd);
+        if (record == NO_RECORD) {
+            return NONE;
+        }
+        return recordNetworks[record] == NO_ID ? FILE : NETWORK;
+    }
+
+    /**
+     * @return path of the file or null if the descriptor is not a known file
+     */
+    public String getPath(int pid, int fd) {
+        int record = recordOf(pid, fd);
+        if (record == NO_RECORD) {
+            return null;
+        }
+        return recordPaths[record];
+    }
+
+    /**
+     * @return open flags of the file or 0 if the descriptor is not a known file
+     */
+    public int getFlags(int pid, int fd) {
+        int record = recordOf(pid, fd);
+        return record == NO_RECORD ? 0 : recordFlags[record];
+    }
+
+    /**
+     * @return endpoints of the socket or null if the descriptor is not a known socket
+     */
+    public NetworkID getNetwork(int pid, int fd) {
+        int record = recordOf(pid, fd);
+        if (record == NO_RECORD || recordNetworks[record] == NO_ID) {
+            return null;
+        }
+        return networks[recordNetworks[record]];
+    }
+
+    /**
+     * Removes a closed descriptor
+     *
+     * @return false if the descriptor is unknown
+     */
+    public boolean remove(int pid, int fd) {
+        IntIntHashMap descriptors = processes.get(pid);
+        if (descriptors == null) {
+            return false;
+        }
+        int record = descriptors.remove(fd);
+        if (record == NO_RECORD) {
+            return false;
+        }
+        freeRecord(record);
+        if (descriptors.isEmpty()) {
+            processes.remove(pid);
+        }
+        return true;
+    }
+
+    /**
+     * Removes all descriptors of an exited process
+     */
+    public void removeProcess(int pid) {
+        IntIntHashMap descriptors = processes.remove(pid);
+        if (descriptors != null) {
+            descriptors.forEach((fd, record) -> freeRecord(record));
+        }
+    }
+
+    /**
+     * @return number of processes with open descriptors
+     */
+    public int getProcessCount() {
+        return processes.size();
+    }
+
+    /**
+     * @return number of open descriptors of all processes
+     */
+    public int getDescriptorCount() {
+        int[] count = new int[1];
+        processes.forEachValue(descriptors -> count[0] += descriptors.size());
+        return count[0];
+    }
+
+    private int recordOf(int pid, int fd) {
+        IntIntHashMap descriptors = processes.get(pid);
+        return descriptors == null ? NO_RECORD : descriptors.get(fd);
+    }
+
+    private void put(int pid, int fd, int record) {
+        IntIntHashMap descriptors = processes.get(pid);
+        if (descriptors == null) {
+            descriptors = new IntIntHashMap(NO_RECORD);
+            processes.put(pid, descriptors);
+        }
+        int replaced = descriptors.put(fd, record);
+        if (replaced != NO_RECORD) {
+            freeRecord(replaced);
+        }
+    }
+
+    private int allocateRecord() {
+        if (freeRecord != NO_RECORD) {
+            int record = freeRecord;
+            freeRecord = recordFlags[record];
+            return record;
+        }
+        if (recordCount == recordPaths.length) {
+            int capacity = recordCount * 2;
+            recordPaths = Arrays.copyOf(recordPaths, capacity);
+            recordFlags = Arrays.copyOf(recordFlags, capacity);
+            recordNetworks = Arrays.copyOf(recordNetworks, capacity);
+        }
+        return recordCount++;
+    }
+
+    private void freeRecord(int record) {
+        int network = recordNetworks[record];
+        if (network != NO_ID && --networkReferences[network] == 0) {
+            networks[network] = null;
+            networkReferences[network] = freeNetwork;
+            freeNetwork = network;
+        }
+        recordNetworks[record] = NO_ID;
+        recordPaths[record] = null;
+        recordFlags[record] = freeRecord;
+        freeRecord = record;
+    }
+
+    private int allocateNetwork(NetworkID networkID) {
+        int network;
+        if (freeNetwork != NO_ID) {
+            network = freeNetwork;
+            freeNetwork = networkReferences[network];
+        } else {
+            if (networkCount == networks.length) {
+                networks = Arrays.copyOf(networks, networkCount * 2);
+                networkReferences = Arrays.copyOf(networkReferences, networkCount * 2);
+            }
+            network = networkCount++;
+        }
+        networks[network] = networkID;
+        networkReferences[network] = 1;
+        return network;
+    }
+}
@@ -58,8 +58,8 @@ public class Agamotto {
                     }
                 }
                 // finished with parsing, dump the graph into the output file
-                Graph graph = parseLinuxAudit.getProvGraph();
-                Summarization sum = new Summarization();
+                Graph graph = parseLinuxAudit.finish();
+                Summarization sum = new Summarization(this.config.summarizationThreads, this.config.getGraphFilter());
                 graph = sum.mustSummarizations(graph, null);
                 DotGraph dg = new DotGraph();
                 String graphPath = buildGraphPath(pid, i);
@@ -5,6 +5,7 @@ import com.google.common.collect.Lists;
 import org.apache.tinkerpop.gremlin.structure.Direction;
 import org.apache.tinkerpop.gremlin.structure.Edge;
 import org.apache.tinkerpop.gremlin.structure.Vertex;
+import provgraph.GraphShards;
 import provgraph.NodeProperty;
 import utils.Utils;
 
@@ -12,44 +13,44 @@ import java.util.*;
 
 public class Algorithms {
 
+    public static final int MAX_BACKWARD_DEPTH = 8;
+    public static final int MAX_FORWARD_DEPTH = 12;
+
     public Set seen = new HashSet();
-    public Stack<Vertex> vertex_stack = new Stack<>();
-    public Stack<Edge> edge_stack = new Stack<>();
     public ArrayList<ArrayList<Vertex>> paths = new ArrayList<>();
 
     public ArrayList<ArrayList<Edge>> backward_edges = new ArrayList<>();
     public ArrayList<ArrayList<Edge>> forward_edges = new ArrayList<>();
 
-    public String getId(Vertex vertex) {
-        return vertex.property(NodeProperty.ID.name()).toString();
-    }
-
+    // Time windows the traversal may continue into, null if the graph is not sharded
+    private final GraphShards shards;
+    // out and in edges of the visited vertices by time, kept for all traversals of this instance
+    // unless the graph is sharded, they would keep the windows a traversal paged in resident
+    private final CausalityIndex forward_index;
+    private final CausalityIndex backward_index;
 
-    public void recordBackwardPath() {
-        ArrayList<Edge> path = new ArrayList<>();
-        path.addAll(edge_stack);
-        backward_edges.add(path);
+    public Algorithms() {
+        this(null);
     }
 
-    public void recordForwardPath() {
-        ArrayList<Edge> path = new ArrayList<>();
-        ArrayList<Vertex> path_vertices = new ArrayList<>();
-        path.addAll(edge_stack);
-        path_vertices.addAll(vertex_stack);
-        forward_edges.add(path);
-        paths.add(path_vertices);
+    /**
+     * @param shards time windows of a sharded graph, the traversal follows a process or file
+     *               into the later windows (forward) or earlier windows (backward) that contain
+     *               it and only reads these
+     */
+    public Algorithms(GraphShards shards) {
+        this.shards = shards;
+        this.forward_index = CausalityIndex.forward(vertex -> getEdges(vertex, Direction.OUT));
+        this.backward_index = CausalityIndex.backward(vertex -> getEdges(vertex, Direction.IN));
     }
 
+    public String getId(Vertex vertex) {
+        return vertex.property(NodeProperty.ID.name()).toString();
+    }
 
     public ArrayList<ArrayList<Edge>> runBoth(Vertex start_vertex) {
-
-        vertex_stack = new Stack<>();
-        edge_stack = new Stack<>();
         runBackwardDFS(start_vertex, 0);
-
-        vertex_stack = new Stack<>();
-        edge_stack = new Stack<>();
-        runForwardDFS(start_vertex, 0, "2001-03-07T16:45:56.070Z");
+        recordForwardPaths(traceForward(start_vertex));
         System.out.println("Size of backward edges " + backward_edges.size());
         System.out.println("Size of forward edges " + forward_edges.size());
         backward_edges.addAll(forward_edges);
@@ -57,15 +58,11 @@ public class Algorithms {
     }
 
     public ArrayList<ArrayList<Edge>> runForward(Vertex start_vertex) {
-        vertex_stack = new Stack<>();
-        edge_stack = new Stack<>();
-        runForwardDFS(start_vertex, 0, "2001-03-07T16:45:56.070Z");
+        recordForwardPaths(traceForward(start_vertex));
         return forward_edges;
     }
 
     public ArrayList<ArrayList<Edge>> runBackward(Vertex start_vertex) {
-        vertex_stack = new Stack<>();
-        edge_stack = new Stack<>();
         runBackwardDFS(start_vertex, 0);
         return backward_edges;
     }
@@ -74,83 +71,107 @@ public class Algorithms {
         return Lists.newArrayList(iterator);
     }
 
-    public void runBackwardDFS(Vertex start_vertex, int depth) {
-
-        seen.add(getId(start_vertex));
-        vertex_stack.push(start_vertex);
-        System.out.println("Pushing Backward DFS " + start_vertex + " : " + start_vertex.property(NodeProperty.PATH.name()));
-        System.out.println("Pushing Backward DFS " + start_vertex + " : " + start_vertex.property(NodeProperty.ID.name()));
-
-        if (depth == 8) {
-            recordBackwardPath();
-            vertex_stack.pop();
-            if (!edge_stack.isEmpty())
-                edge_stack.pop();
-            return;
+    private List<Edge> getEdges(Vertex vertex, Direction direction) {
+        if (shards == null) {
+            return getListFromIterator(vertex.edges(direction));
         }
-        Iterator<Edge> edges = start_vertex.edges(Direction.IN);
-        List<Edge> list = getListFromIterator(edges);
-        if (list.size() == 0) {
-            //System.out.println("I AM HERE");
-            recordBackwardPath();
-        } else {
-            for (Edge edge : list) {
-                Vertex current_vertex = edge.outVertex();
-                if (seen.contains(getId(current_vertex)) && vertex_stack.contains(current_vertex)) {
-                    // TODO
-                } else {
-                    edge_stack.push(edge);
-                    runBackwardDFS(current_vertex, depth + 1);
-                }
-            }
+        return shards.edges(vertex, direction);
+    }
+
+    /**
+     * @return the backward paths of the vertex, up to {@link #MAX_BACKWARD_DEPTH} edges long
+     */
+    public ProvenancePaths traceBackward(Vertex start_vertex, TraversalListener listener) {
+        return run(traversal(Direction.IN, MAX_BACKWARD_DEPTH, listener), start_vertex);
+    }
+
+    /**
+     * @param end_time milliseconds since the epoch, the first edge may not be later
+     * @return the backward paths of the vertex, up to {@link #MAX_BACKWARD_DEPTH} edges long, in
+     * which no edge is later than the one after it
+     */
+    public ProvenancePaths traceBackward(Vertex start_vertex, long end_time, TraversalListener listener) {
+        return run(traversal(Direction.IN, MAX_BACKWARD_DEPTH, listener)
+                .setTimeRespecting(true)
+                .setTimeWindow(Long.MIN_VALUE, end_time), start_vertex);
+    }
+
+    /**
+     * @param begin_time milliseconds since the epoch, the first edge may not be earlier
+     * @return the forward paths of the vertex, up to {@link #MAX_FORWARD_DEPTH} edges long, in
+     * which no edge is earlier than the one before it
+     */
+    public ProvenancePaths traceForward(Vertex start_vertex, long begin_time, TraversalListener listener) {
+        return run(traversal(Direction.OUT, MAX_FORWARD_DEPTH, listener)
+                .setTimeRespecting(true)
+                .setTimeWindow(begin_time, Long.MAX_VALUE), start_vertex);
+    }
+
+    /**
+     * @return the forward paths of the vertex from its earliest out edge on
+     */
+    public ProvenancePaths traceForward(Vertex start_vertex) {
+        return traceForward(start_vertex, Long.MIN_VALUE, null);
+    }
+
+    /**
+     * @param depth edges already on the path before the start vertex
+     */
+    public void runBackwardDFS(Vertex start_vertex, int depth) {
+        ProvenancePaths found = run(traversal(Direction.IN, MAX_BACKWARD_DEPTH - depth, null), start_vertex);
+        for (int i = 0; i < found.getLeafCount(); i++) {
+            backward_edges.add(found.getPathEdges(found.getLeaf(i)));
         }
-        vertex_stack.pop();
-        if (!edge_stack.isEmpty())
-            edge_stack.pop();
-        return;
     }
 
+    /**
+     * @param depth      edges already on the path before the start vertex
+     * @param begin_time the first edge may not be earlier
+     */
     public void runForwardDFS(Vertex start_vertex, int depth, String begin_time) {
-        seen.add(getId(start_vertex));
-        vertex_stack.push(start_vertex);
-//        if (start_vertex.property(NodeProperty.PATH.name()).isPresent())
-//            System.out.println("Pushing Forward DFS " + start_vertex.property(NodeProperty.PATH.name()).value());
-        //System.out.println("Pushing Forward DFS "+ start_vertex + " : " + start_vertex.property(NodeProperty.ID.name()).value());
-        if (depth == 12) {
-            recordForwardPath();
-            vertex_stack.pop();
-            if (!edge_stack.isEmpty())
-                edge_stack.pop();
-            return;
-        }
-        Iterator<Edge> edges = start_vertex.edges(Direction.OUT);
-        //Iterator<Edge> in_edges  =  start_vertex.edges(Direction.IN);
-        //edge_stack.addAll(getListFromIterator(in_edges));
-        List<Edge> list = Utils.filterForwardEdges(Utils.getListFromIterator(edges), begin_time);
-        //List<Edge> list = Utils.filterForwardEdges(getListFromIterator(edges), );
-        //List<Edge> list = getListFromIterator(edges);
-        if (list.size() == 0) {
-            //System.out.println("I AM HERE");
-            recordForwardPath();
-        } else {
-            //System.out.println("My Size is " + list.size());
-            for (Edge edge : list) {
-                Vertex current_vertex = edge.inVertex();
-                String time = Utils.getTime(edge);
-                if (seen.contains(getId(current_vertex)) && vertex_stack.contains(current_vertex)) {
-                    // TODO
-                } else {
-                    edge_stack.push(edge);
-                    runForwardDFS(current_vertex, depth + 1, time);
-                }
-            }
+        recordForwardPaths(run(traversal(Direction.OUT, MAX_FORWARD_DEPTH - depth, null)
+                .setTimeRespecting(true)
+                .setTimeWindow(Utils.parseTimeMillis(begin_time), Long.MAX_VALUE), start_vertex));
+    }
+
+    private void recordForwardPaths(ProvenancePaths found) {
+        for (int i = 0; i < found.getLeafCount(); i++) {
+            forward_edges.add(found.getPathEdges(found.getLeaf(i)));
+            paths.add(found.getPathVertices(found.getLeaf(i)));
         }
-        vertex_stack.pop();
-        if (!edge_stack.isEmpty())
-            edge_stack.pop();
-        return;
+    }
 
+    private ProvenancePaths run(ProvenanceTraversal traversal, Vertex start_vertex) {
+        ProvenancePaths found = traversal.run(start_vertex);
+        if (shards != null) {
+            // the sorted edges refer to the windows the traversal read, let them be evicted
+            forward_index.clear();
+            backward_index.clear();
+        }
+        return found;
+    }
 
+    /**
+     * @param listener also told about the steps, may be null
+     */
+    private ProvenanceTraversal traversal(Direction direction, int maxDepth, TraversalListener listener) {
+        return new ProvenanceTraversal(direction, vertex -> getEdges(vertex, direction))
+                .setIndex(direction == Direction.OUT ? forward_index : backward_index)
+                .setMaxDepth(maxDepth)
+                .setListener(new TraversalListener() {
+                    @Override
+                    public boolean visit(ProvenancePaths found, int node) {
+                        seen.add(getId(found.getVertex(node)));
+                        return listener == null || listener.visit(found, node);
+                    }
+
+                    @Override
+                    public void pathEnd(ProvenancePaths found, int node) {
+                        if (listener != null) {
+                            listener.pathEnd(found, node);
+                        }
+                    }
+                });
     }
 
 }
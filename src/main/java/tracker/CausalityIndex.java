@@ -0,0 +1,171 @@
+package tracker;
+
+import org.apache.tinkerpop.gremlin.structure.Edge;
+import org.apache.tinkerpop.gremlin.structure.Graph;
+import org.apache.tinkerpop.gremlin.structure.Property;
+import org.apache.tinkerpop.gremlin.structure.Vertex;
+import provgraph.EdgeProperty;
+import utils.Utils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * The edges of each vertex sorted by a numeric key, the time of the edge or its COUNTER, so
+ * the edges within a range of the key are found by binary search instead of checking every
+ * edge. A time-respecting traversal asks for the edges not earlier (forward) or not later
+ * (backward) than the edge it came through.
+ * <p>
+ * An aggregated edge stands for events from its BEGIN_TIME to its END_TIME. Forward, it may
+ * be followed when its last event is not earlier than the bound, so {@link #forward(Function)}
+ * sorts by END_TIME, and the path continues from its first event that is not earlier.
+ * Backward it is the other way round. Edges without a time, like the edges of the dummy root,
+ * sort before all others.
+ * <p>
+ * The edges of a vertex are sorted the first time they are asked for and kept for later
+ * lookups. Edges with the same key keep the order in which the vertex returned them.
+ */
+public class CausalityIndex {
+    // BEGIN_TIME in milliseconds since the epoch
+    public static final ToLongFunction<Edge> BEGIN_TIME = edge -> valueOf(edge, EdgeProperty.BEGIN_TIME);
+    // END_TIME in milliseconds since the epoch, which is the BEGIN_TIME unless edges are aggregated
+    public static final ToLongFunction<Edge> END_TIME = edge -> edge.property(EdgeProperty.END_TIME.name()).isPresent()
+            ? valueOf(edge, EdgeProperty.END_TIME) : valueOf(edge, EdgeProperty.BEGIN_TIME);
+    // number of the event of the edge in the order of the log
+    public static final ToLongFunction<Edge> COUNTER = edge -> valueOf(edge, EdgeProperty.COUNTER);
+
+    private final Function<Vertex, List<Edge>> edges;
+    private final ToLongFunction<Edge> key;
+    private final ToLongFunction<Edge> pathKey;
+    // sorted edges by graph and vertex id, since the windows of a sharded graph number their vertices alike
+    private final Map<Graph, Map<Object, Sorted>> sorted = new IdentityHashMap<>();
+
+    /**
+     * @param edges the edges of a vertex to index, all of one direction
+     * @param key   value the edges are sorted by
+     */
+    public CausalityIndex(Function<Vertex, List<Edge>> edges, ToLongFunction<Edge> key) {
+        this(edges, key, key);
+    }
+
+    /**
+     * @param pathKey value a path continues from after the edge, for aggregated edges the
+     *                other end of their time span than the key
+     */
+    public CausalityIndex(Function<Vertex, List<Edge>> edges, ToLongFunction<Edge> key, ToLongFunction<Edge> pathKey) {
+        this.edges = edges;
+        this.key = key;
+        this.pathKey = pathKey;
+    }
+
+    /**
+     * @return index of out edges for forward tracking by time
+     */
+    public static CausalityIndex forward(Function<Vertex, List<Edge>> edges) {
+        return new CausalityIndex(edges, END_TIME, BEGIN_TIME);
+    }
+
+    /**
+     * @return index of in edges for backward tracking by time
+     */
+    public static CausalityIndex backward(Function<Vertex, List<Edge>> edges) {
+        return new CausalityIndex(edges, BEGIN_TIME, END_TIME);
+    }
+
+    public long key(Edge edge) {
+        return key.applyAsLong(edge);
+    }
+
+    public long pathKey(Edge edge) {
+        return pathKey.applyAsLong(edge);
+    }
+
+    /**
+     * @return the edges of the vertex whose key is within the bounds, both inclusive, sorted
+     * by their key
+     */
+    public List<Edge> between(Vertex vertex, long from, long to) {
+        if (from > to) {
+            return Collections.emptyList();
+        }
+        Sorted entry = sorted.computeIfAbsent(vertex.graph(), graph -> new HashMap<>())
+                .computeIfAbsent(vertex.id(), id -> sort(edges.apply(vertex)));
+        int start = from == Long.MIN_VALUE ? 0 : lowerBound(entry.keys, from);
+        int end = to == Long.MAX_VALUE ? entry.keys.length : lowerBound(entry.keys, to + 1);
+        return entry.edges.subList(start, Math.max(start, end));
+    }
+
+    /**
+     * Forgets the sorted edges, for a graph whose edges changed. The index refers to the graphs
+     * it has sorted edges of until then, so it is also cleared to let the windows of a sharded
+     * graph that were paged out be collected.
+     */
+    public void clear() {
+        sorted.clear();
+    }
+
+    private Sorted sort(List<Edge> list) {
+        Edge[] edges = list.toArray(new Edge[0]);
+        long[] keys = new long[edges.length];
+        Integer[] order = new Integer[edges.length];
+        for (int i = 0; i < edges.length; i++) {
+            keys[i] = key.applyAsLong(edges[i]);
+            order[i] = i;
+        }
+        // stable, so edges with the same key stay in the order of the vertex
+        Arrays.sort(order, Comparator.comparingLong(i -> keys[i]));
+        Edge[] sortedEdges = new Edge[edges.length];
+        long[] sortedKeys = new long[edges.length];
+        for (int i = 0; i < order.length; i++) {
+            sortedEdges[i] = edges[order[i]];
+            sortedKeys[i] = keys[order[i]];
+        }
+        return new Sorted(Arrays.asList(sortedEdges), sortedKeys);
+    }
+
+    /**
+     * @return the time in milliseconds or the number, Long.MIN_VALUE if the edge doesn't have it
+     */
+    private static long valueOf(Edge edge, EdgeProperty key) {
+        Property<Object> property = edge.property(key.name());
+        if (!property.isPresent()) {
+            return Long.MIN_VALUE;
+        }
+        return key == EdgeProperty.COUNTER ? Long.parseLong(property.value().toString())
+                : Utils.parseTimeMillis(property.value().toString());
+    }
+
+    /**
+     * @return index of the first key that is not smaller than the given one
+     */
+    private static int lowerBound(long[] keys, long key) {
+        int low = 0;
+        int high = keys.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (keys[middle] < key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static class Sorted {
+        private final List<Edge> edges;
+        private final long[] keys;
+
+        private Sorted(List<Edge> edges, long[] keys) {
+            this.edges = edges;
+            this.keys = keys;
+        }
+    }
+}
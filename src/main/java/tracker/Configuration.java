@@ -3,6 +3,10 @@ package tracker;
 import org.apache.commons.cli.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import parsers.AuditEventReader;
+import provgraph.GraphFilter;
+import provgraph.GraphStream;
+import utils.CommonFunctions;
 
 public class Configuration {
     Options commandLineOptions;
@@ -12,6 +16,32 @@ public class Configuration {
     public String runApts = null;
     public boolean runBenigns = false;
     public String outputDir = "NAN";
+    public long auditWindowRecords = AuditEventReader.DEFAULT_WINDOW_RECORDS;
+    public long auditWindowEventIds = 0;
+    public boolean memoryMappedInput = false;
+    public boolean regexKeyValues = false;
+    public boolean parallelRotatedLogs = false;
+    public int parseWorkers = 0;
+    public boolean eventCache = false;
+    public String avroOutput = null;
+    public boolean followLog = false;
+    public long followStableMillis = 2000;
+    public boolean columnarGraph = false;
+    public boolean aggregateEdges = false;
+    public long shardWindowMinutes = 0;
+    public String shardDirectory = "shards";
+    public int shardResidentWindows = 4;
+    public String graphOutput = null;
+    public String elasticHosts = null;
+    public String elasticIndex = "provenance";
+    public int elasticBulkSize = 1000;
+    public long elasticFlushMillis = 1000;
+    public int elasticInFlight = 2;
+    public int graphBatchEvents = 1;
+    public boolean asyncGraph = false;
+    public int summarizationThreads = Runtime.getRuntime().availableProcessors();
+    public boolean filterVertices = false;
+    public boolean filterDuplicateEdges = false;
 
 
     private static final Logger logger = LoggerFactory.getLogger(Configuration.class);
@@ -39,7 +69,51 @@ public class Configuration {
             runBenigns = commandLineArgs.hasOption("benign");
 
             outputDir = commandLineArgs.getOptionValue("o", outputDir);
-
+            // Reorder window of the audit reader, zero means the whole log is buffered
+            auditWindowRecords = CommonFunctions.parseLong(commandLineArgs.getOptionValue("wr"), auditWindowRecords);
+            auditWindowEventIds = CommonFunctions.parseLong(commandLineArgs.getOptionValue("wd"), auditWindowEventIds);
+            // Scan the audit log through memory mapped regions
+            memoryMappedInput = commandLineArgs.hasOption("mmap");
+            // Split key value pairs with the legacy regex instead of the tokenizer
+            regexKeyValues = commandLineArgs.hasOption("kvregex");
+            CommonFunctions.setRegexKeyValueParsing(regexKeyValues);
+            // Read the rotated audit logs on one thread each and merge them
+            parallelRotatedLogs = commandLineArgs.hasOption("rot");
+            // Parse the grouped audit records on a pool of threads, zero parses on the reading thread
+            parseWorkers = CommonFunctions.parseInt(commandLineArgs.getOptionValue("pw"), parseWorkers);
+            // Read the events from the binary cache next to the log, writing it first if needed
+            eventCache = commandLineArgs.hasOption("cache");
+            // Save the parsed audit events to an avro file
+            avroOutput = commandLineArgs.getOptionValue("avro", avroOutput);
+            // Keep reading the audit log as it is written, emitting events once they are stable
+            followLog = commandLineArgs.hasOption("f");
+            followStableMillis = CommonFunctions.parseLong(commandLineArgs.getOptionValue("fs"), followStableMillis);
+            // Build the provenance graph in the compact columnar store instead of TinkerGraph
+            columnarGraph = commandLineArgs.hasOption("col");
+            // Keep one edge with first and last time and a count for repeated events between two vertices
+            aggregateEdges = commandLineArgs.hasOption("agg");
+            // Split the graph into time windows that are written to disk, zero keeps one graph
+            shardWindowMinutes = CommonFunctions.parseLong(commandLineArgs.getOptionValue("sw"), shardWindowMinutes);
+            shardDirectory = commandLineArgs.getOptionValue("sd", shardDirectory);
+            shardResidentWindows = CommonFunctions.parseInt(commandLineArgs.getOptionValue("sr"), shardResidentWindows);
+            // Export the graph to the given file while it is built, it can be given instead of a log later
+            graphOutput = commandLineArgs.getOptionValue("go", graphOutput);
+            // Index the vertices and edges in Elasticsearch while the graph is built
+            elasticHosts = commandLineArgs.getOptionValue("es", elasticHosts);
+            elasticIndex = commandLineArgs.getOptionValue("esi", elasticIndex);
+            elasticBulkSize = CommonFunctions.parseInt(commandLineArgs.getOptionValue("esb"), elasticBulkSize);
+            elasticFlushMillis = CommonFunctions.parseLong(commandLineArgs.getOptionValue("esf"), elasticFlushMillis);
+            elasticInFlight = CommonFunctions.parseInt(commandLineArgs.getOptionValue("esr"), elasticInFlight);
+            // Apply the vertices and edges of this many events to the graph at once
+            graphBatchEvents = CommonFunctions.parseInt(commandLineArgs.getOptionValue("gb"), graphBatchEvents);
+            // Build the graph from the batches on a separate thread while the parser reads on
+            asyncGraph = commandLineArgs.hasOption("ga");
+            // Visit the vertices of a summarization pass with this many threads
+            summarizationThreads = CommonFunctions.parseInt(commandLineArgs.getOptionValue("st"), summarizationThreads);
+            // Leave the systemd processes and /proc files out while the graph is built
+            filterVertices = commandLineArgs.hasOption("fv");
+            // Leave out an edge when its actor already has one of the same type to the target
+            filterDuplicateEdges = commandLineArgs.hasOption("fd");
 
         } catch (ParseException e) {
             e.printStackTrace();
@@ -50,6 +124,39 @@ public class Configuration {
         logger.info("Running Apts: " + runApts);
         logger.info("Running Benigns: " + runBenigns);
         logger.info("Output Directory: " + runBenigns);
+        logger.info("Audit Window Records: " + auditWindowRecords);
+        logger.info("Audit Window Event Ids: " + auditWindowEventIds);
+        logger.info("Memory Mapped Input: " + memoryMappedInput);
+        logger.info("Regex Key Values: " + regexKeyValues);
+        logger.info("Parallel Rotated Logs: " + parallelRotatedLogs);
+        logger.info("Parse Workers: " + parseWorkers);
+        logger.info("Event Cache: " + eventCache);
+        logger.info("Avro Output: " + avroOutput);
+        logger.info("Follow Log: " + followLog);
+        logger.info("Follow Stable Millis: " + followStableMillis);
+        logger.info("Columnar Graph: " + columnarGraph);
+        logger.info("Aggregate Edges: " + aggregateEdges);
+        logger.info("Shard Window Minutes: " + shardWindowMinutes);
+        logger.info("Shard Directory: " + shardDirectory);
+        logger.info("Shard Resident Windows: " + shardResidentWindows);
+        logger.info("Graph Output: " + graphOutput);
+        logger.info("Elastic Hosts: " + elasticHosts);
+        logger.info("Elastic Index: " + elasticIndex);
+        logger.info("Elastic Bulk Size: " + elasticBulkSize);
+        logger.info("Elastic Flush Millis: " + elasticFlushMillis);
+        logger.info("Elastic In Flight: " + elasticInFlight);
+        logger.info("Graph Batch Events: " + graphBatchEvents);
+        logger.info("Async Graph: " + asyncGraph);
+        logger.info("Summarization Threads: " + summarizationThreads);
+        logger.info("Filter Vertices: " + filterVertices);
+        logger.info("Filter Duplicate Edges: " + filterDuplicateEdges);
+    }
+
+    /**
+     * @return the summarizations applied while the graph is built
+     */
+    public GraphFilter getGraphFilter() {
+        return new GraphFilter(filterVertices, filterDuplicateEdges);
     }
 
     private Options getCommandLineOptions() {
@@ -66,6 +173,58 @@ public class Configuration {
                 "Run benign");
         options.addOption("o", "output", true,
                 "Graph database directory");
+        options.addOption("wr", "window-records", true,
+                "Audit reorder window size in records (0 buffers the whole log)");
+        options.addOption("wd", "window-distance", true,
+                "Audit reorder window size in event id distance (0 disables)");
+        options.addOption("mmap", "memory-mapped", false,
+                "Scan the audit log through memory mapped regions");
+        options.addOption("kvregex", "key-value-regex", false,
+                "Split audit key value pairs with the regex instead of the tokenizer");
+        options.addOption("rot", "rotated-logs", false,
+                "Also read the rotated audit logs (audit.log.N ... audit.log.1), one thread per file");
+        options.addOption("pw", "parse-workers", true,
+                "Number of threads parsing audit records (0 parses on the reading thread)");
+        options.addOption("cache", "event-cache", false,
+                "Cache the parsed audit events next to the log and reuse them on later runs");
+        options.addOption("avro", "avro-output", true,
+                "Save the parsed audit events to the given avro file");
+        options.addOption("f", "follow", false,
+                "Follow the audit log as it is written, including rotation");
+        options.addOption("fs", "follow-stable", true,
+                "Milliseconds without new records after which a followed event is emitted");
+        options.addOption("col", "columnar-graph", false,
+                "Store the provenance graph in int columns instead of TinkerGraph to save memory");
+        options.addOption("agg", "aggregate-edges", false,
+                "Merge repeated events between the same vertices into one edge with a count");
+        options.addOption("sw", "shard-window", true,
+                "Split the graph into windows of the given minutes kept on disk (0 disables)");
+        options.addOption("sd", "shard-directory", true,
+                "Directory of the graph window segments");
+        options.addOption("sr", "shard-resident", true,
+                "Number of graph windows kept in memory");
+        options.addOption("go", "graph-output", true,
+                "Export the graph to the given " + GraphStream.FILE_EXTENSION + " file while it is built");
+        options.addOption("es", "elastic-hosts", true,
+                "Index the graph in the Elasticsearch cluster with the given host[:port] list");
+        options.addOption("esi", "elastic-index", true,
+                "Prefix of the vertex and edge indices");
+        options.addOption("esb", "elastic-bulk", true,
+                "Number of documents per bulk request");
+        options.addOption("esf", "elastic-flush", true,
+                "Milliseconds after which a partial bulk request is sent");
+        options.addOption("esr", "elastic-requests", true,
+                "Number of bulk requests in flight before the parser waits");
+        options.addOption("gb", "graph-batch", true,
+                "Number of events whose vertices and edges are added to the graph at once");
+        options.addOption("ga", "async-graph", false,
+                "Add the batches to the graph on a separate thread");
+        options.addOption("st", "summarization-threads", true,
+                "Number of threads that evaluate the summarization rules");
+        options.addOption("fv", "filter-vertices", false,
+                "Drop systemd processes and /proc files while building the graph");
+        options.addOption("fd", "filter-duplicate-edges", false,
+                "Drop edges of the same type between the same vertices while building the graph");
         return options;
     }
 
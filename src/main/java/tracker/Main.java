@@ -15,9 +15,25 @@ public class Main {
         ParseLinuxAudit pg = new ParseLinuxAudit(config);
         String test_name = Utils.getFileName(file_path);
         test_name = Utils.removeExtensionFirst(test_name);
-        Graph full_graph = pg.parseLogFile(file_path);
+        Graph full_graph;
+        if (config.followLog) {
+            // The graph is updated as events arrive until Ctrl-C, which lets this thread finish
+            // the graph, summarize and write it before the JVM exits
+            Thread tracking = Thread.currentThread();
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                pg.stopFollowing();
+                try {
+                    tracking.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+            full_graph = pg.followLogFile(file_path);
+        } else {
+            full_graph = pg.parseLogFile(file_path);
+        }
         System.out.println("Parsing Completed === ====== ==== ");
-        Summarization sum = new Summarization();
+        Summarization sum = new Summarization(config.summarizationThreads, config.getGraphFilter());
         full_graph = sum.mustSummarizations(full_graph, null);
         DotGraph dg = new DotGraph();
         dg.DotGraphFromTinkerGraph(full_graph, true, "dots/temp.dot", "dots/temp.pdf");
@@ -15,10 +15,10 @@ import parsers.jgraph.ULogNode;
 import parsers.jparser.JValidator;
 import parsers.jparser.RegexMatcher;
 import record.AppLogRecord;
+import record.AuditEvent;
 import record.AuditRecord;
 import record.PTRecord;
 import record.UnitManager;
-import utils.CommonFunctions;
 import utils.LibcHandlers;
 import utils.Statistics;
 import utils.Utils;
@@ -126,7 +126,8 @@ public class PTAnalyzer {
         // parse the audit log
         Configuration config = new Configuration();
         config.parseCommandLineArgs(args);
-        auditParser = new ParseLinuxAudit(config);
+        // the analysis reads the audit events in their order
+        auditParser = new ParseLinuxAudit(config, true);
         try {
             auditParser.parseLogFile(auditFile);
         } catch (Exception e) {
@@ -249,7 +250,7 @@ public class PTAnalyzer {
             Map<String, String> auditEvent = pAuditIterator.next();
             String eventid = auditEvent.get("eventid");
 
-            int auditSysnum = CommonFunctions.parseInt(auditEvent.get("syscall"), -1);
+            int auditSysnum = AuditEvent.syscallOf(auditEvent);
             // ignore if not a system call
             if (auditSysnum == -1)
                 continue;
@@ -501,7 +502,7 @@ public class PTAnalyzer {
         ListIterator<Map<String, String>> copyIt = pidList.listIterator(auditIt.nextIndex());
         while (copyIt.hasNext()) {
             Map<String, String> event = copyIt.next();
-            int sysNum = CommonFunctions.parseInt(event.get("syscall"), -1);
+            int sysNum = AuditEvent.syscallOf(event);
             if (sysNum == 1 && isAuditWriteApplog(event))
                 return event;
         }
@@ -526,7 +527,7 @@ public class PTAnalyzer {
             Map<String, String> lastWrite = null;
             while (iterator.hasNext()) {
                 Map<String, String> event = iterator.next();
-                int sysNum = CommonFunctions.parseInt(event.get("syscall"), -1);
+                int sysNum = AuditEvent.syscallOf(event);
                 // check if this is a write
                 if (sysNum == 1) {
                     // write syscall, check its type
@@ -564,7 +565,7 @@ public class PTAnalyzer {
             // grab the event
             Map<String, String> event = auditIterator.next();
 
-            int pid = CommonFunctions.parseInt(event.get("pid"), -1);
+            int pid = AuditEvent.pidOf(event);
             if (pid == -1) {
                 l.error("Event with unknown pid!");
                 continue;
@@ -791,7 +792,7 @@ public class PTAnalyzer {
         while (eventIterator.hasNext()) {
             Map<String, String> event = eventIterator.next();
             String time = event.get("time");
-            int sysNum = CommonFunctions.parseInt(event.get("syscall"), -1);
+            int sysNum = AuditEvent.syscallOf(event);
 
             l.debug(MessageFormat.format("[{0}]: At {1}, syscall {2}..", pid, time,
                     SYSCALL.getSyscall(sysNum, arch)));
@@ -0,0 +1,146 @@
+package tracker;
+
+import org.apache.tinkerpop.gremlin.structure.Edge;
+import org.apache.tinkerpop.gremlin.structure.Vertex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The paths a {@link ProvenanceTraversal} found, stored as a prefix tree: every node is a
+ * vertex reached through an edge from its parent node, and a path is the way from the root,
+ * the start vertex, to a leaf. Paths that share a beginning share its nodes, so the tree
+ * needs one node per step instead of a copy of every path.
+ */
+public class ProvenancePaths {
+    public static final int ROOT = 0;
+
+    private int[] parents = new int[64];
+    private int[] depths = new int[64];
+    private Edge[] edges = new Edge[64];
+    private Vertex[] vertices = new Vertex[64];
+    private int size = 0;
+
+    private int[] leaves = new int[16];
+    private int leafCount = 0;
+
+    ProvenancePaths(Vertex start) {
+        add(-1, null, start);
+    }
+
+    /**
+     * @return number of nodes, including the root
+     */
+    public int size() {
+        return size;
+    }
+
+    public int getLeafCount() {
+        return leafCount;
+    }
+
+    /**
+     * @return node at the end of the path with the given index, paths are in the order they
+     * were found
+     */
+    public int getLeaf(int index) {
+        return leaves[index];
+    }
+
+    /**
+     * @return parent of the node, -1 for the root
+     */
+    public int getParent(int node) {
+        return parents[node];
+    }
+
+    /**
+     * @return number of edges between the root and the node
+     */
+    public int getDepth(int node) {
+        return depths[node];
+    }
+
+    public Vertex getVertex(int node) {
+        return vertices[node];
+    }
+
+    /**
+     * @return the edge the node was reached through, null for the root
+     */
+    public Edge getEdge(int node) {
+        return edges[node];
+    }
+
+    /**
+     * @return edges from the root to the node
+     */
+    public ArrayList<Edge> getPathEdges(int node) {
+        Edge[] path = new Edge[depths[node]];
+        for (int n = node; n != ROOT; n = parents[n]) {
+            path[depths[n] - 1] = edges[n];
+        }
+        return new ArrayList<>(Arrays.asList(path));
+    }
+
+    /**
+     * @return vertices from the root to the node
+     */
+    public ArrayList<Vertex> getPathVertices(int node) {
+        Vertex[] path = new Vertex[depths[node] + 1];
+        for (int n = node; n != -1; n = parents[n]) {
+            path[depths[n]] = vertices[n];
+        }
+        return new ArrayList<>(Arrays.asList(path));
+    }
+
+    /**
+     * @return every edge of the tree once, in the order it was first reached
+     */
+    public List<Edge> getEdges() {
+        if (size <= 1) {
+            return Collections.emptyList();
+        }
+        Map<Object, Edge> distinct = new LinkedHashMap<>();
+        for (int node = 1; node < size; node++) {
+            distinct.putIfAbsent(edges[node].id(), edges[node]);
+        }
+        return new ArrayList<>(distinct.values());
+    }
+
+    int add(int parent, Edge edge, Vertex vertex) {
+        if (size == parents.length) {
+            int capacity = size * 2;
+            parents = Arrays.copyOf(parents, capacity);
+            depths = Arrays.copyOf(depths, capacity);
+            edges = Arrays.copyOf(edges, capacity);
+            vertices = Arrays.copyOf(vertices, capacity);
+        }
+        parents[size] = parent;
+        depths[size] = parent < 0 ? 0 : depths[parent] + 1;
+        edges[size] = edge;
+        vertices[size] = vertex;
+        return size++;
+    }
+
+    void addLeaf(int node) {
+        if (leafCount == leaves.length) {
+            leaves = Arrays.copyOf(leaves, leafCount * 2);
+        }
+        leaves[leafCount++] = node;
+    }
+
+    /**
+     * Drops the node and all nodes added after it, which are its descendants while the
+     * traversal is below it
+     */
+    void truncate(int node) {
+        Arrays.fill(edges, node, size, null);
+        Arrays.fill(vertices, node, size, null);
+        size = node;
+    }
+}
@@ -0,0 +1,268 @@
+package tracker;
+
+import com.google.common.collect.Lists;
+import org.apache.tinkerpop.gremlin.structure.Direction;
+import org.apache.tinkerpop.gremlin.structure.Edge;
+import org.apache.tinkerpop.gremlin.structure.Property;
+import org.apache.tinkerpop.gremlin.structure.Vertex;
+import provgraph.NodeProperty;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Depth first search for the provenance paths of a vertex, following the in edges backward
+ * to what caused it or the out edges forward to what it affected.
+ * <p>
+ * The search keeps its own stack instead of recursing, so its depth is not limited by the
+ * thread stack, and a path never visits a vertex twice. A path ends when the depth bound is
+ * reached or the vertex has no edge left to follow; a vertex whose edges all lead back into
+ * the path ends none. The paths are collected in a {@link ProvenancePaths} prefix tree and
+ * passed to the {@link TraversalListener} as they are found.
+ */
+public class ProvenanceTraversal {
+    private final Direction direction;
+    private final Function<Vertex, List<Edge>> edges;
+    private CausalityIndex index;
+
+    private int maxDepth = Integer.MAX_VALUE;
+    private int maxPaths = Integer.MAX_VALUE;
+    private boolean timeRespecting = false;
+    private long notBefore = Long.MIN_VALUE;
+    private long notAfter = Long.MAX_VALUE;
+    private boolean retainPaths = true;
+    private TraversalListener listener = new TraversalListener() {
+    };
+
+    // stack of the vertices being expanded, one entry per tree node on the current path
+    private int[] stackNodes;
+    private List<Edge>[] stackEdges;
+    private int[] stackNext;
+    private int[] stackLeaves;
+    private long[] stackBounds;
+    private int top;
+    // ID of the vertices on the current path, which is the same for the copies of a vertex in the windows of a sharded graph
+    private final Set<Object> onPath = new HashSet<>();
+    private int found;
+
+    /**
+     * @param direction IN to follow the edges backward from their in vertex to their out
+     *                  vertex, OUT to follow them forward
+     */
+    public ProvenanceTraversal(Direction direction) {
+        this(direction, vertex -> Lists.newArrayList(vertex.edges(direction)));
+    }
+
+    /**
+     * @param edges the edges of the given direction of a vertex, in the order to follow them
+     */
+    public ProvenanceTraversal(Direction direction, Function<Vertex, List<Edge>> edges) {
+        if (direction == Direction.BOTH) {
+            throw new IllegalArgumentException("Provenance is traversed in one direction");
+        }
+        this.direction = direction;
+        this.edges = edges;
+    }
+
+    /**
+     * @param maxDepth number of edges after which a path ends
+     */
+    public ProvenanceTraversal setMaxDepth(int maxDepth) {
+        this.maxDepth = Math.max(0, maxDepth);
+        return this;
+    }
+
+    /**
+     * @param maxPaths number of paths after which the search stops
+     */
+    public ProvenanceTraversal setMaxPaths(int maxPaths) {
+        this.maxPaths = maxPaths;
+        return this;
+    }
+
+    /**
+     * @param timeRespecting only follow an edge that is not earlier (forward) or not later
+     *                       (backward) than the edge before it on the path
+     */
+    public ProvenanceTraversal setTimeRespecting(boolean timeRespecting) {
+        this.timeRespecting = timeRespecting;
+        return this;
+    }
+
+    /**
+     * Only follows edges whose time is within the window
+     *
+     * @param notBefore earliest time, inclusive
+     * @param notAfter  latest time, inclusive
+     * @see #setIndex(CausalityIndex)
+     */
+    public ProvenanceTraversal setTimeWindow(long notBefore, long notAfter) {
+        this.notBefore = notBefore;
+        this.notAfter = notAfter;
+        return this;
+    }
+
+    /**
+     * @param retainPaths false to drop every node once the search has left it, the paths are
+     *                    then only seen by the listener and the memory stays bounded by the depth
+     */
+    public ProvenanceTraversal setRetainPaths(boolean retainPaths) {
+        this.retainPaths = retainPaths;
+        return this;
+    }
+
+    /**
+     * @param index the edges sorted by their time, in milliseconds since the epoch unless the
+     *              index uses another key. Without an index, {@link CausalityIndex#forward} or
+     *              {@link CausalityIndex#backward} is built from the edges of the traversal when
+     *              times are compared.
+     */
+    public ProvenanceTraversal setIndex(CausalityIndex index) {
+        this.index = index;
+        return this;
+    }
+
+    public ProvenanceTraversal setListener(TraversalListener listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    /**
+     * @return the paths from the start vertex, only the nodes on a path are kept
+     */
+    @SuppressWarnings("unchecked")
+    public ProvenancePaths run(Vertex start) {
+        ProvenancePaths paths = new ProvenancePaths(start);
+        int capacity = Math.min(maxDepth, 64) + 1;
+        stackNodes = new int[capacity];
+        stackEdges = new List[capacity];
+        stackNext = new int[capacity];
+        stackLeaves = new int[capacity];
+        stackBounds = new long[capacity];
+        top = -1;
+        found = 0;
+        onPath.clear();
+        if (index == null && isTimed()) {
+            index = direction == Direction.OUT ? CausalityIndex.forward(edges) : CausalityIndex.backward(edges);
+        }
+
+        if (!listener.visit(paths, ProvenancePaths.ROOT)) {
+            return paths;
+        }
+        enter(paths, ProvenancePaths.ROOT, direction == Direction.OUT ? notBefore : notAfter);
+        while (top >= 0 && found < maxPaths) {
+            List<Edge> list = stackEdges[top];
+            if (stackNext[top] == list.size()) {
+                leave(paths);
+                continue;
+            }
+            Edge edge = list.get(stackNext[top]++);
+            Vertex next = direction == Direction.OUT ? edge.inVertex() : edge.outVertex();
+            if (isOnPath(next)) {
+                continue;
+            }
+            int node = paths.add(stackNodes[top], edge, next);
+            if (!listener.visit(paths, node)) {
+                paths.truncate(node);
+                continue;
+            }
+            enter(paths, node, timeRespecting ? nextBound(stackBounds[top], edge) : 0);
+        }
+        while (top >= 0) {
+            leave(paths);
+        }
+        return paths;
+    }
+
+    /**
+     * Ends a path at the node or pushes it to follow the edges of its vertex
+     *
+     * @param bound time of the edge the node was reached through
+     */
+    private void enter(ProvenancePaths paths, int node, long bound) {
+        List<Edge> list = paths.getDepth(node) < maxDepth ? edgesOf(paths.getVertex(node), bound) : null;
+        if (list == null || list.isEmpty()) {
+            found++;
+            listener.pathEnd(paths, node);
+            if (retainPaths) {
+                paths.addLeaf(node);
+            } else if (node != ProvenancePaths.ROOT) {
+                paths.truncate(node);
+            }
+            return;
+        }
+        if (++top == stackNodes.length) {
+            int capacity = top * 2;
+            stackNodes = Arrays.copyOf(stackNodes, capacity);
+            stackEdges = Arrays.copyOf(stackEdges, capacity);
+            stackNext = Arrays.copyOf(stackNext, capacity);
+            stackLeaves = Arrays.copyOf(stackLeaves, capacity);
+            stackBounds = Arrays.copyOf(stackBounds, capacity);
+        }
+        stackNodes[top] = node;
+        stackEdges[top] = list;
+        stackNext[top] = 0;
+        stackLeaves[top] = paths.getLeafCount();
+        stackBounds[top] = bound;
+        onPath.add(pathKey(paths.getVertex(node)));
+    }
+
+    /**
+     * Pops the top node, with its subtree if no path ends in it
+     */
+    private void leave(ProvenancePaths paths) {
+        int node = stackNodes[top];
+        onPath.remove(pathKey(paths.getVertex(node)));
+        if (node != ProvenancePaths.ROOT && (!retainPaths || paths.getLeafCount() == stackLeaves[top])) {
+            paths.truncate(node);
+        }
+        stackEdges[top] = null;
+        top--;
+    }
+
+    /**
+     * @return the edges of the vertex to follow from a node reached through an edge of the
+     * given time
+     */
+    private List<Edge> edgesOf(Vertex vertex, long bound) {
+        if (!isTimed()) {
+            return edges.apply(vertex);
+        }
+        long from = notBefore;
+        long to = notAfter;
+        if (timeRespecting && direction == Direction.OUT) {
+            from = Math.max(from, bound);
+        } else if (timeRespecting) {
+            to = Math.min(to, bound);
+        }
+        return index.between(vertex, from, to);
+    }
+
+    /**
+     * @return time a path continues from after following the edge within the bound, the
+     * earliest (forward) or latest (backward) event of an aggregated edge that is
+     */
+    private long nextBound(long bound, Edge edge) {
+        long time = index.pathKey(edge);
+        return direction == Direction.OUT ? Math.max(bound, time) : Math.min(bound, time);
+    }
+
+    private boolean isOnPath(Vertex vertex) {
+        return onPath.contains(pathKey(vertex));
+    }
+
+    /**
+     * @return the ID property of the vertex, or its graph and vertex id if it has none
+     */
+    private static Object pathKey(Vertex vertex) {
+        Property<Object> id = vertex.property(NodeProperty.ID.name());
+        return id.isPresent() ? id.value() : Arrays.asList(vertex.graph(), vertex.id());
+    }
+
+    private boolean isTimed() {
+        return timeRespecting || notBefore != Long.MIN_VALUE || notAfter != Long.MAX_VALUE;
+    }
+}
@@ -10,14 +10,23 @@ import org.javatuples.Pair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import provgraph.EdgeProperty;
+import provgraph.GraphFilter;
 import provgraph.NodeProperty;
+import provgraph.ProcessLineage;
 import record.ObjectType;
 import utils.Utils;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
 
 public class Summarization {
     public List<Edge> edges_to_remove = new ArrayList<Edge>();
@@ -26,20 +35,55 @@ public class Summarization {
 
     static Logger logger = LoggerFactory.getLogger(Summarization.class);
 
+    // processes started by systemd are not part of any attack
+    public static final SummarizationRule SYSTEMD_PROCESSES = SummarizationRule.removeVertices("systemd processes",
+            vertex -> getTypeVertex(vertex).equals(ObjectType.PROCESS.name()) && GraphFilter.isSystemProcess(Utils.getPath(vertex)));
+    public static final SummarizationRule PROC_FILES = SummarizationRule.removeVertices("/proc files",
+            vertex -> getTypeVertex(vertex).equals(ObjectType.FILE.name()) && GraphFilter.isProcFile(Utils.getPath(vertex)));
+
+    private final int threads;
+    // what the graph was filtered of while it was built, those rules are not run again
+    private final GraphFilter filter;
+
+    public Summarization() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param threads number of threads a summarization pass visits the vertices with
+     */
+    public Summarization(int threads) {
+        this(threads, GraphFilter.NONE);
+    }
+
+    /**
+     * @param filter filter the graph was built with
+     */
+    public Summarization(int threads, GraphFilter filter) {
+        this.threads = threads;
+        this.filter = filter;
+    }
+
     public Graph maySummarizations(Graph full_graph) {
         mergeSameDstNetworks(full_graph);
 //        mergeModuleVertices(full_graph);
 //        mergeFileVertices(full_graph);
 //        mergeRegistryKeyVertices(full_graph);
-        deleteEdgesBtwSameVertices(full_graph);
+        if (!filter.dropsDuplicateEdges())
+            deleteEdgesBtwSameVertices(full_graph);
 //        removeTemporaryFiles(full_graph);
         return full_graph;
     }
 
     public Graph mustSummarizations(Graph full_graph, String json_file) {
-        deleteSystemEdges(full_graph);
-        deleteProc(full_graph);
-        addDummyRoot(full_graph);
+        List<SummarizationRule> rules = new ArrayList<>();
+        if (!filter.dropsVertices()) {
+            rules.add(SYSTEMD_PROCESSES);
+            rules.add(PROC_FILES);
+        }
+        // the dummy root needs the HOP_COUNT of the whole graph
+        rules.add(new DummyRootRule());
+        new SummarizationPass(rules, threads).run(full_graph);
         return full_graph;
     }
 
@@ -114,53 +158,56 @@ public class Summarization {
 //    }
 
     public void addDummyRoot(Graph inputGraph) {
-        List<Vertex> to_remove = new ArrayList<>();
-        List<Edge> to_remove_edges = new ArrayList<>();
-        for (Iterator<Vertex> vertices = inputGraph.vertices(); vertices.hasNext(); ) {
-            Vertex vertex = vertices.next();
-            if (!vertex.property(NodeProperty.OBJECT_TYPE.name()).value().toString().equals(ObjectType.PROCESS.name()))
-                continue;
-            if (!vertex.property(NodeProperty.HOP_COUNT.name()).isPresent()) {
+        new SummarizationPass(threads, new DummyRootRule()).run(inputGraph);
+    }
+
+    /**
+     * Removes the processes without a HOP_COUNT that have no process edge, and connects the
+     * processes of HOP_COUNT 0 to a new Root vertex
+     */
+    private class DummyRootRule implements SummarizationRule {
+        @Override
+        public String getName() {
+            return "dummy root";
+        }
+
+        @Override
+        public void visit(Vertex vertex, SummarizationPass.Context context) {
+            if (!getTypeVertex(vertex).equals(ObjectType.PROCESS.name()))
+                return;
+            int hopcount = ProcessLineage.hopCountOf(vertex);
+            if (hopcount == ProcessLineage.NONE) {
                 // REMOVE vertices that have no incoming or outgoing process edge
-                boolean flag = true;
-                for (Edge e : getListFromIterator(vertex.edges(Direction.BOTH))) {
-                    String type = e.property(EdgeProperty.EVENTTYPE.name()).value().toString();
-                    if (type.contains("PROCESS"))
-                        flag = false;
-                }
-                if (flag) {
-                    to_remove.add(vertex);
-                    for (Edge e : getListFromIterator(vertex.edges(Direction.BOTH))) {
-                        to_remove_edges.add(e);
-                    }
+                for (Iterator<Edge> edges = vertex.edges(Direction.BOTH); edges.hasNext(); ) {
+                    Edge e = edges.next();
+                    if (getTypeEdge(e).contains("PROCESS") && !context.isRemovedBefore(e))
+                        return;
                 }
-                continue;
+                context.removeVertex();
+                return;
             }
-            Integer hopcount = Integer.parseInt(vertex.property(NodeProperty.HOP_COUNT.name()).value().toString());
             if (hopcount == 0) {
-                edges_to_add.add(vertex);
+                context.mark();
             }
         }
-        Vertex root = inputGraph.addVertex("Root");
-        root.property(NodeProperty.OBJECT_TYPE.name(), ObjectType.DUMMY);
-        root.property(NodeProperty.ID.name(), "0");
-        root.property(NodeProperty.HOP_COUNT.name(), -1);
-        int counter = 0;
-        for (Vertex v : edges_to_add) {
-            Edge edge = root.addEdge("root", v);
-            edge.property(EdgeProperty.EVENTTYPE.name(), GraphEventType.DUMMY);
-            edge.property(EdgeProperty.RULE_NAME.name(), "Nan");
-            edge.property(EdgeProperty.SYSCALL.name(), "Nan");
-            edge.property(EdgeProperty.ID.name(), "Nan" + counter);
-            counter++;
-        }
-        for (Vertex v : to_remove) {
-            Utils.deleteVertex(inputGraph, v);
-        }
-        for (Edge e : to_remove_edges) {
-            Utils.deleteEdge(inputGraph, e);
+
+        @Override
+        public void finish(Graph inputGraph, List<Vertex> marked) {
+            edges_to_add.addAll(marked);
+            Vertex root = inputGraph.addVertex("Root");
+            root.property(NodeProperty.OBJECT_TYPE.name(), ObjectType.DUMMY);
+            root.property(NodeProperty.ID.name(), "0");
+            root.property(NodeProperty.HOP_COUNT.name(), -1);
+            int counter = 0;
+            for (Vertex v : edges_to_add) {
+                Edge edge = root.addEdge("root", v);
+                edge.property(EdgeProperty.EVENTTYPE.name(), GraphEventType.DUMMY);
+                edge.property(EdgeProperty.RULE_NAME.name(), "Nan");
+                edge.property(EdgeProperty.SYSCALL.name(), "Nan");
+                edge.property(EdgeProperty.ID.name(), "Nan" + counter);
+                counter++;
+            }
         }
-        return;
     }
 
     public void deleteExceptPython(Graph inputGraph, HashSet<String> list_to_preserve) {
@@ -222,8 +269,8 @@ public class Summarization {
                 Vertex current = e.inVertex();
                 boolean found = false;
                 for (Pair<Vertex, String> seen_pair : seenList) {
-                    String other_id = current.property(NodeProperty.ID.name()).value().toString();
-                    String seen_vertex_id = seen_pair.getValue0().property(NodeProperty.ID.name()).value().toString();
+                    Object other_id = current.property(NodeProperty.ID.name()).value();
+                    Object seen_vertex_id = seen_pair.getValue0().property(NodeProperty.ID.name()).value();
                     if (other_id.equals(seen_vertex_id) && seen_pair.getValue1().equals(current_edgetype)) {
                         edges_to_remove.add(e);
                         found = true;
@@ -277,49 +324,25 @@ public class Summarization {
     }
 
     public void mergeFileVertices(Graph inputGraph) {
-        for (Iterator<Vertex> vertices = inputGraph.vertices(); vertices.hasNext(); ) {
-            Vertex vertex = vertices.next();
-            if (!getType(vertex).equals(ObjectType.PROCESS.name())) {
-                continue;
-            }
-            ArrayList<ArrayList<Vertex>> groups = groupFileVertices(vertex);
-            for (ArrayList<Vertex> group : groups) {
-                if (group.size() <= 1) {
-                    continue;
-                }
-                Vertex first = group.get(0);
-                String intial_path = first.property(NodeProperty.PATH.name()).value().toString();
-                inputGraph.vertices(first).next().property(NodeProperty.PATH.name(), intial_path + "***");
-                // Except first vertex in the group remove everything
-                for (Vertex v : group) {
-                    if (getVertexId(v).equals(getVertexId(first))) {
-                        continue;
-                    }
-                    removeEdge(inputGraph, v);
-                }
-            }
-        }
-        int total_removed = 0;
-        for (Vertex v : vertices_to_remove) {
-            Utils.deleteVertex(inputGraph, v);
-            total_removed += 1;
-        }
-        for (Edge e : edges_to_remove) {
-            Utils.deleteEdge(inputGraph, e);
-        }
-        logger.info("Total Vertices File removed: " + total_removed);
-        vertices_to_remove.clear();
-        edges_to_remove.clear();
+        mergeSameVertices(inputGraph, this::groupFileVertices, "File");
     }
 
     public void mergeModuleVertices(Graph inputGraph) {
+        mergeSameVertices(inputGraph, this::groupModuleVertices, "Module");
+    }
+
+    /**
+     * Keeps the first vertex of each group of a process and removes the others. The path of a
+     * first vertex gets "***" appended, which the groups of the later processes already see,
+     * so the processes are visited one after another.
+     */
+    private void mergeSameVertices(Graph inputGraph, Function<Vertex, ArrayList<ArrayList<Vertex>>> grouping, String kind) {
         for (Iterator<Vertex> vertices = inputGraph.vertices(); vertices.hasNext(); ) {
             Vertex vertex = vertices.next();
             if (!getType(vertex).equals(ObjectType.PROCESS.name())) {
                 continue;
             }
-            ArrayList<ArrayList<Vertex>> groups = groupModuleVertices(vertex);
-            for (ArrayList<Vertex> group : groups) {
+            for (ArrayList<Vertex> group : grouping.apply(vertex)) {
                 if (group.size() <= 1) {
                     continue;
                 }
@@ -335,104 +358,129 @@ public class Summarization {
                 }
             }
         }
-        int total_removed = 0;
+        int total_removed = removeCollected(inputGraph);
+        logger.info("Total Vertices " + kind + " removed: " + total_removed);
+    }
+
+    /**
+     * Removes the collected edges and then the collected vertices, each in one bulk operation
+     *
+     * @return number of distinct vertices removed
+     */
+    private int removeCollected(Graph inputGraph) {
+        Set<Object> edgeIds = new LinkedHashSet<>();
+        for (Edge e : edges_to_remove) {
+            edgeIds.add(e.id());
+        }
+        Set<Object> vertexIds = new LinkedHashSet<>();
         for (Vertex v : vertices_to_remove) {
-            Utils.deleteVertex(inputGraph, v);
-            total_removed += 1;
+            vertexIds.add(v.id());
         }
-        for (Edge e : edges_to_remove) {
-            Utils.deleteEdge(inputGraph, e);
+        if (!edgeIds.isEmpty()) {
+            inputGraph.edges(edgeIds.toArray()).forEachRemaining(Edge::remove);
+        }
+        if (!vertexIds.isEmpty()) {
+            inputGraph.vertices(vertexIds.toArray()).forEachRemaining(Vertex::remove);
         }
-        logger.info("Total Vertices Module removed: " + total_removed);
         vertices_to_remove.clear();
         edges_to_remove.clear();
+        return vertexIds.size();
     }
 
     public ArrayList<ArrayList<Vertex>> groupModuleVertices(Vertex vertex) {
-        List<Pair<Vertex, String>> pairList = new ArrayList<Pair<Vertex, String>>();
         // TODO CHANGE HERE to only include Modules which do not have children
-        for (Edge e : getListFromIterator(vertex.edges(Direction.IN))) {
-            Vertex other = e.outVertex();
-            if (getVertexId(other).equals(getVertexId(vertex))) {
-                continue;
-            }
-            if (getType(other).equals(ObjectType.MODULE.name())) {
-                pairList.add(new Pair<>(other, e.property(EdgeProperty.EVENTTYPE.name()).value().toString()));
-            }
-        }
-        for (Edge e : getListFromIterator(vertex.edges(Direction.OUT))) {
-            Vertex other = e.inVertex();
-            if (getVertexId(other).equals(getVertexId(vertex))) {
-                continue;
-            }
-            if (getType(other).equals(ObjectType.MODULE.name())) {
-                pairList.add(new Pair<>(other, e.property(EdgeProperty.EVENTTYPE.name()).value().toString()));
-            }
-        }
-        ArrayList<ArrayList<Vertex>> sameFile = new ArrayList<>();
-        for (Pair<Vertex, String> pair : pairList) {
-            boolean added = false;
-            for (List<Vertex> l : sameFile) {
-                Vertex head = l.get(0);
-                if (directoryAndExtensionSameModule(pair, head)) {
-                    added = true;
-                    l.add(pair.getValue0());
-                    break;
-                }
-            }
-            if (!added) {
-                ArrayList<Vertex> nl = new ArrayList<>();
-                nl.add(pair.getValue0());
-                sameFile.add(nl);
-            }
-        }
-        return sameFile;
+        return groupByKey(neighbours(vertex, ObjectType.MODULE),
+                pair -> fileKey(getPath(pair.getValue0())),
+                head -> Collections.singletonList(fileKey(getPath(head))));
     }
 
-
     public ArrayList<ArrayList<Vertex>> groupFileVertices(Vertex vertex) {
-        List<Pair<Vertex, String>> pairList = new ArrayList<Pair<Vertex, String>>();
         // TODO CHANGE HERE to only include files which do not have children
-        for (Edge e : getListFromIterator(vertex.edges(Direction.IN))) {
-            Vertex other = e.outVertex();
-            if (getVertexId(other).equals(getVertexId(vertex))) {
-                continue;
-            }
-            if (getType(other).equals(ObjectType.FILE.name())) {
-                pairList.add(new Pair<>(other, e.property(EdgeProperty.EVENTTYPE.name()).value().toString()));
-            }
-        }
+        return groupByKey(neighbours(vertex, ObjectType.FILE), pair -> {
+            String directory = Utils.getDirectoryName(getPath(pair.getValue0()));
+            // only temporary files in the user profile are merged, see directoryAndExtensionSame
+            if (directory.toLowerCase().contains("/appdata/local/") || directory.toLowerCase().contains("/appdata/roaming/")) {
+                return fileKey(getPath(pair.getValue0()));
+            }
+            return null;
+        }, head -> Collections.singletonList(fileKey(getPath(head))));
+    }
 
-        for (Edge e : getListFromIterator(vertex.edges(Direction.OUT))) {
-            Vertex other = e.inVertex();
-            if (getVertexId(other).equals(getVertexId(vertex))) {
-                continue;
-            }
-            if (getType(other).equals(ObjectType.FILE.name())) {
-                pairList.add(new Pair<>(other, e.property(EdgeProperty.EVENTTYPE.name()).value().toString()));
+    /**
+     * @return the neighbours of the given type with the event type of the edge, first those of
+     * the incoming and then those of the outgoing edges
+     */
+    private List<Pair<Vertex, String>> neighbours(Vertex vertex, ObjectType type) {
+        List<Pair<Vertex, String>> pairList = new ArrayList<Pair<Vertex, String>>();
+        String vertexId = getVertexId(vertex);
+        for (Direction direction : new Direction[]{Direction.IN, Direction.OUT}) {
+            for (Iterator<Edge> edges = vertex.edges(direction); edges.hasNext(); ) {
+                Edge e = edges.next();
+                Vertex other = direction == Direction.IN ? e.outVertex() : e.inVertex();
+                if (getVertexId(other).equals(vertexId)) {
+                    continue;
+                }
+                if (getType(other).equals(type.name())) {
+                    pairList.add(new Pair<>(other, getTypeEdge(e)));
+                }
             }
         }
+        return pairList;
+    }
 
-        ArrayList<ArrayList<Vertex>> sameFile = new ArrayList<>();
+    /**
+     * Groups the neighbours like comparing each with the head of every group did: a neighbour
+     * joins the first group whose head has the key it looks for, or starts a group of its own.
+     * Every group is found by the keys of its head through one map, so grouping is linear in
+     * the number of neighbours.
+     *
+     * @param pairKey  key a neighbour looks for, null if it joins no group
+     * @param headKeys keys a group is found by, computed once for its head
+     */
+    private static ArrayList<ArrayList<Vertex>> groupByKey(List<Pair<Vertex, String>> pairList,
+                                                           Function<Pair<Vertex, String>, String> pairKey,
+                                                           Function<Vertex, List<String>> headKeys) {
+        ArrayList<ArrayList<Vertex>> groups = new ArrayList<>();
+        Map<String, ArrayList<Vertex>> byKey = new HashMap<>();
         for (Pair<Vertex, String> pair : pairList) {
-            boolean added = false;
-            for (List<Vertex> l : sameFile) {
-                Vertex head = l.get(0);
-                if (directoryAndExtensionSame(pair, head)) {
-                    added = true;
-                    l.add(pair.getValue0());
-                    break;
-                }
+            String key = pairKey.apply(pair);
+            ArrayList<Vertex> group = key == null ? null : byKey.get(key);
+            if (group != null) {
+                group.add(pair.getValue0());
+                continue;
             }
-            if (!added) {
-                ArrayList<Vertex> nl = new ArrayList<>();
-                nl.add(pair.getValue0());
-                sameFile.add(nl);
+            ArrayList<Vertex> nl = new ArrayList<>();
+            nl.add(pair.getValue0());
+            groups.add(nl);
+            // a later group with the same key is never found, the first one matches before
+            for (String headKey : headKeys.apply(pair.getValue0())) {
+                byKey.putIfAbsent(headKey, nl);
             }
         }
-        return sameFile;
+        return groups;
     }
 
+    /**
+     * @return key of the directory and extension of a path, equal for paths that
+     * directoryAndExtensionSameModule finds the same
+     */
+    private static String fileKey(String path) {
+        String directory = Utils.getDirectoryName(path);
+        String extension = Utils.getExtension(Utils.getFileName(path));
+        // the extension has no slash, which separates it from the directory
+        return foldCase(directory) + "/" + foldCase(extension);
+    }
+
+    /**
+     * @return the string with each char folded like String.equalsIgnoreCase compares it
+     */
+    private static String foldCase(String string) {
+        char[] chars = string.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(Character.toUpperCase(chars[i]));
+        }
+        return new String(chars);
+    }
 
     public static <T> List<T> getListFromIterator(Iterator<T> iterator) {
         return Lists.newArrayList(iterator);
@@ -440,40 +488,29 @@ public class Summarization {
 
 
     public void mergeSameDstNetworks(Graph inputGraph) {
-        for (Iterator<Vertex> vertices = inputGraph.vertices(); vertices.hasNext(); ) {
-            Vertex vertex = vertices.next();
-
-            if (!getType(vertex).equals(ObjectType.PROCESS.name())) {
-                continue;
+        // the groups of a process only read the graph, so processes are grouped in parallel
+        new SummarizationPass(threads, new SummarizationRule() {
+            @Override
+            public String getName() {
+                return "same networks";
             }
 
-            ArrayList<ArrayList<Vertex>> groups = groupNetworkVertices(vertex);
-            for (ArrayList<Vertex> group : groups) {
-                if (group.size() <= 1) {
-                    continue;
+            @Override
+            public void visit(Vertex vertex, SummarizationPass.Context context) {
+                if (!getType(vertex).equals(ObjectType.PROCESS.name())) {
+                    return;
                 }
-                Vertex first = group.get(0);
-                // Except first vertex in the group remove everything
-                for (Vertex v : group) {
-                    if (getVertexId(v).equals(getVertexId(first))) {
-                        continue;
+                for (ArrayList<Vertex> group : groupNetworkVertices(vertex)) {
+                    Vertex first = group.get(0);
+                    // Except first vertex in the group remove everything
+                    for (Vertex v : group) {
+                        if (!getVertexId(v).equals(getVertexId(first))) {
+                            context.removeVertex(v);
+                        }
                     }
-                    removeEdge(inputGraph, v);
                 }
             }
-        }
-        int total_removed = 0;
-        for (Vertex v : vertices_to_remove) {
-            Utils.deleteVertex(inputGraph, v);
-            total_removed += 1;
-        }
-        for (Edge e : edges_to_remove) {
-            Utils.deleteEdge(inputGraph, e);
-        }
-        logger.info("Total Vertices Network removed: " + total_removed);
-        vertices_to_remove.clear();
-        edges_to_remove.clear();
-
+        }).run(inputGraph);
     }
 
     public String getVertexId(Vertex vertex) {
@@ -488,46 +525,23 @@ public class Summarization {
     }
 
     public ArrayList<ArrayList<Vertex>> groupNetworkVertices(Vertex vertex) {
-        List<Pair<Vertex, String>> pairList = new ArrayList<Pair<Vertex, String>>();
-        for (Edge e : getListFromIterator(vertex.edges(Direction.IN))) {
-            Vertex other = e.outVertex();
-            if (getVertexId(other).equals(getVertexId(vertex))) {
-                continue;
-            }
-            if (getType(other).equals(ObjectType.NETWORK.name())) {
-                pairList.add(new Pair<>(other, e.property(EdgeProperty.EVENTTYPE.name()).value().toString()));
-            }
-        }
-        for (Edge e : getListFromIterator(vertex.edges(Direction.OUT))) {
-            Vertex other = e.inVertex();
-            if (getVertexId(other).equals(getVertexId(vertex))) {
-                continue;
-            }
-            if (getType(other).equals(ObjectType.NETWORK.name())) {
-                pairList.add(new Pair<>(other, e.property(EdgeProperty.EVENTTYPE.name()).value().toString()));
-            }
-        }
-        ArrayList<ArrayList<Vertex>> sameNetwork = new ArrayList<>();
-        for (Pair<Vertex, String> pair : pairList) {
-            boolean added = false;
-            for (List<Vertex> l : sameNetwork) {
-                Vertex head = l.get(0);
-                if (sameIPAndPort(pair, head)) {
-                    added = true;
-                    l.add(pair.getValue0());
-                    break;
-                }
-            }
-            if (!added) {
-                ArrayList<Vertex> nl = new ArrayList<>();
-                nl.add(pair.getValue0());
-                sameNetwork.add(nl);
-            }
-        }
-        if (vertex.property(NodeProperty.PID.name()).value().toString().equals("1520")) {
-            System.out.println("Second woooooo " + sameNetwork.size());
-        }
-        return sameNetwork;
+        // an accepted connection looks for a head of the same destination, a connect for one of
+        // the same source, see sameIPAndPort
+        return groupByKey(neighbours(vertex, ObjectType.NETWORK), pair -> {
+            if (pair.getValue1().equals(GraphEventType.NETWORK_ACCEPT.name())) {
+                return "dst " + endpointKey(getDstip(pair.getValue0()), pair.getValue0(), NodeProperty.DST_PORT);
+            }
+            if (pair.getValue1().equals(GraphEventType.NETWORK_CONNECT.name())) {
+                return "src " + endpointKey(getSrcip(pair.getValue0()), pair.getValue0(), NodeProperty.SRC_PORT);
+            }
+            return null;
+        }, head -> Arrays.asList("dst " + endpointKey(getDstip(head), head, NodeProperty.DST_PORT),
+                "src " + endpointKey(getSrcip(head), head, NodeProperty.SRC_PORT)));
+    }
+
+    private static String endpointKey(String ip, Vertex vertex, NodeProperty port) {
+        // ipv6 addresses contain colons, so a line break separates the ip from the port
+        return ip + "\n" + vertex.property(port.name()).value().toString();
     }
 
     public String getType(Vertex vertex) {
@@ -565,59 +579,11 @@ public class Summarization {
     }
 
     public void deleteProc(Graph inputGraph) {
-        for (Iterator<Vertex> vertices = inputGraph.vertices(); vertices.hasNext(); ) {
-            Vertex vertex = vertices.next();
-            if (!getType(vertex).equals(ObjectType.FILE.name())) {
-                continue;
-            }
-            String path = Utils.getPath(vertex);
-            if (path.contains("/proc/")) {
-                vertices_to_remove.add(vertex);
-                for (Edge e : getListFromIterator(vertex.edges(Direction.BOTH))) {
-                    edges_to_remove.add(e);
-                }
-            }
-        }
-        int total_removed = 0;
-        for (Vertex v : vertices_to_remove) {
-            Utils.deleteVertex(inputGraph, v);
-            total_removed += 1;
-        }
-        for (Edge e : edges_to_remove) {
-            Utils.deleteEdge(inputGraph, e);
-        }
-        vertices_to_remove.clear();
-        edges_to_remove.clear();
-        logger.info("Total Vertices Network removed: " + total_removed);
+        new SummarizationPass(threads, PROC_FILES).run(inputGraph);
     }
 
     public void deleteSystemEdges(Graph inputGraph) {
-        for (Iterator<Vertex> vertices = inputGraph.vertices(); vertices.hasNext(); ) {
-            Vertex vertex = vertices.next();
-            if (!getType(vertex).equals(ObjectType.PROCESS.name())) {
-                continue;
-            }
-            String path = Utils.getPath(vertex);
-
-            if (path.contains("/lib/systemd/")) {
-                vertices_to_remove.add(vertex);
-                //logger.info("Removed Symantec: " + path);
-                for (Edge e : getListFromIterator(vertex.edges(Direction.BOTH))) {
-                    edges_to_remove.add(e);
-                }
-            }
-        }
-        int total_removed = 0;
-        for (Vertex v : vertices_to_remove) {
-            Utils.deleteVertex(inputGraph, v);
-            total_removed += 1;
-        }
-        for (Edge e : edges_to_remove) {
-            Utils.deleteEdge(inputGraph, e);
-        }
-        vertices_to_remove.clear();
-        edges_to_remove.clear();
-        System.out.println("Total Vertices Symantec removed: " + total_removed);
+        new SummarizationPass(threads, SYSTEMD_PROCESSES).run(inputGraph);
     }
 
     public void removeTemporaryFiles(Graph inputGraph) {
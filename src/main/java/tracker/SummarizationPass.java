@@ -0,0 +1,238 @@
+package tracker;
+
+import org.apache.tinkerpop.gremlin.structure.Edge;
+import org.apache.tinkerpop.gremlin.structure.Graph;
+import org.apache.tinkerpop.gremlin.structure.Vertex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import utils.Utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Evaluates a list of {@link SummarizationRule}s in a single traversal of the graph.
+ * <p>
+ * The vertices are split into contiguous partitions that are visited in parallel, each
+ * partition collecting the removals and marks of its vertices. The results are merged in
+ * partition order, so marks come in the order of the vertices of the graph, and then all
+ * edges and vertices are removed at once.
+ * <p>
+ * The outcome is the same as running the rules one after another, each over the graph the
+ * previous ones left: a vertex is only shown to the rules after the earlier rules kept it,
+ * and a rule that looks at neighbours can ask the context whether an earlier rule removes
+ * them.
+ */
+public class SummarizationPass {
+    private static final Logger logger = LoggerFactory.getLogger(SummarizationPass.class);
+    // partitions per thread, so a partition of expensive vertices does not hold up the pass
+    private static final int PARTITIONS_PER_THREAD = 4;
+    private static final int MIN_PARTITION_SIZE = 1024;
+
+    private final List<SummarizationRule> rules;
+    private final int threads;
+
+    /**
+     * @param threads number of threads visiting the vertices, 1 visits them on the caller's thread
+     */
+    public SummarizationPass(List<SummarizationRule> rules, int threads) {
+        this.rules = new ArrayList<>(rules);
+        this.threads = Math.max(1, threads);
+    }
+
+    public SummarizationPass(int threads, SummarizationRule... rules) {
+        this(Arrays.asList(rules), threads);
+    }
+
+    /**
+     * Visits all vertices, removes what the rules removed and then finishes the rules
+     */
+    public void run(Graph graph) {
+        List<Vertex> vertices = Utils.getListFromIterator(graph.vertices());
+        List<Context> partitions = visit(vertices);
+
+        // id of each removed vertex and edge to the rule that removed it first
+        Map<Object, Integer> removedEdges = new LinkedHashMap<>();
+        Map<Object, Integer> removedVertices = new LinkedHashMap<>();
+        int[] vertexCounts = new int[rules.size()];
+        int[] edgeCounts = new int[rules.size()];
+        List<List<Vertex>> marked = new ArrayList<>();
+        for (int i = 0; i < rules.size(); i++) {
+            marked.add(new ArrayList<>());
+        }
+        for (Context partition : partitions) {
+            for (int i = 0; i < partition.removedVertices.size(); i++) {
+                Integer rule = partition.removedVertexRules.get(i);
+                if (removedVertices.putIfAbsent(partition.removedVertices.get(i).id(), rule) == null) {
+                    vertexCounts[rule]++;
+                }
+            }
+            for (int i = 0; i < partition.removedEdges.size(); i++) {
+                Integer rule = partition.removedEdgeRules.get(i);
+                if (removedEdges.putIfAbsent(partition.removedEdges.get(i).id(), rule) == null) {
+                    edgeCounts[rule]++;
+                }
+            }
+            for (int i = 0; i < partition.marked.size(); i++) {
+                marked.get(partition.markedRules.get(i)).add(partition.marked.get(i));
+            }
+        }
+
+        // removing a vertex removes its edges, so edges go first and none is removed twice
+        if (!removedEdges.isEmpty()) {
+            graph.edges(removedEdges.keySet().toArray()).forEachRemaining(Edge::remove);
+        }
+        if (!removedVertices.isEmpty()) {
+            graph.vertices(removedVertices.keySet().toArray()).forEachRemaining(Vertex::remove);
+        }
+        for (int i = 0; i < rules.size(); i++) {
+            logger.info("Summarization " + rules.get(i).getName() + ": " + vertexCounts[i]
+                    + " vertices and " + edgeCounts[i] + " edges removed, " + marked.get(i).size() + " marked");
+            rules.get(i).finish(graph, marked.get(i));
+        }
+    }
+
+    private List<Context> visit(List<Vertex> vertices) {
+        int partitionCount = threads == 1 ? 1 : Math.max(1,
+                Math.min(threads * PARTITIONS_PER_THREAD, vertices.size() / MIN_PARTITION_SIZE));
+        int partitionSize = (vertices.size() + partitionCount - 1) / partitionCount;
+        List<Callable<Context>> tasks = new ArrayList<>(partitionCount);
+        for (int start = 0; start < vertices.size() || tasks.isEmpty(); start += partitionSize) {
+            List<Vertex> partition = vertices.subList(start, Math.min(vertices.size(), start + partitionSize));
+            tasks.add(() -> {
+                Context context = new Context();
+                for (Vertex vertex : partition) {
+                    context.visit(vertex, rules.size());
+                }
+                return context;
+            });
+        }
+        List<Context> results = new ArrayList<>(tasks.size());
+        if (tasks.size() == 1) {
+            try {
+                results.add(tasks.get(0).call());
+            } catch (Exception e) {
+                throw new IllegalStateException("Summarization failed", e);
+            }
+            return results;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, tasks.size()));
+        try {
+            for (Future<Context> result : executor.invokeAll(tasks)) {
+                results.add(result.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while summarizing", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Summarization failed", e.getCause());
+        } finally {
+            executor.shutdown();
+        }
+        return results;
+    }
+
+    /**
+     * What the rules decided about the vertices of a partition. A rule reports about the
+     * vertex it visits through the context.
+     */
+    public class Context {
+        private final List<Vertex> removedVertices = new ArrayList<>();
+        private final List<Integer> removedVertexRules = new ArrayList<>();
+        private final List<Edge> removedEdges = new ArrayList<>();
+        private final List<Integer> removedEdgeRules = new ArrayList<>();
+        private final List<Vertex> marked = new ArrayList<>();
+        private final List<Integer> markedRules = new ArrayList<>();
+
+        private Vertex vertex;
+        private int rule;
+        private boolean vertexRemoved;
+
+        /**
+         * Shows the vertex to the rules before the given one, until one of them removes it
+         */
+        private void visit(Vertex vertex, int ruleLimit) {
+            this.vertex = vertex;
+            this.vertexRemoved = false;
+            for (rule = 0; rule < ruleLimit && !vertexRemoved; rule++) {
+                rules.get(rule).visit(vertex, this);
+            }
+        }
+
+        /**
+         * Removes the visited vertex with all its edges, the later rules don't see it
+         */
+        public void removeVertex() {
+            if (!vertexRemoved) {
+                vertexRemoved = true;
+                removedVertices.add(vertex);
+                removedVertexRules.add(rule);
+            }
+        }
+
+        /**
+         * Removes another vertex with all its edges once all vertices have been visited. Unlike
+         * the visited vertex, it is still shown to the rules and not seen by
+         * {@link #isRemovedBefore(Vertex)}.
+         */
+        public void removeVertex(Vertex other) {
+            removedVertices.add(other);
+            removedVertexRules.add(rule);
+        }
+
+        public void removeEdge(Edge edge) {
+            removedEdges.add(edge);
+            removedEdgeRules.add(rule);
+        }
+
+        /**
+         * Passes the visited vertex to {@link SummarizationRule#finish(Graph, List)} of the rule
+         */
+        public void mark() {
+            marked.add(vertex);
+            markedRules.add(rule);
+        }
+
+        /**
+         * @return true if a rule before the current one removes the vertex
+         */
+        public boolean isRemovedBefore(Vertex other) {
+            return probe(other).vertexRemoved;
+        }
+
+        /**
+         * @return true if a rule before the current one removes the edge or one of its vertices
+         */
+        public boolean isRemovedBefore(Edge edge) {
+            for (Vertex end : new Vertex[]{edge.outVertex(), edge.inVertex()}) {
+                Context probe = probe(end);
+                if (probe.vertexRemoved) {
+                    return true;
+                }
+                for (Edge removed : probe.removedEdges) {
+                    if (removed.id().equals(edge.id())) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Runs the earlier rules on another vertex, with a context of its own
+         */
+        private Context probe(Vertex other) {
+            Context probe = new Context();
+            probe.visit(other, rule);
+            return probe;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package tracker;
+
+import org.apache.tinkerpop.gremlin.structure.Direction;
+import org.apache.tinkerpop.gremlin.structure.Edge;
+import org.apache.tinkerpop.gremlin.structure.Graph;
+import org.apache.tinkerpop.gremlin.structure.Vertex;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * A rule of a {@link SummarizationPass}. The pass visits every vertex once and asks the rules
+ * in their order, until one of them removes the vertex. A rule reports what it wants done
+ * through the context: it may remove the vertex with all its edges, remove edges, or mark the
+ * vertex for {@link #finish(Graph, List)}. The graph itself is only changed after all
+ * vertices have been visited.
+ * <p>
+ * Rules are visited concurrently for different vertices, so {@link #visit(Vertex,
+ * SummarizationPass.Context)} may read the graph but must not change it or any state of the
+ * rule.
+ */
+public interface SummarizationRule {
+
+    String getName();
+
+    /**
+     * Decides about a vertex that no earlier rule of the pass removed
+     */
+    void visit(Vertex vertex, SummarizationPass.Context context);
+
+    /**
+     * Called once after the removals of the pass have been applied
+     *
+     * @param marked the vertices this rule marked, in the order of the vertices of the graph
+     */
+    default void finish(Graph graph, List<Vertex> marked) {
+    }
+
+    /**
+     * @return rule that removes the vertices matching the predicate with all their edges
+     */
+    static SummarizationRule removeVertices(String name, Predicate<Vertex> predicate) {
+        return new SummarizationRule() {
+            @Override
+            public String getName() {
+                return name;
+            }
+
+            @Override
+            public void visit(Vertex vertex, SummarizationPass.Context context) {
+                if (predicate.test(vertex)) {
+                    context.removeVertex();
+                }
+            }
+        };
+    }
+
+    /**
+     * @return rule that removes the edges matching the predicate, each edge is tested once
+     * from its out vertex
+     */
+    static SummarizationRule removeEdges(String name, Predicate<Edge> predicate) {
+        return new SummarizationRule() {
+            @Override
+            public String getName() {
+                return name;
+            }
+
+            @Override
+            public void visit(Vertex vertex, SummarizationPass.Context context) {
+                for (Iterator<Edge> edges = vertex.edges(Direction.OUT); edges.hasNext(); ) {
+                    Edge edge = edges.next();
+                    if (predicate.test(edge)) {
+                        context.removeEdge(edge);
+                    }
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,25 @@
+package tracker;
+
+/**
+ * Receives the steps of a {@link ProvenanceTraversal} while it runs, so a consumer can handle
+ * the paths as they are found instead of waiting for all of them.
+ */
+public interface TraversalListener {
+
+    /**
+     * Called when the traversal reaches a node, the root included, before following the edges
+     * of its vertex
+     *
+     * @return false to skip the node, it is removed again and no path goes through it
+     */
+    default boolean visit(ProvenancePaths paths, int node) {
+        return true;
+    }
+
+    /**
+     * Called when a path ends at the node, because the depth bound was reached or the vertex
+     * has no edge to follow
+     */
+    default void pathEnd(ProvenancePaths paths, int node) {
+    }
+}
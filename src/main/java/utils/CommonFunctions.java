@@ -14,11 +14,21 @@ public class CommonFunctions {
     // Group 2: value
     private static final Pattern pattern_key_value = Pattern.compile("(\\w+)=\"*((?<=\")[^\"]+(?=\")|([^\\s]+))\"*");
 
+    /**
+     * Use the {@link #pattern_key_value pattern_key_value} regex instead of {@link KeyValueTokenizer}
+     * to split key value pairs. Both produce the same pairs, the regex is kept for comparison.
+     */
+    private static volatile boolean regexKeyValueParsing = false;
+
+    public static void setRegexKeyValueParsing(boolean regexKeyValueParsing) {
+        CommonFunctions.regexKeyValueParsing = regexKeyValueParsing;
+    }
+
     /**
      * Converts a string of the format [a="b" c=d e=f] into a map of key values
      * Any portions of the string not matching the pattern [a="b"] or [c=d] are ignored
      * <p>
-     * Uses the pattern {@link #pattern_key_value pattern_key_value}
+     * Uses {@link KeyValueTokenizer} or the pattern {@link #pattern_key_value pattern_key_value}
      *
      * @param messageData string to parse
      * @return a hashmap
@@ -33,13 +43,44 @@ public class CommonFunctions {
         if (messageData == null || messageData.trim().isEmpty()) {
             return keyValPairs;
         }
-        Matcher key_value_matcher = pattern_key_value.matcher(messageData);
-        while (key_value_matcher.find()) {
-            keyValPairs.put(key_value_matcher.group(1).trim(), key_value_matcher.group(2).trim());
+        if (regexKeyValueParsing) {
+            Matcher key_value_matcher = pattern_key_value.matcher(messageData);
+            while (key_value_matcher.find()) {
+                keyValPairs.put(key_value_matcher.group(1).trim(), key_value_matcher.group(2).trim());
+            }
+        } else {
+            KeyValueTokenizer tokenizer = new KeyValueTokenizer(messageData);
+            while (tokenizer.find()) {
+                // keys are word characters and need no trimming
+                keyValPairs.put(tokenizer.key(StringDictionary.shared()), tokenizer.value().trim());
+            }
         }
         return keyValPairs;
     }
 
+    /**
+     * Puts the key value pairs of a string of the format [a="b" c=d e=f] into the given map
+     * with the given prefix prepended to every key. Keys and values are not trimmed.
+     *
+     * @param messageData string to parse
+     * @param keyPrefix   prefix for the keys, empty for none
+     * @param keyValPairs map to put the pairs into
+     */
+    public static void putKeyValPairs(String messageData, String keyPrefix, Map<String, String> keyValPairs) {
+        if (regexKeyValueParsing) {
+            Matcher key_value_matcher = pattern_key_value.matcher(messageData);
+            while (key_value_matcher.find()) {
+                keyValPairs.put(keyPrefix + key_value_matcher.group(1), key_value_matcher.group(2));
+            }
+        } else {
+            KeyValueTokenizer tokenizer = new KeyValueTokenizer(messageData);
+            while (tokenizer.find()) {
+                keyValPairs.put(keyPrefix.isEmpty() ? tokenizer.key(StringDictionary.shared()) : keyPrefix + tokenizer.key(),
+                        tokenizer.value());
+            }
+        }
+    }
+
     /**
      * Convenience wrapper function for Integer.parseInt. Suppresses the exception and returns
      * the given default value in that case
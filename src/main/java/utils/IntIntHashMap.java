@@ -0,0 +1,207 @@
+package utils;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map from int to int without boxing.
+ * <p>
+ * Uses linear probing in a power of two table and backward shift deletion, so removing
+ * entries leaves no tombstones behind and the table can be reused indefinitely.
+ */
+public final class IntIntHashMap {
+    private static final int EMPTY = Integer.MIN_VALUE;
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private final int missingValue;
+    private int[] keys;
+    private int[] values;
+    private int size;
+    private int resizeThreshold;
+    // Integer.MIN_VALUE marks a free slot, so it is stored separately as a key
+    private boolean hasMinKey;
+    private int minKeyValue;
+
+    /**
+     * @param missingValue value returned by {@link #get(int)} and {@link #remove(int)} for
+     *                     keys that are not in the map
+     */
+    public IntIntHashMap(int missingValue) {
+        this(8, missingValue);
+    }
+
+    public IntIntHashMap(int expectedSize, int missingValue) {
+        this.missingValue = missingValue;
+        allocate(tableSizeFor(expectedSize));
+    }
+
+    public int get(int key) {
+        if (key == EMPTY) {
+            return hasMinKey ? minKeyValue : missingValue;
+        }
+        int mask = keys.length - 1;
+        for (int slot = hash(key) & mask; keys[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return values[slot];
+            }
+        }
+        return missingValue;
+    }
+
+    public boolean containsKey(int key) {
+        if (key == EMPTY) {
+            return hasMinKey;
+        }
+        int mask = keys.length - 1;
+        for (int slot = hash(key) & mask; keys[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the previous value of the key or the missing value
+     */
+    public int put(int key, int value) {
+        if (key == EMPTY) {
+            int previous = hasMinKey ? minKeyValue : missingValue;
+            if (!hasMinKey) {
+                hasMinKey = true;
+                size++;
+            }
+            minKeyValue = value;
+            return previous;
+        }
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        for (; keys[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                int previous = values[slot];
+                values[slot] = value;
+                return previous;
+            }
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size > resizeThreshold) {
+            rehash(keys.length * 2);
+        }
+        return missingValue;
+    }
+
+    /**
+     * @return the removed value or the missing value
+     */
+    public int remove(int key) {
+        if (key == EMPTY) {
+            if (!hasMinKey) {
+                return missingValue;
+            }
+            hasMinKey = false;
+            size--;
+            return minKeyValue;
+        }
+        int mask = keys.length - 1;
+        for (int slot = hash(key) & mask; keys[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                int previous = values[slot];
+                shiftBack(slot, mask);
+                size--;
+                return previous;
+            }
+        }
+        return missingValue;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, EMPTY);
+        hasMinKey = false;
+        size = 0;
+    }
+
+    /**
+     * Calls the consumer with every key and value, in no particular order. The map must not be
+     * modified meanwhile.
+     */
+    public void forEach(IntIntConsumer consumer) {
+        if (hasMinKey) {
+            consumer.accept(EMPTY, minKeyValue);
+        }
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != EMPTY) {
+                consumer.accept(keys[slot], values[slot]);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    public interface IntIntConsumer {
+        void accept(int key, int value);
+    }
+
+    /**
+     * Moves the entries following a removed slot back so that every entry stays reachable
+     * from its home slot without crossing a free slot
+     */
+    private void shiftBack(int removed, int mask) {
+        int free = removed;
+        for (int slot = (removed + 1) & mask; keys[slot] != EMPTY; slot = (slot + 1) & mask) {
+            int home = hash(keys[slot]) & mask;
+            // move the entry if its home is not in the cyclic range (free, slot]
+            if (((slot - home) & mask) >= ((slot - free) & mask)) {
+                keys[free] = keys[slot];
+                values[free] = values[slot];
+                free = slot;
+            }
+        }
+        keys[free] = EMPTY;
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys, oldValues = values;
+        allocate(capacity);
+        int mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = hash(oldKeys[i]) & mask;
+                while (keys[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+        resizeThreshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    static int tableSizeFor(int expectedSize) {
+        int capacity = 8;
+        while (capacity * LOAD_FACTOR < expectedSize) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    /**
+     * Spreads consecutive pids and fds over the table
+     */
+    static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
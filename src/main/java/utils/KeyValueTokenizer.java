@@ -0,0 +1,157 @@
+package utils;
+
+/**
+ * Single pass tokenizer for the key=value and key="quoted value" pairs of audit records.
+ * <p>
+ * Produces exactly the same keys and values as the pattern
+ * <code>(\w+)="*((?&lt;=")[^"]+(?=")|([^\s]+))"*</code> used with {@link java.util.regex.Matcher#find()},
+ * including its handling of empty and unterminated quotes, but without backtracking and
+ * without allocating anything except the returned key and value strings. Keys and values
+ * can also be looked up in a {@link StringDictionary}, which creates no string for a key or
+ * value that was seen before.
+ * <p>
+ * Usage mirrors a Matcher:
+ * <pre>
+ * KeyValueTokenizer tokenizer = new KeyValueTokenizer(messageData);
+ * while (tokenizer.find()) {
+ *     map.put(tokenizer.key(), tokenizer.value());
+ * }
+ * </pre>
+ */
+public final class KeyValueTokenizer {
+    private String input;
+    private int position;
+    private int keyStart, keyEnd, valueStart, valueEnd;
+
+    public KeyValueTokenizer(String input) {
+        reset(input);
+    }
+
+    /**
+     * Starts tokenizing a new input string
+     *
+     * @param input string to tokenize
+     * @return this tokenizer
+     */
+    public KeyValueTokenizer reset(String input) {
+        this.input = input == null ? "" : input;
+        this.position = 0;
+        return this;
+    }
+
+    /**
+     * Finds the next key value pair
+     *
+     * @return true if a pair was found
+     */
+    public boolean find() {
+        final String s = input;
+        final int n = s.length();
+        int i = position;
+        while (i < n) {
+            if (!isWordChar(s.charAt(i))) {
+                i++;
+                continue;
+            }
+            int j = i + 1;
+            while (j < n && isWordChar(s.charAt(j))) {
+                j++;
+            }
+            if (j >= n || s.charAt(j) != '=') {
+                // no position inside this word can start a key either
+                i = j;
+                continue;
+            }
+            int p = j + 1;
+            int q = p;
+            while (q < n && s.charAt(q) == '"') {
+                q++;
+            }
+            if (q > p) {
+                // quoted value terminated by a quote
+                int r = q;
+                while (r < n && s.charAt(r) != '"') {
+                    r++;
+                }
+                if (r > q && r < n) {
+                    int e = r;
+                    while (e < n && s.charAt(e) == '"') {
+                        e++;
+                    }
+                    return match(i, j, q, r, e);
+                }
+                // unterminated quote, the value runs until the next whitespace
+                int start = (q < n && !isWhitespace(s.charAt(q))) ? q : q - 1;
+                int r2 = nonWhitespaceEnd(start);
+                return match(i, j, start, r2, r2);
+            }
+            if (p < n && !isWhitespace(s.charAt(p))) {
+                int r = nonWhitespaceEnd(p);
+                return match(i, j, p, r, r);
+            }
+            // key without a value
+            i = j + 1;
+        }
+        position = n;
+        return false;
+    }
+
+    /**
+     * @return key of the last found pair
+     */
+    public String key() {
+        return input.substring(keyStart, keyEnd);
+    }
+
+    /**
+     * @return value of the last found pair
+     */
+    public String value() {
+        return input.substring(valueStart, valueEnd);
+    }
+
+    /**
+     * @return key of the last found pair, the instance stored in the dictionary
+     */
+    public String key(StringDictionary dictionary) {
+        return dictionary.intern(input, keyStart, keyEnd);
+    }
+
+    /**
+     * @return value of the last found pair, the instance stored in the dictionary
+     */
+    public String value(StringDictionary dictionary) {
+        return dictionary.intern(input, valueStart, valueEnd);
+    }
+
+    private boolean match(int keyStart, int keyEnd, int valueStart, int valueEnd, int end) {
+        this.keyStart = keyStart;
+        this.keyEnd = keyEnd;
+        this.valueStart = valueStart;
+        this.valueEnd = valueEnd;
+        this.position = end;
+        return true;
+    }
+
+    private int nonWhitespaceEnd(int from) {
+        int r = from;
+        while (r < input.length() && !isWhitespace(input.charAt(r))) {
+            r++;
+        }
+        return r;
+    }
+
+    /**
+     * Same as the regex class \w
+     */
+    private static boolean isWordChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+    }
+
+    /**
+     * Same as the regex class \s
+     */
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+}
@@ -0,0 +1,248 @@
+package utils;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Concurrent dictionary that stores each distinct string once and numbers it.
+ * <p>
+ * Keys, paths and names repeat in almost every audit event. The reader and the graph keep the
+ * instance returned by {@link #intern(String)}, so a value that occurs in a million events is
+ * kept once and equal values are usually the same instance, which
+ * {@link String#equals(Object)} checks first.
+ * <p>
+ * The table is split into segments by hash. Lookups of strings that are already stored take
+ * no lock, adding a string locks its segment. {@link #intern(CharSequence, int, int)} looks up
+ * a range of a record without creating the substring, the string is only created when the
+ * value is new. Strings are never removed, ids are dense and start at 0.
+ */
+public final class StringDictionary {
+    /**
+     * Longer strings are not canonicalized by {@link #intern(String)}, they are mostly unique
+     */
+    public static final int MAX_INTERNED_LENGTH = 4096;
+    // new strings up to this length also share the instance of equal string constants
+    private static final int CONSTANT_LENGTH = 32;
+
+    private static final int SEGMENT_BITS = 5;
+    private static final int SEGMENTS = 1 << SEGMENT_BITS;
+    private static final int CHUNK_BITS = 12;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+    private static final StringDictionary SHARED = new StringDictionary();
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final AtomicInteger size = new AtomicInteger();
+    private final Object chunkLock = new Object();
+    // strings by id, in chunks so that growing never copies them
+    private volatile Entry[][] chunks = new Entry[16][];
+
+    public StringDictionary() {
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    /**
+     * @return the dictionary shared by all readers, for the keys and the low cardinality values
+     * of the records. Since strings are never removed, values that keep changing over a long
+     * run, like paths, belong in a dictionary that is dropped with the graph they are stored in.
+     */
+    public static StringDictionary shared() {
+        return SHARED;
+    }
+
+    /**
+     * @return number of distinct strings
+     */
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * Returns the stored instance equal to the string, adding the string if it is new
+     *
+     * @return the stored instance, the string itself if it is longer than
+     * {@link #MAX_INTERNED_LENGTH}, or null for null
+     */
+    public String intern(String string) {
+        if (string == null || string.length() > MAX_INTERNED_LENGTH) {
+            return string;
+        }
+        return entryOf(string, 0, string.length(), string.hashCode()).string;
+    }
+
+    /**
+     * Same as {@code intern(chars.subSequence(start, end).toString())}, but creates the string
+     * only if it is new
+     */
+    public String intern(CharSequence chars, int start, int end) {
+        if (end - start > MAX_INTERNED_LENGTH) {
+            return chars.subSequence(start, end).toString();
+        }
+        return entryOf(chars, start, end, hash(chars, start, end)).string;
+    }
+
+    /**
+     * Returns the id of the string, adding the string if it is new. Unlike
+     * {@link #intern(String)} this stores strings of any length.
+     *
+     * @return id of the string, -1 for null
+     */
+    public int id(String string) {
+        if (string == null) {
+            return -1;
+        }
+        return entryOf(string, 0, string.length(), string.hashCode()).id;
+    }
+
+    /**
+     * @return the string with the given id
+     * @throws IndexOutOfBoundsException if no string has the id
+     */
+    public String get(int id) {
+        if (id < 0 || id >= size.get()) {
+            throw new IndexOutOfBoundsException("No string with id " + id);
+        }
+        Entry entry = entryAt(chunks, id);
+        if (entry == null) {
+            // added by another thread, the lock makes the write visible
+            synchronized (chunkLock) {
+                entry = entryAt(chunks, id);
+            }
+        }
+        return entry.string;
+    }
+
+    private Entry entryOf(CharSequence chars, int start, int end, int hash) {
+        Segment segment = segments[spread(hash) >>> (32 - SEGMENT_BITS)];
+        Entry entry = segment.find(chars, start, end, hash);
+        return entry != null ? entry : segment.add(chars, start, end, hash);
+    }
+
+    private Entry register(String string, int hash) {
+        synchronized (chunkLock) {
+            int id = size.get();
+            Entry entry = new Entry(string, hash, id);
+            Entry[][] chunks = this.chunks;
+            int chunk = id >>> CHUNK_BITS;
+            if (chunk == chunks.length) {
+                Entry[][] grown = new Entry[chunks.length * 2][];
+                System.arraycopy(chunks, 0, grown, 0, chunks.length);
+                chunks = grown;
+            }
+            if (chunks[chunk] == null) {
+                chunks[chunk] = new Entry[CHUNK_SIZE];
+            }
+            chunks[chunk][id & (CHUNK_SIZE - 1)] = entry;
+            this.chunks = chunks;
+            size.set(id + 1);
+            return entry;
+        }
+    }
+
+    private static Entry entryAt(Entry[][] chunks, int id) {
+        Entry[] chunk = chunks[id >>> CHUNK_BITS];
+        return chunk == null ? null : chunk[id & (CHUNK_SIZE - 1)];
+    }
+
+    /**
+     * Same as {@link String#hashCode()} of the range
+     */
+    private static int hash(CharSequence chars, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + chars.charAt(i);
+        }
+        return hash;
+    }
+
+    private static int spread(int hash) {
+        return hash * 0x9E3779B9;
+    }
+
+    private static boolean matches(String string, CharSequence chars, int start, int end) {
+        int length = end - start;
+        if (string.length() != length) {
+            return false;
+        }
+        if (chars instanceof String && start == 0 && end == chars.length()) {
+            return string.equals(chars);
+        }
+        for (int i = 0; i < length; i++) {
+            if (string.charAt(i) != chars.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final class Entry {
+        final String string;
+        final int hash;
+        final int id;
+
+        Entry(String string, int hash, int id) {
+            this.string = string;
+            this.hash = hash;
+            this.id = id;
+        }
+    }
+
+    /**
+     * Open addressing table with linear probing. Readers may see a table that misses an entry
+     * that is being added, they then take the lock and look again.
+     */
+    private final class Segment {
+        private volatile Entry[] table = new Entry[64];
+        private int count = 0;
+
+        Entry find(CharSequence chars, int start, int end, int hash) {
+            Entry[] table = this.table;
+            int mask = table.length - 1;
+            for (int i = spread(hash) & mask; ; i = (i + 1) & mask) {
+                Entry entry = table[i];
+                if (entry == null) {
+                    return null;
+                }
+                if (entry.hash == hash && matches(entry.string, chars, start, end)) {
+                    return entry;
+                }
+            }
+        }
+
+        synchronized Entry add(CharSequence chars, int start, int end, int hash) {
+            Entry entry = find(chars, start, end, hash);
+            if (entry != null) {
+                return entry;
+            }
+            String string = chars instanceof String && start == 0 && end == chars.length()
+                    ? (String) chars : chars.subSequence(start, end).toString();
+            if (string.length() <= CONSTANT_LENGTH) {
+                string = string.intern();
+            }
+            entry = register(string, hash);
+            if (++count * 2 > table.length) {
+                Entry[] grown = new Entry[table.length * 2];
+                for (Entry old : table) {
+                    if (old != null) {
+                        insert(grown, old);
+                    }
+                }
+                insert(grown, entry);
+                table = grown;
+            } else {
+                insert(table, entry);
+            }
+            return entry;
+        }
+
+        private void insert(Entry[] table, Entry entry) {
+            int mask = table.length - 1;
+            int i = spread(entry.hash) & mask;
+            while (table[i] != null) {
+                i = (i + 1) & mask;
+            }
+            table[i] = entry;
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package utils;
+
+/**
+ * 128 bit identifier of a vertex or edge, kept as two longs.
+ * <p>
+ * The value is the murmur3_128 hash of the UTF-16 encoding of the concatenated identifying
+ * strings, computed without building the string or its bytes. It is exactly the hash that
+ * <code>Hashing.murmur3_128().hashString(string, Charsets.UTF_16)</code> returns, so
+ * {@link #toString()} gives the same 32 character hex string that was used as id before.
+ * The hex string is only produced when an id is written out.
+ */
+public final class Uid implements Comparable<Uid> {
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private static final ThreadLocal<Builder> BUILDERS = ThreadLocal.withInitial(Builder::new);
+
+    /**
+     * First and second 64 bit half of the hash, as murmur3 computes them
+     */
+    private final long h1, h2;
+
+    public Uid(long h1, long h2) {
+        this.h1 = h1;
+        this.h2 = h2;
+    }
+
+    public long getHigh() {
+        return h1;
+    }
+
+    public long getLow() {
+        return h2;
+    }
+
+    /**
+     * Returns a reset builder of the calling thread. The builder must not be used again
+     * before {@link Builder#build()} has been called.
+     */
+    public static Builder builder() {
+        return BUILDERS.get().reset();
+    }
+
+    /**
+     * @return the id of the string, same as {@code builder().append(string).build()}
+     */
+    public static Uid of(String string) {
+        return builder().append(string).build();
+    }
+
+    /**
+     * Parses the hex form returned by {@link #toString()}
+     *
+     * @return the id or null if the string is not a 32 digit hex id
+     */
+    public static Uid parse(String hex) {
+        if (hex == null || hex.length() != 32) {
+            return null;
+        }
+        long h1 = 0, h2 = 0;
+        for (int i = 0; i < 16; i++) {
+            int high = Character.digit(hex.charAt(2 * i), 16), low = Character.digit(hex.charAt(2 * i + 1), 16);
+            if (high < 0 || low < 0) {
+                return null;
+            }
+            long b = (high << 4) | low;
+            // bytes are little endian within each half
+            if (i < 8) {
+                h1 |= b << (8 * i);
+            } else {
+                h2 |= b << (8 * (i - 8));
+            }
+        }
+        return new Uid(h1, h2);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof Uid)) {
+            return false;
+        }
+        Uid uid = (Uid) other;
+        return h1 == uid.h1 && h2 == uid.h2;
+    }
+
+    @Override
+    public int hashCode() {
+        // the bits are already well mixed
+        return (int) h1;
+    }
+
+    @Override
+    public int compareTo(Uid other) {
+        int compare = Long.compare(h1, other.h1);
+        return compare != 0 ? compare : Long.compare(h2, other.h2);
+    }
+
+    /**
+     * @return the 32 digit lower case hex string of the hash bytes
+     */
+    @Override
+    public String toString() {
+        char[] hex = new char[32];
+        appendHex(h1, hex, 0);
+        appendHex(h2, hex, 16);
+        return new String(hex);
+    }
+
+    private static void appendHex(long half, char[] hex, int offset) {
+        for (int i = 0; i < 8; i++) {
+            int b = (int) (half >>> (8 * i)) & 0xff;
+            hex[offset + 2 * i] = HEX_DIGITS[b >>> 4];
+            hex[offset + 2 * i + 1] = HEX_DIGITS[b & 0xf];
+        }
+    }
+
+    /**
+     * Incremental murmur3_128 (x64, seed 0) over the UTF-16 bytes of appended strings, which
+     * are big endian and preceded by a byte order mark like {@code String.getBytes(UTF_16)}
+     */
+    public static final class Builder {
+        private long h1, h2;
+        private long k1, k2;
+        private int blockLength;
+        private long length;
+        private boolean started;
+        // high surrogate waiting for its low surrogate
+        private char highSurrogate;
+
+        private Builder() {
+        }
+
+        private Builder reset() {
+            h1 = h2 = k1 = k2 = 0;
+            blockLength = 0;
+            length = 0;
+            started = false;
+            highSurrogate = 0;
+            return this;
+        }
+
+        /**
+         * Appends the string, or "null" like {@link StringBuilder#append(String)}
+         */
+        public Builder append(String string) {
+            if (string == null) {
+                string = "null";
+            }
+            for (int i = 0; i < string.length(); i++) {
+                append(string.charAt(i));
+            }
+            return this;
+        }
+
+        /**
+         * Appends the hex form of the id
+         */
+        public Builder append(Uid uid) {
+            appendHex(uid.h1);
+            appendHex(uid.h2);
+            return this;
+        }
+
+        /**
+         * Appends the id if it is a {@link Uid}, else its string form
+         */
+        public Builder append(Object object) {
+            if (object instanceof Uid) {
+                return append((Uid) object);
+            }
+            return append(String.valueOf(object));
+        }
+
+        public Builder append(char c) {
+            if (!started) {
+                started = true;
+                putChar((char) 0xFEFF);
+            }
+            if (highSurrogate != 0) {
+                char high = highSurrogate;
+                highSurrogate = 0;
+                if (Character.isLowSurrogate(c)) {
+                    putChar(high);
+                    putChar(c);
+                    return this;
+                }
+                putChar((char) 0xFFFD);
+            }
+            if (Character.isHighSurrogate(c)) {
+                highSurrogate = c;
+            } else if (Character.isLowSurrogate(c)) {
+                putChar((char) 0xFFFD);
+            } else {
+                putChar(c);
+            }
+            return this;
+        }
+
+        /**
+         * @return the id of everything appended since {@link Uid#builder()}
+         */
+        public Uid build() {
+            if (highSurrogate != 0) {
+                highSurrogate = 0;
+                putChar((char) 0xFFFD);
+            }
+            long h1 = this.h1, h2 = this.h2;
+            if (blockLength > 0) {
+                h1 ^= mixK1(k1);
+                h2 ^= mixK2(k2);
+            }
+            h1 ^= length;
+            h2 ^= length;
+            h1 += h2;
+            h2 += h1;
+            h1 = fmix64(h1);
+            h2 = fmix64(h2);
+            h1 += h2;
+            h2 += h1;
+            return new Uid(h1, h2);
+        }
+
+        private void appendHex(long half) {
+            for (int i = 0; i < 8; i++) {
+                int b = (int) (half >>> (8 * i)) & 0xff;
+                append(HEX_DIGITS[b >>> 4]);
+                append(HEX_DIGITS[b & 0xf]);
+            }
+        }
+
+        private void putChar(char c) {
+            putByte(c >>> 8);
+            putByte(c & 0xff);
+        }
+
+        private void putByte(int b) {
+            if (blockLength < 8) {
+                k1 |= (long) b << (8 * blockLength);
+            } else {
+                k2 |= (long) b << (8 * (blockLength - 8));
+            }
+            length++;
+            if (++blockLength == 16) {
+                h1 ^= mixK1(k1);
+                h1 = Long.rotateLeft(h1, 27);
+                h1 += h2;
+                h1 = h1 * 5 + 0x52dce729;
+                h2 ^= mixK2(k2);
+                h2 = Long.rotateLeft(h2, 31);
+                h2 += h1;
+                h2 = h2 * 5 + 0x38495ab5;
+                k1 = k2 = 0;
+                blockLength = 0;
+            }
+        }
+
+        private static long mixK1(long k1) {
+            k1 *= C1;
+            k1 = Long.rotateLeft(k1, 31);
+            k1 *= C2;
+            return k1;
+        }
+
+        private static long mixK2(long k2) {
+            k2 *= C2;
+            k2 = Long.rotateLeft(k2, 33);
+            k2 *= C1;
+            return k2;
+        }
+
+        private static long fmix64(long k) {
+            k ^= k >>> 33;
+            k *= 0xff51afd7ed558ccdL;
+            k ^= k >>> 33;
+            k *= 0xc4ceb9fe1a85ec53L;
+            k ^= k >>> 33;
+            return k;
+        }
+    }
+}
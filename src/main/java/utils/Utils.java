@@ -29,11 +29,8 @@ public class Utils {
     private static final int EINPROGRESS = -115;
     private static final String PROTOCOL_NAME_UDP = "udp", PROTOCOL_NAME_TCP = "tcp";
 
-    public static String getIdentifierFile(String path, String objtype) {
-        StringBuilder sb = new StringBuilder();
-        sb.append(path);
-        sb.append(objtype);
-        return Hashing.murmur3_128().hashString(sb.toString(), Charsets.UTF_16).toString();
+    public static Uid getIdentifierFile(String path, String objtype) {
+        return Uid.builder().append(path).append(objtype).build();
     }
 
     public static String getIdentifierModule(String path, String normalized_path, String hash, String size) {
@@ -217,19 +214,13 @@ public class Utils {
         }
     }
 
-    public static String getIdentifierProcess(Map<String, String> eventData) {
-        StringBuilder sb = new StringBuilder();
+    public static Uid getIdentifierProcess(Map<String, String> eventData) {
         String ppid = eventData.get("ppid");
         String pid = eventData.get("pid");
 //        String path = eventData.get("exe") == null ? "" : eventData.get("exe");
 //        String name = eventData.get("name") == null ? (eventData.get("comm") == null ? "" : eventData.get("comm")) : "";
 //        String cmdline =  eventData.get("commandline") == null ? "" : eventData.get("commandline");
-//        sb.append(path);
-//        sb.append(name);
-        sb.append(pid);
-        sb.append(ppid);
-//        sb.append(cmdline);
-        return Hashing.murmur3_128().hashString(sb.toString(), Charsets.UTF_16).toString();
+        return Uid.builder().append(pid).append(ppid).build();
     }
 
     public static String getIdentifierRegistry(String path, String typeid, String name, String objtype) {
@@ -241,25 +232,48 @@ public class Utils {
         return Hashing.murmur3_128().hashString(sb.toString(), Charsets.UTF_16).toString();
     }
 
-    public static String getIdentifierNetwork(String src_ip, String src_port, String dst_ip, String dst_port, String protocol, String direction, String syscall) {
-        StringBuilder sb = new StringBuilder();
-        sb.append(src_ip);
-        sb.append(src_port);
-        sb.append(dst_ip);
-        sb.append(dst_port);
-        sb.append(protocol);
-        sb.append(direction);
-        sb.append(syscall);
-        return Hashing.murmur3_128().hashString(sb.toString(), Charsets.UTF_16).toString();
+    public static Uid getIdentifierNetwork(String src_ip, String src_port, String dst_ip, String dst_port, String protocol, String direction, String syscall) {
+        return Uid.builder()
+                .append(src_ip)
+                .append(src_port)
+                .append(dst_ip)
+                .append(dst_port)
+                .append(protocol)
+                .append(direction)
+                .append(syscall)
+                .build();
     }
 
     public static String getid(Vertex vertex) {
         return vertex.property(NodeProperty.ID.name()).value().toString();
     }
 
-    public static String getEdgeId(Vertex actor, Vertex target, String act, String eventype, String eventid) {
-        String uid = getid(actor) + getid(target) + eventype + act + eventid;
-        return Hashing.murmur3_128().hashString(uid, Charsets.UTF_16).toString();
+    public static Uid getEdgeId(Vertex actor, Vertex target, String act, String eventype, String eventid) {
+        return getEdgeId(actor.property(NodeProperty.ID.name()).value(), target.property(NodeProperty.ID.name()).value(),
+                act, eventype, eventid);
+    }
+
+    /**
+     * @param actorId  id of the actor vertex, a {@link Uid} or the string of a dummy vertex
+     * @param targetId id of the target vertex
+     */
+    public static Uid getEdgeId(Object actorId, Object targetId, String act, String eventype, String eventid) {
+        return Uid.builder().append(actorId).append(targetId).append(eventype).append(act).append(eventid).build();
+    }
+
+    /**
+     * @return id shared by all edges of the same syscall and event type between the two vertices
+     */
+    public static Uid getAggregatedEdgeId(Vertex actor, Vertex target, String act, String eventype) {
+        return getAggregatedEdgeId(actor.property(NodeProperty.ID.name()).value(),
+                target.property(NodeProperty.ID.name()).value(), act, eventype);
+    }
+
+    /**
+     * @see #getEdgeId(Object, Object, String, String, String)
+     */
+    public static Uid getAggregatedEdgeId(Object actorId, Object targetId, String act, String eventype) {
+        return Uid.builder().append(actorId).append(targetId).append(eventype).append(act).build();
     }
 
     public static String extractShortName(String name) {
@@ -375,6 +389,38 @@ public class Utils {
         return edge.property(EdgeProperty.BEGIN_TIME.name()).value().toString();
     }
 
+    /**
+     * @return BEGIN_TIME of the edge in milliseconds since the epoch
+     * @see #parseTimeMillis(String)
+     */
+    public static long getTimeMillis(Edge edge) {
+        return parseTimeMillis(getTime(edge));
+    }
+
+    /**
+     * @param time seconds since the epoch with an optional fraction, as in the audit records,
+     *             or an ISO-8601 instant
+     * @return milliseconds since the epoch, a finer fraction is cut off
+     */
+    public static long parseTimeMillis(String time) {
+        if (time.indexOf('T') >= 0) {
+            return Instant.parse(time).toEpochMilli();
+        }
+        int dot = time.indexOf('.');
+        if (dot < 0) {
+            return Long.parseLong(time) * 1000;
+        }
+        long millis = 0;
+        for (int i = dot + 1; i < dot + 4; i++) {
+            int digit = i < time.length() ? Character.digit(time.charAt(i), 10) : 0;
+            if (digit < 0) {
+                throw new NumberFormatException("Invalid time " + time);
+            }
+            millis = millis * 10 + digit;
+        }
+        return Long.parseLong(time.substring(0, dot)) * 1000 + millis;
+    }
+
     public static String getRule(Edge edge) {
         if (edge.property(EdgeProperty.RULE_NAME.name()).isPresent())
             return edge.property(EdgeProperty.RULE_NAME.name()).value().toString();
@@ -555,20 +601,23 @@ public class Utils {
     }
 
     public static void generateDFSGraph(Graph full_graph, String test_name, DotGraph dotgraph, String start_id) throws Exception {
+        generateDFSGraph(full_graph, test_name, dotgraph, start_id, new Algorithms());
+    }
+
+    /**
+     * @param new_algo traversals of the graph, see {@link parsers.ParseLinuxAudit#newAlgorithms()}
+     *                 for a sharded graph
+     */
+    public static void generateDFSGraph(Graph full_graph, String test_name, DotGraph dotgraph, String start_id,
+                                        Algorithms new_algo) throws Exception {
         // DFS
         Vertex start_vertex = Utils.getStartVertexById(full_graph, start_id);
         List<Edge> flat = new ArrayList<>();
 
         if (start_vertex != null) {
             System.out.println("WAJIH: " + Utils.getPath(start_vertex));
-            Algorithms new_algo = new Algorithms();
-            ArrayList<ArrayList<Edge>> edges = new_algo.runForward(start_vertex);
+            flat.addAll(new_algo.traceForward(start_vertex).getEdges());
             System.out.println("Done with forward");
-            for (List<Edge> list : edges) {
-                for (Edge edge : list) {
-                    flat.add(edge);
-                }
-            }
             if (flat.isEmpty()) {
                 System.out.println("WARNING FLAT IS EMPTY!!!!!!!!!!!!!!!!!!!!!! ~~~~~~~~~~~~~~");
                 return;